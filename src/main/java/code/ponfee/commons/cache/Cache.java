@@ -8,10 +8,14 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -27,6 +31,7 @@ import code.ponfee.commons.jce.digest.DigestUtils;
 public class Cache<T> {
 
     public static final long KEEPALIVE_FOREVER = 0; // 为0表示不失效
+    private static final int WHEEL_DRAIN_THRESHOLD = 1024; // 写缓冲积压到此数量时由写线程尝试同步
 
     /** The default scheduled executor shared of class level */
     private static volatile ScheduledExecutorService defaultExecutor;
@@ -37,20 +42,41 @@ public class Cache<T> {
     private final Map<Comparable<?>, CacheValue<T>> cache = new ConcurrentHashMap<>(); // 缓存容器
 
     private volatile boolean isDestroy = false; // 是否被销毁
-    private DateProvider dateProvider = DateProvider.SYSTEM;
-    private final Lock lock = new ReentrantLock(); // 定时清理加锁
+    private DateProvider dateProvider;
     private ScheduledExecutorService executor;
 
+    // ------------------------------bounded mode and expiration
+    private final SegmentedLru policy; // 淘汰策略，为null表示无容量限制
+    private final Weigher<? super T> weigher;
+    private volatile TimingWheel<T> timingWheel; // 过期时间轮，为null表示不定时清理
+    private final Lock entryLock = new ReentrantLock(); // 淘汰策略与时间轮加锁
+    private final Queue<Comparable<?>> wheelWrites = new ConcurrentLinkedQueue<>(); // 无容量限制时待同步到时间轮的key
+    private final AtomicInteger pendingWheelWrites = new AtomicInteger();
+
+    // ------------------------------statistics
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder evictionWeight = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+
     Cache(boolean caseSensitiveKey, boolean compressKey, long keepAliveInMillis, 
-          int autoReleaseInSeconds, ScheduledExecutorService scheduleExecutor) {
+          int autoReleaseInSeconds, ScheduledExecutorService scheduleExecutor, 
+          long maximumWeight, Weigher<? super T> weigher, DateProvider dateProvider) {
         Preconditions.checkArgument(keepAliveInMillis >= 0);
         Preconditions.checkArgument(autoReleaseInSeconds >= 0);
 
         this.caseSensitiveKey = caseSensitiveKey;
         this.compressKey = compressKey;
         this.keepAliveInMillis = keepAliveInMillis;
+        this.policy = maximumWeight > 0 ? new SegmentedLru(maximumWeight) : null;
+        this.weigher = weigher;
+        this.dateProvider = dateProvider == null ? DateProvider.SYSTEM : dateProvider;
 
         if (autoReleaseInSeconds > 0) {
+            this.timingWheel = new TimingWheel<>(now());
+
             ScheduledExecutorService executor0;
             if (scheduleExecutor != null) {
                 this.executor = executor0 = scheduleExecutor;
@@ -66,23 +92,10 @@ public class Cache<T> {
                 executor0 = defaultExecutor;
             }
 
-            // 定时清理
-            executor0.scheduleAtFixedRate(() -> {
-                // none exception to throw, so can not wrap try catch
-                if (!lock.tryLock()) {
-                    return;
-                }
-                try {
-                    long now = now();
-                    for (Iterator<Entry<Comparable<?>, CacheValue<T>>> i = cache.entrySet().iterator(); i.hasNext();) {
-                        if (i.next().getValue().isExpire(now)) {
-                            i.remove();
-                        }
-                    }
-                } finally {
-                    lock.unlock();
-                }
-            }, autoReleaseInSeconds, autoReleaseInSeconds, TimeUnit.SECONDS);
+            // 定时清理：none exception to throw, so can not wrap try catch
+            executor0.scheduleAtFixedRate(
+                this::cleanUp, autoReleaseInSeconds, autoReleaseInSeconds, TimeUnit.SECONDS
+            );
         }
     }
 
@@ -102,12 +115,25 @@ public class Cache<T> {
         return dateProvider;
     }
 
-    private long now() {
+    long now() {
         return dateProvider.now();
     }
 
     protected void setDateProvider(DateProvider dateProvider) {
-        this.dateProvider = dateProvider;
+        entryLock.lock();
+        try {
+            this.dateProvider = dateProvider;
+            if (timingWheel != null) {
+                // 时钟变更，以新的时间重建时间轮
+                timingWheel = new TimingWheel<>(now());
+                for (Entry<Comparable<?>, CacheValue<T>> entry : cache.entrySet()) {
+                    timingWheel.schedule(entry.getKey(), entry.getValue());
+                }
+                drainWheelWrites();
+            }
+        } finally {
+            entryLock.unlock();
+        }
     }
 
     // --------------------------------cache value-------------------------------
@@ -144,7 +170,7 @@ public class Cache<T> {
         }
 
         if (expireTimeMillis == KEEPALIVE_FOREVER || expireTimeMillis > now()) {
-            cache.put(getEffectiveKey(key), new CacheValue<>(value, expireTimeMillis));
+            putEntry(getEffectiveKey(key), new CacheValue<>(value, expireTimeMillis));
         }
     }
 
@@ -161,11 +187,15 @@ public class Cache<T> {
         key = getEffectiveKey(key);
         CacheValue<T> cacheValue = cache.get(key);
         if (cacheValue == null) {
+            missCount.increment();
             return null;
         } else if (cacheValue.isExpire(now())) {
-            cache.remove(key);
+            removeEntry(key);
+            missCount.increment();
             return null;
         } else {
+            hitCount.increment();
+            recordAccess(key);
             return cacheValue.getValue();
         }
     }
@@ -179,7 +209,7 @@ public class Cache<T> {
             return null;
         }
 
-        CacheValue<T> cacheValue = cache.remove(getEffectiveKey(key));
+        CacheValue<T> cacheValue = removeEntry(getEffectiveKey(key));
         return cacheValue == null ? null : cacheValue.getValue();
     }
 
@@ -197,7 +227,7 @@ public class Cache<T> {
         if (cacheValue == null) {
             return false;
         } else if (cacheValue.isExpire(now())) {
-            cache.remove(key);
+            removeEntry(key);
             return false;
         } else {
             return true;
@@ -214,9 +244,11 @@ public class Cache<T> {
             return false;
         }
 
+        Entry<Comparable<?>, CacheValue<T>> entry;
         CacheValue<T> cacheValue;
         for (Iterator<Entry<Comparable<?>, CacheValue<T>>> i = cache.entrySet().iterator(); i.hasNext();) {
-            cacheValue = i.next().getValue();
+            entry = i.next();
+            cacheValue = entry.getValue();
             if (cacheValue.isAlive(now())) {
                 if (   (value == null && cacheValue.getValue() == null) 
                     || (value != null && value.equals(cacheValue.getValue())) 
@@ -224,7 +256,7 @@ public class Cache<T> {
                     return true;
                 }
             } else {
-                i.remove();
+                removeEntry(entry.getKey());
             }
         }
         return false;
@@ -240,13 +272,13 @@ public class Cache<T> {
         }
 
         Collection<T> values = new ArrayList<>();
-        CacheValue<T> value;
+        Entry<Comparable<?>, CacheValue<T>> entry;
         for (Iterator<Entry<Comparable<?>, CacheValue<T>>> i = cache.entrySet().iterator(); i.hasNext();) {
-            value = i.next().getValue();
-            if (value.isAlive(now())) {
-                values.add(value.getValue());
+            entry = i.next();
+            if (entry.getValue().isAlive(now())) {
+                values.add(entry.getValue().getValue());
             } else {
-                i.remove();
+                removeEntry(entry.getKey());
             }
         }
         return values;
@@ -274,7 +306,7 @@ public class Cache<T> {
     public void clear() {
         Preconditions.checkState(!isDestroy);
 
-        cache.clear();
+        clearEntries();
     }
 
     /**
@@ -287,19 +319,249 @@ public class Cache<T> {
         } catch (Exception ignored) {
             ignored.printStackTrace();
         }
-        cache.clear();
+        clearEntries();
     }
 
     public boolean isDestroy() {
         return isDestroy;
     }
 
+    /**
+     * 清理已过期的数据：
+     * 定时清理时只处理时间轮中到期的桶，否则遍历全部数据
+     */
+    public void cleanUp() {
+        if (isDestroy) {
+            return;
+        }
+
+        if (timingWheel == null) {
+            long now = now();
+            Entry<Comparable<?>, CacheValue<T>> entry;
+            for (Iterator<Entry<Comparable<?>, CacheValue<T>>> i = cache.entrySet().iterator(); i.hasNext();) {
+                entry = i.next();
+                if (entry.getValue().isExpire(now)) {
+                    removeEntry(entry.getKey());
+                }
+            }
+            return;
+        }
+
+        entryLock.lock();
+        try {
+            drainWheelWrites();
+            timingWheel.advance(now(), this::expire);
+        } finally {
+            entryLock.unlock();
+        }
+    }
+
+    /**
+     * Returns whether the cache is bounded by maximum size or weight
+     * @return {@code true} if bounded
+     */
+    public boolean isBounded() {
+        return policy != null;
+    }
+
+    /**
+     * Returns the total weight of the cache entries, 
+     * equals {@link #size()} if unbounded or without weigher
+     * @return the weighted size
+     */
+    public long weightedSize() {
+        if (policy == null) {
+            return cache.size();
+        }
+        entryLock.lock();
+        try {
+            return policy.weightedSize();
+        } finally {
+            entryLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the snapshot of the cache statistics
+     * @return the cache stats
+     */
+    public CacheStats stats() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), 
+                              evictionCount.sum(), evictionWeight.sum(), 
+                              loadSuccessCount.sum(), loadFailureCount.sum());
+    }
+
+    // --------------------------------package methods for sub class-------------------------------
+    /**
+     * 获取原始的缓存值（不校验是否过期）
+     * @param effectiveKey the effective key
+     * @return the cache value
+     */
+    CacheValue<T> getCacheValue(Comparable<?> effectiveKey) {
+        return cache.get(effectiveKey);
+    }
+
+    void recordAccess(Comparable<?> effectiveKey, boolean hit) {
+        if (hit) {
+            hitCount.increment();
+            recordAccess(effectiveKey);
+        } else {
+            missCount.increment();
+        }
+    }
+
+    void recordLoad(boolean success) {
+        if (success) {
+            loadSuccessCount.increment();
+        } else {
+            loadFailureCount.increment();
+        }
+    }
+
+    // --------------------------------private methods-------------------------------
+    /**
+     * 有淘汰策略时写操作需加锁，保证与缓存容器的一致性；
+     * 无容量限制时写操作不加锁，时间轮通过写缓冲异步同步
+     */
+    private void putEntry(Comparable<?> key, CacheValue<T> value) {
+        if (policy == null) {
+            cache.put(key, value);
+            afterWrite(key);
+            return;
+        }
+
+        int weight = 0;
+        if (policy != null) {
+            weight = weigher == null ? 1 : weigher.weigh(key, value.getValue());
+            Preconditions.checkState(weight >= 0, "Negative weight: " + weight);
+        }
+        entryLock.lock();
+        try {
+            cache.put(key, value);
+            if (timingWheel != null) {
+                timingWheel.schedule(key, value);
+            }
+            if (policy != null) {
+                policy.onWrite(key, weight, this::evict);
+            }
+        } finally {
+            entryLock.unlock();
+        }
+    }
+
+    private CacheValue<T> removeEntry(Comparable<?> key) {
+        if (policy == null) {
+            CacheValue<T> value = cache.remove(key);
+            if (value != null) {
+                afterWrite(key);
+            }
+            return value;
+        }
+
+        entryLock.lock();
+        try {
+            if (timingWheel != null) {
+                timingWheel.deschedule(key);
+            }
+            if (policy != null) {
+                policy.onRemove(key);
+            }
+            return cache.remove(key);
+        } finally {
+            entryLock.unlock();
+        }
+    }
+
+    private void clearEntries() {
+        if (policy == null && timingWheel == null) {
+            cache.clear();
+            return;
+        }
+
+        entryLock.lock();
+        try {
+            if (timingWheel != null) {
+                timingWheel.clear();
+            }
+            if (policy != null) {
+                policy.clear();
+            }
+            cache.clear();
+        } finally {
+            entryLock.unlock();
+        }
+    }
+
+    /**
+     * 无容量限制时key放入写缓冲，由定时清理（或积压时抢到锁的写线程）同步到时间轮
+     * @param key the effective key
+     */
+    private void afterWrite(Comparable<?> key) {
+        if (timingWheel == null) {
+            return;
+        }
+        wheelWrites.offer(key);
+        if (pendingWheelWrites.incrementAndGet() >= WHEEL_DRAIN_THRESHOLD && entryLock.tryLock()) {
+            try {
+                drainWheelWrites();
+            } finally {
+                entryLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 按缓存容器中的当前值同步写缓冲中的key到时间轮，与写入顺序无关，须持有entryLock
+     */
+    private void drainWheelWrites() {
+        Comparable<?> key;
+        for (int n = pendingWheelWrites.get(); n > 0 && (key = wheelWrites.poll()) != null; n--) {
+            pendingWheelWrites.decrementAndGet();
+            CacheValue<T> value = cache.get(key);
+            if (value == null) {
+                timingWheel.deschedule(key);
+            } else {
+                timingWheel.schedule(key, value);
+            }
+        }
+    }
+
+    /**
+     * 记录访问：竞争时放弃记录，避免读操作相互阻塞
+     * @param key the effective key
+     */
+    private void recordAccess(Comparable<?> key) {
+        if (policy != null && entryLock.tryLock()) {
+            try {
+                policy.onAccess(key);
+            } finally {
+                entryLock.unlock();
+            }
+        }
+    }
+
+    private void evict(Comparable<?> key, int weight) {
+        if (timingWheel != null) {
+            timingWheel.deschedule(key);
+        }
+        cache.remove(key);
+        evictionCount.increment();
+        evictionWeight.add(weight);
+    }
+
+    private void expire(Comparable<?> key, CacheValue<T> value) {
+        if (policy != null) {
+            policy.onRemove(key);
+        }
+        cache.remove(key, value);
+    }
+
     /**
      * get effective key
      * @param key
      * @return
      */
-    private Comparable<?> getEffectiveKey(Comparable<?> key) {
+    Comparable<?> getEffectiveKey(Comparable<?> key) {
         if (key instanceof CharSequence) {
             if (!caseSensitiveKey) {
                 key = key.toString().toLowerCase(); // 不区分大小写（转小写）
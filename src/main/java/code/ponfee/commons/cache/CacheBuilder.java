@@ -1,7 +1,10 @@
 package code.ponfee.commons.cache;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 
+import com.google.common.base.Preconditions;
+
 /**
  * 缓存构建类
  * @author fupf
@@ -14,6 +17,13 @@ public final class CacheBuilder {
     private int autoReleaseInSeconds = 0; // （默认0为不清除）清除无效key的的定时时间间隔
     private long keepaliveInMillis = 0; // key保留时间，0表示无限制
     private ScheduledExecutorService executor; // 定时执行器
+    private long maximumSize = 0; // 最大缓存数量，0表示无限制
+    private long maximumWeight = 0; // 最大缓存权重，0表示无限制
+    private Weigher<?> weigher; // 权重计算器，与maximumWeight配合使用
+    private DateProvider dateProvider; // 时间服务，默认为系统时间
+    private long refreshAheadInMillis = 0; // 提前刷新时间（只针对LoadingCache）
+    private long staleInMillis = 0; // 过期后可使用旧值的时间（只针对LoadingCache）
+    private Executor refreshExecutor; // 异步刷新执行器（只针对LoadingCache）
 
     public CacheBuilder caseSensitiveKey(boolean caseSensitiveKey) {
         this.caseSensitiveKey = caseSensitiveKey;
@@ -40,9 +50,92 @@ public final class CacheBuilder {
         return this;
     }
 
+    /**
+     * 设置最大缓存数量，超出时按分段LRU淘汰
+     * @param maximumSize
+     * @return
+     */
+    public CacheBuilder maximumSize(long maximumSize) {
+        Preconditions.checkArgument(maximumSize > 0);
+        Preconditions.checkState(this.maximumWeight == 0, "Maximum weight was already set.");
+        this.maximumSize = maximumSize;
+        return this;
+    }
+
+    /**
+     * 设置最大缓存权重，超出时按分段LRU淘汰，需配合{@link #weigher(Weigher)}
+     * @param maximumWeight
+     * @return
+     */
+    public CacheBuilder maximumWeight(long maximumWeight) {
+        Preconditions.checkArgument(maximumWeight > 0);
+        Preconditions.checkState(this.maximumSize == 0, "Maximum size was already set.");
+        this.maximumWeight = maximumWeight;
+        return this;
+    }
+
+    public CacheBuilder weigher(Weigher<?> weigher) {
+        this.weigher = weigher;
+        return this;
+    }
+
+    /**
+     * 设置时间服务，如测试时使用模拟时钟
+     * @param dateProvider
+     * @return
+     */
+    public CacheBuilder dateProvider(DateProvider dateProvider) {
+        this.dateProvider = dateProvider;
+        return this;
+    }
+
+    /**
+     * 距离过期时间小于该值时异步刷新（只针对LoadingCache）
+     * @param refreshAheadInMillis
+     * @return
+     */
+    public CacheBuilder refreshAheadInMillis(long refreshAheadInMillis) {
+        this.refreshAheadInMillis = refreshAheadInMillis;
+        return this;
+    }
+
+    /**
+     * 过期后在该时间内返回旧值并异步刷新（只针对LoadingCache）
+     * @param staleInMillis
+     * @return
+     */
+    public CacheBuilder staleInMillis(long staleInMillis) {
+        this.staleInMillis = staleInMillis;
+        return this;
+    }
+
+    public CacheBuilder refreshExecutor(Executor refreshExecutor) {
+        this.refreshExecutor = refreshExecutor;
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
     public <T> Cache<T> build() {
+        checkWeigher();
         return new Cache<>(caseSensitiveKey, compressKey, keepaliveInMillis, 
-                           autoReleaseInSeconds, executor);
+                           autoReleaseInSeconds, executor, 
+                           maximumSize > 0 ? maximumSize : maximumWeight, 
+                           (Weigher<? super T>) weigher, dateProvider);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> LoadingCache<T> build(CacheLoader<T> loader) {
+        checkWeigher();
+        return new LoadingCache<>(caseSensitiveKey, compressKey, keepaliveInMillis, 
+                                  autoReleaseInSeconds, executor, 
+                                  maximumSize > 0 ? maximumSize : maximumWeight, 
+                                  (Weigher<? super T>) weigher, dateProvider, 
+                                  loader, refreshAheadInMillis, staleInMillis, refreshExecutor);
+    }
+
+    private void checkWeigher() {
+        Preconditions.checkState((maximumWeight > 0) == (weigher != null), 
+                                 "Maximum weight and weigher must be set together.");
     }
 
     public static CacheBuilder newBuilder() {
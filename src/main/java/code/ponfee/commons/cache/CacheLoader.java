@@ -0,0 +1,52 @@
+package code.ponfee.commons.cache;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 缓存加载器
+ *
+ * @author fupf
+ * @param <T>
+ */
+@FunctionalInterface
+public interface CacheLoader<T> {
+
+    /**
+     * 加载单个缓存值
+     *
+     * @param key the original key
+     * @return the value, may be null
+     * @throws Exception if load occur error
+     */
+    T load(Comparable<?> key) throws Exception;
+
+    /**
+     * 批量加载缓存值，默认逐个加载，可重写为批量查询
+     *
+     * @param keys the original keys
+     * @return the map of key and value, the absent key will be cache with null
+     * @throws Exception if load occur error
+     */
+    default Map<Comparable<?>, T> loadAll(Collection<? extends Comparable<?>> keys) throws Exception {
+        Map<Comparable<?>, T> result = new LinkedHashMap<>(keys.size() << 1);
+        for (Comparable<?> key : keys) {
+            result.put(key, load(key));
+        }
+        return result;
+    }
+
+    /**
+     * 异步刷新时重新加载，默认调用{@link #load(Comparable)}
+     *
+     * @param key      the original key
+     * @param oldValue the old value
+     * @return the new value
+     * @throws Exception if load occur error
+     */
+    default T reload(Comparable<?> key, T oldValue) throws Exception {
+        return load(key);
+    }
+
+}
@@ -0,0 +1,81 @@
+package code.ponfee.commons.cache;
+
+/**
+ * 缓存统计（快照）
+ *
+ * @author fupf
+ */
+public final class CacheStats implements java.io.Serializable {
+
+    private static final long serialVersionUID = -7281949311736296542L;
+
+    private final long hitCount; // 命中次数
+    private final long missCount; // 未命中次数
+    private final long evictionCount; // 容量淘汰次数
+    private final long evictionWeight; // 容量淘汰的权重总和
+    private final long loadSuccessCount; // 加载成功次数
+    private final long loadFailureCount; // 加载失败次数
+
+    CacheStats(long hitCount, long missCount, long evictionCount, 
+               long evictionWeight, long loadSuccessCount, long loadFailureCount) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.evictionWeight = evictionWeight;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+    }
+
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+
+    public long hitCount() {
+        return hitCount;
+    }
+
+    public long missCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the ratio of requests which were hits, 
+     * 1.0 when none request
+     * 
+     * @return the hit rate
+     */
+    public double hitRate() {
+        long requestCount = requestCount();
+        return requestCount == 0 ? 1.0D : (double) hitCount / requestCount;
+    }
+
+    public double missRate() {
+        long requestCount = requestCount();
+        return requestCount == 0 ? 0.0D : (double) missCount / requestCount;
+    }
+
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    public long evictionWeight() {
+        return evictionWeight;
+    }
+
+    public long loadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    public long loadFailureCount() {
+        return loadFailureCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hitCount=" + hitCount + ", missCount=" + missCount 
+            + ", hitRate=" + hitRate() + ", evictionCount=" + evictionCount 
+            + ", evictionWeight=" + evictionWeight + ", loadSuccessCount=" + loadSuccessCount 
+            + ", loadFailureCount=" + loadFailureCount + "}";
+    }
+
+}
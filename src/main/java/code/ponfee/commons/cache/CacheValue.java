@@ -33,4 +33,8 @@ class CacheValue<T> implements java.io.Serializable {
         return value;
     }
 
+    long getExpireTimeMillis() {
+        return expireTimeMillis;
+    }
+
 }
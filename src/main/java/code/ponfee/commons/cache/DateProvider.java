@@ -6,7 +6,7 @@ package code.ponfee.commons.cache;
  * @author fupf
  */
 @FunctionalInterface
-interface DateProvider {
+public interface DateProvider {
 
     DateProvider SYSTEM = System::currentTimeMillis;
 
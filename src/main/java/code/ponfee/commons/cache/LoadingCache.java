@@ -0,0 +1,283 @@
+package code.ponfee.commons.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.AbortPolicy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import code.ponfee.commons.concurrent.ThreadPoolExecutors;
+
+/**
+ * 自动加载的缓存：
+ *   1、未命中时同一个key只有一个线程调用加载器（single-flight），其它线程等待加载结果；
+ *   2、距离过期时间小于refreshAheadInMillis时，返回当前值并异步刷新；
+ *   3、过期后在staleInMillis时间内，返回旧值并异步刷新，刷新失败则继续使用旧值直到真正失效；
+ *
+ * 加载器返回的null值也会被缓存
+ *
+ * @author fupf
+ * @param <T>
+ */
+public class LoadingCache<T> extends Cache<T> {
+
+    private static Logger logger = LoggerFactory.getLogger(LoadingCache.class);
+
+    /** The default refresh executor shared of class level */
+    private static volatile Executor defaultRefreshExecutor;
+
+    private final CacheLoader<T> loader; // 加载器
+    private final long refreshAheadInMillis; // 提前刷新的时间，0表示不提前刷新
+    private final long staleInMillis; // 过期后可继续使用旧值的时间，0表示不使用旧值
+    private final Executor refreshExecutor; // 异步刷新执行器
+    private final ConcurrentMap<Comparable<?>, CompletableFuture<T>> loadings = new ConcurrentHashMap<>();
+
+    LoadingCache(boolean caseSensitiveKey, boolean compressKey, long keepAliveInMillis,
+                 int autoReleaseInSeconds, ScheduledExecutorService scheduleExecutor,
+                 long maximumWeight, Weigher<? super T> weigher, DateProvider dateProvider,
+                 CacheLoader<T> loader, long refreshAheadInMillis,
+                 long staleInMillis, Executor refreshExecutor) {
+        super(caseSensitiveKey, compressKey, keepAliveInMillis, autoReleaseInSeconds,
+              scheduleExecutor, maximumWeight, weigher, dateProvider);
+        Preconditions.checkArgument(loader != null, "Cache loader cannot be null.");
+        Preconditions.checkArgument(refreshAheadInMillis >= 0);
+        Preconditions.checkArgument(staleInMillis >= 0);
+
+        this.loader = loader;
+        this.refreshAheadInMillis = refreshAheadInMillis;
+        this.staleInMillis = staleInMillis;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * 写入时把失效时间延长staleInMillis，用于过期后返回旧值
+     */
+    @Override
+    public void set(Comparable<?> key, T value, long expireTimeMillis) {
+        if (staleInMillis > 0 && expireTimeMillis > KEEPALIVE_FOREVER) {
+            expireTimeMillis += staleInMillis;
+        }
+        super.set(key, value, expireTimeMillis);
+    }
+
+    /**
+     * 获取，未命中时加载
+     * @param key
+     * @return
+     */
+    @Override
+    public T get(Comparable<?> key) {
+        if (isDestroy()) {
+            return null;
+        }
+
+        Comparable<?> effectiveKey = getEffectiveKey(key);
+        CacheValue<T> cacheValue = getCacheValue(effectiveKey);
+        long now = now();
+        if (cacheValue != null && cacheValue.isAlive(now)) {
+            recordAccess(effectiveKey, true);
+            long expireTimeMillis = cacheValue.getExpireTimeMillis();
+            if (expireTimeMillis != KEEPALIVE_FOREVER) {
+                expireTimeMillis -= staleInMillis; // 逻辑过期时间
+                if (expireTimeMillis - now <= refreshAheadInMillis) {
+                    refresh(key, effectiveKey, cacheValue.getValue());
+                }
+            }
+            return cacheValue.getValue();
+        }
+
+        recordAccess(effectiveKey, false);
+        return load(key, effectiveKey);
+    }
+
+    /**
+     * 批量获取，未命中的key通过{@link CacheLoader#loadAll(Collection)}一次加载
+     * @param keys
+     * @return the map of key and value
+     */
+    public Map<Comparable<?>, T> getAll(Collection<? extends Comparable<?>> keys) {
+        Map<Comparable<?>, T> result = new LinkedHashMap<>(keys.size() << 1);
+        if (isDestroy()) {
+            return result;
+        }
+
+        Map<Comparable<?>, CompletableFuture<T>> claims = new LinkedHashMap<>();
+        Map<Comparable<?>, CompletableFuture<T>> waits = new HashMap<>();
+        Map<Comparable<?>, Comparable<?>> effectiveKeys = new HashMap<>();
+        long now = now();
+        for (Comparable<?> key : keys) {
+            Comparable<?> effectiveKey = getEffectiveKey(key);
+            CacheValue<T> cacheValue = getCacheValue(effectiveKey);
+            if (cacheValue != null && cacheValue.isAlive(now)) {
+                recordAccess(effectiveKey, true);
+                result.put(key, cacheValue.getValue());
+                continue;
+            }
+
+            recordAccess(effectiveKey, false);
+            CompletableFuture<T> future = new CompletableFuture<>();
+            CompletableFuture<T> loading = loadings.putIfAbsent(effectiveKey, future);
+            if (loading == null) {
+                claims.put(key, future);
+                effectiveKeys.put(key, effectiveKey);
+            } else {
+                waits.put(key, loading);
+            }
+        }
+
+        if (!claims.isEmpty()) {
+            try {
+                Map<Comparable<?>, T> loaded = loader.loadAll(new ArrayList<>(claims.keySet()));
+                for (Entry<Comparable<?>, CompletableFuture<T>> entry : claims.entrySet()) {
+                    T value = loaded == null ? null : loaded.get(entry.getKey());
+                    set(entry.getKey(), value);
+                    entry.getValue().complete(value);
+                    result.put(entry.getKey(), value);
+                }
+                recordLoad(true);
+            } catch (Throwable e) {
+                recordLoad(false);
+                claims.values().forEach(f -> f.completeExceptionally(e));
+                throw propagate(e);
+            } finally {
+                claims.forEach((k, f) -> loadings.remove(effectiveKeys.get(k), f));
+            }
+        }
+
+        for (Entry<Comparable<?>, CompletableFuture<T>> entry : waits.entrySet()) {
+            result.put(entry.getKey(), join(entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * 同步刷新指定key
+     * @param key
+     * @return the new value
+     */
+    public T refresh(Comparable<?> key) {
+        return load(key, getEffectiveKey(key));
+    }
+
+    public CacheLoader<T> getLoader() {
+        return loader;
+    }
+
+    public long getRefreshAheadInMillis() {
+        return refreshAheadInMillis;
+    }
+
+    public long getStaleInMillis() {
+        return staleInMillis;
+    }
+
+    // -------------------------------------------------------------private methods
+    /**
+     * 同步加载，同一个key只有一个线程执行加载
+     */
+    private T load(Comparable<?> key, Comparable<?> effectiveKey) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<T> loading = loadings.putIfAbsent(effectiveKey, future);
+        if (loading != null) {
+            return join(loading);
+        }
+
+        try {
+            T value = loader.load(key);
+            set(key, value);
+            recordLoad(true);
+            future.complete(value);
+            return value;
+        } catch (Throwable e) {
+            recordLoad(false);
+            future.completeExceptionally(e);
+            throw propagate(e);
+        } finally {
+            loadings.remove(effectiveKey, future);
+        }
+    }
+
+    /**
+     * 异步刷新，已在加载中则忽略，失败则保留旧值
+     */
+    private void refresh(Comparable<?> key, Comparable<?> effectiveKey, T oldValue) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (loadings.putIfAbsent(effectiveKey, future) != null) {
+            return;
+        }
+
+        try {
+            getRefreshExecutor().execute(() -> {
+                try {
+                    T value = loader.reload(key, oldValue);
+                    set(key, value);
+                    recordLoad(true);
+                    future.complete(value);
+                } catch (Throwable e) {
+                    recordLoad(false);
+                    logger.warn("Refresh cache value occur error: {}", key, e);
+                    future.complete(oldValue); // 等待的线程使用旧值
+                } finally {
+                    loadings.remove(effectiveKey, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("Refresh cache value rejected: {}", key);
+            loadings.remove(effectiveKey, future);
+            future.complete(oldValue);
+        }
+    }
+
+    private Executor getRefreshExecutor() {
+        if (refreshExecutor != null) {
+            return refreshExecutor;
+        }
+        if (defaultRefreshExecutor == null) {
+            synchronized (LoadingCache.class) {
+                if (defaultRefreshExecutor == null) { // double check lock
+                    ThreadPoolExecutor executor = ThreadPoolExecutors.create(
+                        4, 4, 60, 1024, "cache-refresh", new AbortPolicy()
+                    );
+                    executor.allowCoreThreadTimeOut(true);
+                    defaultRefreshExecutor = executor;
+                }
+            }
+        }
+        return defaultRefreshExecutor;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw propagate(e.getCause() == null ? e : e.getCause());
+        }
+    }
+
+    private static RuntimeException propagate(Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        } else {
+            return new RuntimeException(e);
+        }
+    }
+
+}
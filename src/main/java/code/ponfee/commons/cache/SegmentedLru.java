@@ -0,0 +1,164 @@
+package code.ponfee.commons.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 分段LRU（Segmented LRU）淘汰策略：
+ * 新写入的数据进入probation段，再次被访问时晋升到protected段，
+ * protected段超出容量时尾部数据降级回probation段，
+ * 淘汰时优先淘汰probation段的尾部数据
+ *
+ * 非线程安全，由调用方加锁
+ *
+ * @author fupf
+ */
+final class SegmentedLru {
+
+    private static final double PROTECTED_PERCENTAGE = 0.8D; // protected段占总容量的比例
+
+    private final long maximumWeight; // 总容量
+    private final long protectedMaximumWeight; // protected段的容量
+    private final Map<Comparable<?>, Node> nodes = new HashMap<>();
+
+    private final Node probation = new Node(null, 0); // probation段的哨兵节点
+    private final Node protect = new Node(null, 0); // protected段的哨兵节点
+    private long probationWeight = 0;
+    private long protectedWeight = 0;
+
+    SegmentedLru(long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+        this.protectedMaximumWeight = (long) (maximumWeight * PROTECTED_PERCENTAGE);
+        probation.prev = probation.next = probation;
+        protect.prev = protect.next = protect;
+    }
+
+    /**
+     * 记录写入，超出容量时淘汰，时间复杂度为O(1)均摊
+     *
+     * @param key       the effective key
+     * @param weight    the entry weight
+     * @param listener  the eviction listener
+     */
+    void onWrite(Comparable<?> key, int weight, EvictionListener listener) {
+        Node node = nodes.get(key);
+        if (node == null) {
+            node = new Node(key, weight);
+            nodes.put(key, node);
+            linkFirst(probation, node);
+            probationWeight += weight;
+        } else {
+            if (node.inProtected) {
+                protectedWeight += weight - node.weight;
+            } else {
+                probationWeight += weight - node.weight;
+            }
+            node.weight = weight;
+            onAccess(node);
+        }
+        evict(listener);
+    }
+
+    /**
+     * 记录访问
+     *
+     * @param key the effective key
+     */
+    void onAccess(Comparable<?> key) {
+        Node node = nodes.get(key);
+        if (node != null) {
+            onAccess(node);
+        }
+    }
+
+    /**
+     * 移除（非淘汰，如过期、删除）
+     *
+     * @param key the effective key
+     */
+    void onRemove(Comparable<?> key) {
+        Node node = nodes.remove(key);
+        if (node != null) {
+            unlink(node);
+        }
+    }
+
+    void clear() {
+        nodes.clear();
+        probation.prev = probation.next = probation;
+        protect.prev = protect.next = protect;
+        probationWeight = protectedWeight = 0;
+    }
+
+    long weightedSize() {
+        return probationWeight + protectedWeight;
+    }
+
+    // -------------------------------------------------------------private methods
+    private void onAccess(Node node) {
+        unlink(node);
+        linkFirst(protect, node);
+        node.inProtected = true;
+        protectedWeight += node.weight;
+
+        // protected段超出容量则降级尾部数据到probation段
+        for (Node tail; protectedWeight > protectedMaximumWeight
+                && (tail = protect.prev) != protect && tail != node;) {
+            unlink(tail);
+            linkFirst(probation, tail);
+            probationWeight += tail.weight;
+        }
+    }
+
+    private void evict(EvictionListener listener) {
+        for (Node victim; probationWeight + protectedWeight > maximumWeight;) {
+            victim = probation.prev != probation ? probation.prev : protect.prev;
+            if (victim == protect) {
+                break; // empty
+            }
+            nodes.remove(victim.key);
+            unlink(victim);
+            listener.onEviction(victim.key, victim.weight);
+        }
+    }
+
+    private void unlink(Node node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = node.next = null;
+        if (node.inProtected) {
+            protectedWeight -= node.weight;
+        } else {
+            probationWeight -= node.weight;
+        }
+        node.inProtected = false;
+    }
+
+    private static void linkFirst(Node head, Node node) {
+        node.prev = head;
+        node.next = head.next;
+        head.next.prev = node;
+        head.next = node;
+    }
+
+    /**
+     * 淘汰监听
+     */
+    @FunctionalInterface
+    interface EvictionListener {
+        void onEviction(Comparable<?> key, int weight);
+    }
+
+    private static final class Node {
+        final Comparable<?> key;
+        int weight;
+        boolean inProtected = false;
+        Node prev, next;
+
+        Node(Comparable<?> key, int weight) {
+            this.key = key;
+            this.weight = weight;
+        }
+    }
+
+}
@@ -0,0 +1,187 @@
+package code.ponfee.commons.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 分层时间轮：按过期时间把缓存项分配到不同层级的桶中，
+ * 每次推进只处理到期的桶，未真正过期的数据降级到更低层级的桶，
+ * 避免每次清理都遍历全部缓存
+ *
+ * 层级划分（每层64个桶，时间单位为毫秒）：
+ *   level 0: 2^10 ms/桶（约1秒），覆盖约1分钟
+ *   level 1: 2^16 ms/桶（约1分钟），覆盖约1小时
+ *   level 2: 2^22 ms/桶（约1小时），覆盖约3天
+ *   level 3: 2^28 ms/桶（约3天），覆盖约0.5年
+ *   level 4: 2^34 ms/桶（约0.5年），超出覆盖范围的数据循环放置
+ *
+ * 非线程安全，由调用方加锁
+ *
+ * @author fupf
+ * @param <T>
+ */
+final class TimingWheel<T> {
+
+    private static final int BUCKETS = 64;
+    private static final int[] SHIFTS = { 10, 16, 22, 28, 34 };
+
+    private final Node<T>[][] wheel;
+    private final Map<Comparable<?>, Node<T>> nodes = new HashMap<>();
+    private long currentTime; // 上次推进的时间
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(long currentTime) {
+        this.currentTime = currentTime;
+        this.wheel = (Node<T>[][]) new Node<?>[SHIFTS.length][BUCKETS];
+        for (int i = 0; i < SHIFTS.length; i++) {
+            for (int j = 0; j < BUCKETS; j++) {
+                Node<T> sentinel = new Node<>(null, null);
+                sentinel.prev = sentinel.next = sentinel;
+                wheel[i][j] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * 加入时间轮，已存在则重新调度，永不过期的数据则移出时间轮
+     *
+     * @param key   the effective key
+     * @param value the cache value
+     */
+    void schedule(Comparable<?> key, CacheValue<T> value) {
+        Node<T> node = nodes.get(key);
+        if (node != null) {
+            unlink(node);
+        }
+        if (value.getExpireTimeMillis() == Cache.KEEPALIVE_FOREVER) {
+            if (node != null) {
+                nodes.remove(key);
+            }
+            return;
+        }
+
+        if (node == null) {
+            node = new Node<>(key, value);
+            nodes.put(key, node);
+        } else {
+            node.value = value;
+        }
+        link(node);
+    }
+
+    /**
+     * 移出时间轮
+     *
+     * @param key the effective key
+     */
+    void deschedule(Comparable<?> key) {
+        Node<T> node = nodes.remove(key);
+        if (node != null) {
+            unlink(node);
+        }
+    }
+
+    /**
+     * 推进时间轮到指定时间，回调已过期的数据
+     *
+     * @param now      the current time millis
+     * @param listener the expiration listener
+     */
+    void advance(long now, ExpirationListener<T> listener) {
+        long previousTime = currentTime;
+        if (now <= previousTime) {
+            return;
+        }
+        currentTime = now;
+
+        for (int i = 0; i < SHIFTS.length; i++) {
+            long previousTicks = previousTime >>> SHIFTS[i];
+            long currentTicks = now >>> SHIFTS[i];
+            if (currentTicks == previousTicks) {
+                break; // 更高层级的桶不会有变化
+            }
+            expire(i, previousTicks, currentTicks - previousTicks, listener);
+        }
+    }
+
+    void clear() {
+        nodes.clear();
+        for (Node<T>[] buckets : wheel) {
+            for (Node<T> sentinel : buckets) {
+                sentinel.prev = sentinel.next = sentinel;
+            }
+        }
+    }
+
+    int size() {
+        return nodes.size();
+    }
+
+    // -------------------------------------------------------------private methods
+    private void expire(int level, long previousTicks, long delta, ExpirationListener<T> listener) {
+        Node<T>[] buckets = wheel[level];
+        int start = (int) (previousTicks & (BUCKETS - 1));
+        int steps = (int) Math.min(delta + 1, BUCKETS);
+        for (int i = 0; i < steps; i++) {
+            Node<T> sentinel = buckets[(start + i) & (BUCKETS - 1)];
+            Node<T> node = sentinel.next;
+            sentinel.prev = sentinel.next = sentinel;
+            for (Node<T> next; node != sentinel; node = next) {
+                next = node.next;
+                node.prev = node.next = null;
+                if (node.value.isExpire(currentTime)) {
+                    nodes.remove(node.key);
+                    listener.onExpiration(node.key, node.value);
+                } else {
+                    link(node); // 未过期则重新分配到合适的桶
+                }
+            }
+        }
+    }
+
+    private void link(Node<T> node) {
+        // 已过期的数据放到当前桶，下次推进时处理
+        long time = Math.max(node.value.getExpireTimeMillis(), currentTime);
+        long duration = time - currentTime;
+        int level = SHIFTS.length - 1;
+        for (int i = 0; i < SHIFTS.length - 1; i++) {
+            if (duration < (1L << SHIFTS[i + 1])) {
+                level = i;
+                break;
+            }
+        }
+        Node<T> sentinel = wheel[level][(int) ((time >>> SHIFTS[level]) & (BUCKETS - 1))];
+        node.prev = sentinel.prev;
+        node.next = sentinel;
+        sentinel.prev.next = node;
+        sentinel.prev = node;
+    }
+
+    private static <T> void unlink(Node<T> node) {
+        if (node.prev != null) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = node.next = null;
+        }
+    }
+
+    /**
+     * 过期监听
+     */
+    @FunctionalInterface
+    interface ExpirationListener<T> {
+        void onExpiration(Comparable<?> key, CacheValue<T> value);
+    }
+
+    private static final class Node<T> {
+        final Comparable<?> key;
+        CacheValue<T> value;
+        Node<T> prev, next;
+
+        Node(Comparable<?> key, CacheValue<T> value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+}
@@ -0,0 +1,21 @@
+package code.ponfee.commons.cache;
+
+/**
+ * 缓存项权重计算
+ *
+ * @author fupf
+ * @param <T>
+ */
+@FunctionalInterface
+public interface Weigher<T> {
+
+    /**
+     * Returns the weight of a cache entry, must be non-negative
+     *
+     * @param key   the effective cache key
+     * @param value the cache value, may be null
+     * @return the weight of the entry
+     */
+    int weigh(Comparable<?> key, T value);
+
+}
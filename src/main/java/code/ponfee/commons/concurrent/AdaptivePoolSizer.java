@@ -0,0 +1,98 @@
+package code.ponfee.commons.concurrent;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * 线程池大小自适应调整器
+ * <p>按周期统计该周期内任务的平均排队延迟：超过目标值或出现拒绝（调用方执行）时扩容，
+ * 低于目标值的1/4且有空闲线程时缩容，核心线程数在[minCoreSize, maxCoreSize]区间内调整
+ * @author Ponfee
+ */
+public class AdaptivePoolSizer {
+
+    private static Logger logger = LoggerFactory.getLogger(AdaptivePoolSizer.class);
+
+    private final MonitoredThreadPoolExecutor executor;
+    private final int minCoreSize;
+    private final int maxCoreSize;
+    private final long targetQueueMicros;
+    private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(
+        1, new NamedThreadFactory("adaptive-pool-sizer", true)
+    );
+
+    private long lastCount;
+    private long lastSumMicros;
+    private long lastRejected;
+
+    /**
+     * @param executor        被调整的线程池
+     * @param minCoreSize     最小核心线程数
+     * @param maxCoreSize     最大核心线程数
+     * @param targetQueueMillis 目标平均排队延迟（毫秒）
+     * @param periodMillis    调整周期（毫秒）
+     */
+    public AdaptivePoolSizer(MonitoredThreadPoolExecutor executor, int minCoreSize, int maxCoreSize,
+                             long targetQueueMillis, long periodMillis) {
+        Preconditions.checkArgument(minCoreSize >= 0 && minCoreSize <= maxCoreSize && maxCoreSize > 0);
+        Preconditions.checkArgument(targetQueueMillis > 0 && periodMillis > 0);
+        this.executor = executor;
+        this.minCoreSize = minCoreSize;
+        this.maxCoreSize = maxCoreSize;
+        this.targetQueueMicros = TimeUnit.MILLISECONDS.toMicros(targetQueueMillis);
+        this.scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                adjust();
+            } catch (Throwable t) {
+                logger.error("Adjust thread pool size occur error", t);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止调整
+     */
+    public void stop() {
+        scheduler.shutdown();
+    }
+
+    void adjust() {
+        if (executor.isShutdown()) {
+            stop();
+            return;
+        }
+
+        MonitoredThreadPoolExecutor.Metrics metrics = executor.snapshot();
+        LatencyHistogram.Snapshot latency = metrics.queueLatency();
+        long count = latency.count() - lastCount, sumMicros = latency.sumMicros() - lastSumMicros;
+        long rejected = metrics.rejectedCount() - lastRejected;
+        lastCount = latency.count();
+        lastSumMicros = latency.sumMicros();
+        lastRejected = metrics.rejectedCount();
+
+        long meanMicros = count == 0 ? 0 : sumMicros / count;
+        int core = metrics.corePoolSize(), target = core;
+        if ((meanMicros > targetQueueMicros || rejected > 0) && core < maxCoreSize) {
+            target = Math.min(maxCoreSize, core + Math.max(1, core / 4)); // 扩容25%
+        } else if (meanMicros < targetQueueMicros / 4 && metrics.activeCount() < core && core > minCoreSize) {
+            target = core - 1; // 逐个缩容
+        }
+        if (target == core) {
+            return;
+        }
+
+        if (target > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(target);
+        }
+        executor.setCorePoolSize(target);
+        logger.info("Adjust thread pool {} core size from {} to {}, mean queue latency {}us, rejected {}",
+                    metrics.name(), core, target, meanMicros, rejected);
+    }
+
+}
@@ -4,22 +4,46 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.ExceptionHandler;
+import com.lmax.disruptor.InsufficientCapacityException;
+import com.lmax.disruptor.LiteTimeoutBlockingWaitStrategy;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.TimeoutHandler;
+import com.lmax.disruptor.dsl.ProducerType;
 
 /**
  * 异步批量数据中转站
+ * <p>默认使用无界队列，由独立线程轮询消费；
+ * 指定bufferSize时使用有界环形缓冲（disruptor），消费线程在达到数量阀值或
+ * 周期到期时被唤醒，缓冲满时按{@link OverflowPolicy}处理，批次列表在任务执行完后复用
+ * （此模式下RunnableFactory创建的任务不能在执行结束后继续持有list）
  * @author Ponfee
  * @param <T>
  */
 public final class AsyncBatchTransmitter<T> {
 
-    private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+    private static Logger logger = LoggerFactory.getLogger(AsyncBatchTransmitter.class);
+
+    private final Queue<T> queue;
     private final AsyncBatchThread batch;
+    private final RingBuffer<Holder<T>> ringBuffer;
+    private final RingBufferConsumer consumer;
+    private final OverflowPolicy overflowPolicy;
     private volatile boolean isEnd = false;
+    private final AtomicInteger inflight = new AtomicInteger(); // 正在放入环形缓冲的数量
 
     public AsyncBatchTransmitter(RunnableFactory<T> factory) {
         this(factory, 1000, 200);
@@ -38,8 +62,53 @@ public final class AsyncBatchTransmitter<T> {
      */
     public AsyncBatchTransmitter(RunnableFactory<T> factory, int thresholdPeriod, 
                                  int thresholdChunk, ThreadPoolExecutor executor) {
+        this.queue = new ConcurrentLinkedQueue<>();
         this.batch = new AsyncBatchThread(factory, thresholdPeriod, 
                                           thresholdChunk, executor);
+        this.ringBuffer = null;
+        this.consumer = null;
+        this.overflowPolicy = null;
+    }
+
+    public AsyncBatchTransmitter(RunnableFactory<T> factory, int thresholdPeriod, int thresholdChunk,
+                                 int bufferSize, OverflowPolicy overflowPolicy) {
+        this(factory, thresholdPeriod, thresholdChunk, bufferSize, overflowPolicy, null);
+    }
+
+    /**
+     * 有界环形缓冲模式
+     * @param factory         消费线程工厂
+     * @param thresholdPeriod 消费周期阀值
+     * @param thresholdChunk  消费数量阀值
+     * @param bufferSize      环形缓冲大小（向上取2的幂）
+     * @param overflowPolicy  缓冲满时的处理策略
+     * @param executor        线程执行器
+     */
+    public AsyncBatchTransmitter(RunnableFactory<T> factory, int thresholdPeriod, int thresholdChunk,
+                                 int bufferSize, OverflowPolicy overflowPolicy, 
+                                 ThreadPoolExecutor executor) {
+        this(factory, thresholdPeriod, thresholdChunk, bufferSize, overflowPolicy, executor, false);
+    }
+
+    /**
+     * @param destroyExecutorWhenEnd 结束时是否关闭传入的executor
+     */
+    AsyncBatchTransmitter(RunnableFactory<T> factory, int thresholdPeriod, int thresholdChunk,
+                          int bufferSize, OverflowPolicy overflowPolicy, 
+                          ThreadPoolExecutor executor, boolean destroyExecutorWhenEnd) {
+        Preconditions.checkArgument(bufferSize > 0 && bufferSize <= 1 << 30);
+        Preconditions.checkNotNull(overflowPolicy);
+        this.queue = null;
+        this.batch = null;
+        this.overflowPolicy = overflowPolicy;
+        this.ringBuffer = RingBuffer.create(
+            ProducerType.MULTI, Holder::new, 
+            bufferSize == 1 ? 1 : Integer.highestOneBit(bufferSize - 1) << 1,
+            // 无数据时最多等待1/4周期后检查是否到期
+            new LiteTimeoutBlockingWaitStrategy(NumberUtils.max(1, thresholdPeriod / 4), TimeUnit.MILLISECONDS)
+        );
+        this.consumer = new RingBufferConsumer(factory, thresholdPeriod, thresholdChunk, 
+                                               executor, destroyExecutorWhenEnd);
     }
 
     /**
@@ -48,7 +117,42 @@ public final class AsyncBatchTransmitter<T> {
      * @return
      */
     public boolean put(T t) {
-        return this.queue.offer(t);
+        if (this.ringBuffer == null) {
+            return this.queue.offer(t);
+        }
+
+        // 先登记再检查isEnd，end()等待登记数归零后才发布结束标记，保证结束标记是最后一个槽位
+        inflight.incrementAndGet();
+        try {
+            return !isEnd && publish(t);
+        } finally {
+            inflight.decrementAndGet();
+        }
+    }
+
+    private boolean publish(T t) {
+        long sequence;
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            sequence = ringBuffer.next(); // 缓冲满时park等待
+        } else {
+            try {
+                sequence = ringBuffer.tryNext();
+            } catch (InsufficientCapacityException e) {
+                if (overflowPolicy == OverflowPolicy.DROP) {
+                    return false;
+                }
+                List<T> list = new ArrayList<>(1);
+                list.add(t);
+                consumer.factory.create(list, false).run(); // CALLER_RUNS
+                return true;
+            }
+        }
+        try {
+            ringBuffer.get(sequence).value = t;
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+        return true;
     }
 
     /**
@@ -63,7 +167,7 @@ public final class AsyncBatchTransmitter<T> {
 
         boolean flag = true;
         for (T t : ts) {
-            flag &= this.queue.offer(t);
+            flag &= this.put(t);
         }
         return flag;
     }
@@ -80,7 +184,7 @@ public final class AsyncBatchTransmitter<T> {
 
         boolean flag = true;
         for (T t : list) {
-            flag &= this.queue.offer(t);
+            flag &= this.put(t);
         }
         return flag;
     }
@@ -88,15 +192,41 @@ public final class AsyncBatchTransmitter<T> {
     /**
      * 结束
      */
-    public void end() {
+    public synchronized void end() {
         if (isEnd) {
             return;
         }
+        if (this.ringBuffer != null) {
+            this.isEnd = true;
+            while (inflight.get() > 0) {
+                // 等待已通过isEnd检查的put完成发布（BLOCK策略时消费线程仍在消费，不会死锁）
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            }
+            long sequence = ringBuffer.next(); // 结束标记，消费完之前的数据后退出
+            try {
+                ringBuffer.get(sequence).end = true;
+            } finally {
+                ringBuffer.publish(sequence);
+            }
+            return;
+        }
         this.batch.refresh();
         this.isEnd = true;
         this.batch.refresh();
     }
 
+    /**
+     * 环形缓冲满时的处理策略
+     */
+    public enum OverflowPolicy {
+        /** 等待直到有空位 */
+        BLOCK, 
+        /** 丢弃并返回false */
+        DROP, 
+        /** 在调用方线程直接消费 */
+        CALLER_RUNS
+    }
+
     /**
      * asnyc batch consume into this alone thread
      */
@@ -196,4 +326,120 @@ public final class AsyncBatchTransmitter<T> {
         }
     }
 
+    private static final class Holder<T> {
+        T value;
+        boolean end;
+    }
+
+    /**
+     * consume the ring buffer in this alone thread, wake up by chunk or deadline
+     * <p>异常只记录日志，不能使消费线程退出（否则BLOCK策略的生产者将一直等待）
+     */
+    private final class RingBufferConsumer 
+        implements EventHandler<Holder<T>>, TimeoutHandler, ExceptionHandler<Holder<T>> {
+
+        final RunnableFactory<T> factory; // 线程工厂
+        final int thresholdPeriod; // 消费周期阀值
+        final int thresholdChunk; // 消费数量阀值
+        final boolean requireDestroyWhenEnd;
+        final ThreadPoolExecutor executor;
+        final BatchEventProcessor<Holder<T>> processor;
+        final Queue<List<T>> lists = new ConcurrentLinkedQueue<>(); // 可复用的批次列表
+
+        List<T> list;
+        long batchStartMillis; // 当前批次第一条数据的时间
+
+        RingBufferConsumer(RunnableFactory<T> factory, int thresholdPeriod, int thresholdChunk, 
+                           ThreadPoolExecutor executor, boolean destroyExecutorWhenEnd) {
+            Preconditions.checkArgument(thresholdPeriod > 0);
+            Preconditions.checkArgument(thresholdChunk > 0);
+
+            this.factory = factory;
+            this.thresholdPeriod = thresholdPeriod;
+            this.thresholdChunk = thresholdChunk;
+            if (executor == null) {
+                this.requireDestroyWhenEnd = true;
+                this.executor = ThreadPoolExecutors.create(0, 10, 300, 0, "async-batch-transmitter");
+            } else {
+                this.requireDestroyWhenEnd = destroyExecutorWhenEnd;
+                this.executor = executor;
+            }
+            this.list = new ArrayList<>(thresholdChunk);
+            this.processor = new BatchEventProcessor<>(ringBuffer, ringBuffer.newBarrier(), this);
+            this.processor.setExceptionHandler(this);
+            ringBuffer.addGatingSequences(processor.getSequence());
+            new NamedThreadFactory("async-batch-transmitter-ring", true).newThread(processor).start();
+        }
+
+        public @Override void onEvent(Holder<T> holder, long sequence, boolean endOfBatch) {
+            if (holder.end) {
+                try {
+                    flush(true);
+                } finally {
+                    processor.halt();
+                    if (requireDestroyWhenEnd) {
+                        executor.shutdown();
+                    }
+                }
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            if (list.isEmpty()) {
+                batchStartMillis = now;
+            }
+            list.add(holder.value);
+            holder.value = null; // help gc
+            if (list.size() >= thresholdChunk || now - batchStartMillis >= thresholdPeriod) {
+                flush(false);
+            }
+        }
+
+        public @Override void onTimeout(long sequence) {
+            if (!list.isEmpty() && System.currentTimeMillis() - batchStartMillis >= thresholdPeriod) {
+                flush(false);
+            }
+        }
+
+        void flush(boolean isEnd) {
+            if (list.isEmpty()) {
+                return;
+            }
+            List<T> chunk = list;
+            Runnable task = factory.create(chunk, isEnd);
+            List<T> reuse = lists.poll();
+            list = reuse != null ? reuse : new ArrayList<>(thresholdChunk);
+
+            Runnable command = () -> {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    logger.error("async batch transmitter task occur error", t);
+                } finally {
+                    chunk.clear();
+                    lists.offer(chunk); // 归还复用
+                }
+            };
+            try {
+                executor.execute(command);
+            } catch (RejectedExecutionException e) {
+                // 线程池拒绝（AbortPolicy或已关闭）时在消费线程中执行，不丢弃数据
+                logger.warn("async batch transmitter executor rejected, run in consumer thread: {}", e.getMessage());
+                command.run();
+            }
+        }
+
+        public @Override void handleEventException(Throwable t, long sequence, Holder<T> holder) {
+            logger.error("async batch transmitter consume occur error, sequence: " + sequence, t);
+        }
+
+        public @Override void handleOnStartException(Throwable t) {
+            logger.error("async batch transmitter consumer start occur error", t);
+        }
+
+        public @Override void handleOnShutdownException(Throwable t) {
+            logger.error("async batch transmitter consumer shutdown occur error", t);
+        }
+    }
+
 }
@@ -0,0 +1,109 @@
+package code.ponfee.commons.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 延迟直方图（微秒，按2的幂分桶，无锁记录）
+ * <p>第i个桶记录[2^(i-1), 2^i)微秒的次数，第0个桶记录小于1微秒的次数
+ * @author Ponfee
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 40; // 2^39微秒约6.4天，超出计入最后一个桶
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private volatile long maxMicros;
+
+    /**
+     * 记录一次延迟
+     * @param nanos 纳秒
+     */
+    public void record(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(nanos, 0));
+        buckets.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1));
+        count.increment();
+        sumMicros.add(micros);
+        if (micros > maxMicros) {
+            maxMicros = micros; // 近似值，并发时可能丢失更新
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] array = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            array[i] = buckets.get(i);
+        }
+        return new Snapshot(array, count.sum(), sumMicros.sum(), maxMicros);
+    }
+
+    /**
+     * 直方图快照
+     */
+    public static final class Snapshot {
+        private final long[] buckets;
+        private final long count;
+        private final long sumMicros;
+        private final long maxMicros;
+
+        Snapshot(long[] buckets, long count, long sumMicros, long maxMicros) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sumMicros = sumMicros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long sumMicros() {
+            return sumMicros;
+        }
+
+        public long maxMicros() {
+            return maxMicros;
+        }
+
+        public double meanMicros() {
+            return count == 0 ? 0 : (double) sumMicros / count;
+        }
+
+        /**
+         * 百分位（取所在桶的上界）
+         * @param percent (0, 100]
+         * @return 微秒
+         */
+        public long percentileMicros(double percent) {
+            long total = 0;
+            for (long bucket : buckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+
+            long threshold = (long) Math.ceil(total * percent / 100), sum = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                sum += buckets[i];
+                if (sum >= threshold) {
+                    return Math.min(i == 0 ? 0 : (1L << i) - 1, maxMicros);
+                }
+            }
+            return maxMicros;
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder("{count=").append(count)
+                .append(", mean=").append(String.format("%.1f", meanMicros()))
+                .append("us, p50=").append(percentileMicros(50))
+                .append("us, p99=").append(percentileMicros(99))
+                .append("us, max=").append(maxMicros).append("us}").toString();
+        }
+    }
+
+}
@@ -0,0 +1,217 @@
+package code.ponfee.commons.concurrent;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带监控指标的线程池
+ * <p>记录每个任务的排队延迟、执行延迟，活跃及峰值线程数，拒绝次数及调用方执行次数，
+ * 通过{@link #snapshot()}获取指标快照
+ * <p>提交的任务会被包装，getQueue()/shutdownNow()返回的是包装后的任务
+ * @author Ponfee
+ */
+public class MonitoredThreadPoolExecutor extends ThreadPoolExecutor {
+
+    private final String name;
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+    private final LatencyHistogram executeLatency = new LatencyHistogram();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger peakActiveCount = new AtomicInteger();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder callerRunCount = new LongAdder();
+
+    public MonitoredThreadPoolExecutor(String name, int corePoolSize, int maximumPoolSize,
+                                       long keepAliveTime, TimeUnit unit,
+                                       BlockingQueue<Runnable> workQueue,
+                                       ThreadFactory threadFactory,
+                                       RejectedExecutionHandler handler) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory);
+        this.name = name;
+        super.setRejectedExecutionHandler(new CountingRejectedHandler(handler));
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(command instanceof TimedTask ? command : new TimedTask(command));
+    }
+
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+        super.setRejectedExecutionHandler(new CountingRejectedHandler(handler));
+    }
+
+    @Override
+    public RejectedExecutionHandler getRejectedExecutionHandler() {
+        return ((CountingRejectedHandler) super.getRejectedExecutionHandler()).delegate;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取指标快照
+     * @return the metrics snapshot
+     */
+    public Metrics snapshot() {
+        return new Metrics(
+            name, getCorePoolSize(), getMaximumPoolSize(), getPoolSize(),
+            activeCount.get(), peakActiveCount.get(), getQueue().size(),
+            getCompletedTaskCount(), rejectedCount.sum(), callerRunCount.sum(),
+            queueLatency.snapshot(), executeLatency.snapshot()
+        );
+    }
+
+    /**
+     * 包装任务，记录入队时间
+     */
+    private final class TimedTask implements Runnable {
+        final Runnable task;
+        final long submitNanos = System.nanoTime();
+
+        TimedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            long startNanos = System.nanoTime();
+            queueLatency.record(startNanos - submitNanos);
+            int active = activeCount.incrementAndGet();
+            for (int peak; (peak = peakActiveCount.get()) < active;) {
+                if (peakActiveCount.compareAndSet(peak, active)) {
+                    break;
+                }
+            }
+            try {
+                task.run();
+            } finally {
+                activeCount.decrementAndGet();
+                executeLatency.record(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    /**
+     * 统计拒绝次数的拒绝策略
+     */
+    private final class CountingRejectedHandler implements RejectedExecutionHandler {
+        final RejectedExecutionHandler delegate;
+
+        CountingRejectedHandler(RejectedExecutionHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            rejectedCount.increment();
+            if (delegate instanceof CallerRunsPolicy && !executor.isShutdown()) {
+                callerRunCount.increment();
+            }
+            delegate.rejectedExecution(task, executor);
+        }
+    }
+
+    /**
+     * 线程池指标快照
+     */
+    public static final class Metrics {
+        private final String name;
+        private final int corePoolSize;
+        private final int maximumPoolSize;
+        private final int poolSize;
+        private final int activeCount;
+        private final int peakActiveCount;
+        private final int queueSize;
+        private final long completedTaskCount;
+        private final long rejectedCount;
+        private final long callerRunCount;
+        private final LatencyHistogram.Snapshot queueLatency;
+        private final LatencyHistogram.Snapshot executeLatency;
+
+        Metrics(String name, int corePoolSize, int maximumPoolSize, int poolSize,
+                int activeCount, int peakActiveCount, int queueSize,
+                long completedTaskCount, long rejectedCount, long callerRunCount,
+                LatencyHistogram.Snapshot queueLatency,
+                LatencyHistogram.Snapshot executeLatency) {
+            this.name = name;
+            this.corePoolSize = corePoolSize;
+            this.maximumPoolSize = maximumPoolSize;
+            this.poolSize = poolSize;
+            this.activeCount = activeCount;
+            this.peakActiveCount = peakActiveCount;
+            this.queueSize = queueSize;
+            this.completedTaskCount = completedTaskCount;
+            this.rejectedCount = rejectedCount;
+            this.callerRunCount = callerRunCount;
+            this.queueLatency = queueLatency;
+            this.executeLatency = executeLatency;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public int corePoolSize() {
+            return corePoolSize;
+        }
+
+        public int maximumPoolSize() {
+            return maximumPoolSize;
+        }
+
+        public int poolSize() {
+            return poolSize;
+        }
+
+        public int activeCount() {
+            return activeCount;
+        }
+
+        public int peakActiveCount() {
+            return peakActiveCount;
+        }
+
+        public int queueSize() {
+            return queueSize;
+        }
+
+        public long completedTaskCount() {
+            return completedTaskCount;
+        }
+
+        public long rejectedCount() {
+            return rejectedCount;
+        }
+
+        public long callerRunCount() {
+            return callerRunCount;
+        }
+
+        public LatencyHistogram.Snapshot queueLatency() {
+            return queueLatency;
+        }
+
+        public LatencyHistogram.Snapshot executeLatency() {
+            return executeLatency;
+        }
+
+        @Override
+        public String toString() {
+            return "Metrics{name=" + name + ", core=" + corePoolSize
+                + ", max=" + maximumPoolSize + ", pool=" + poolSize
+                + ", active=" + activeCount + ", peak=" + peakActiveCount
+                + ", queue=" + queueSize + ", completed=" + completedTaskCount
+                + ", rejected=" + rejectedCount + ", callerRuns=" + callerRunCount
+                + ", queueLatency=" + queueLatency
+                + ", executeLatency=" + executeLatency + "}";
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package code.ponfee.commons.concurrent;
+
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Function;
+
+import com.google.common.base.Preconditions;
+
+import code.ponfee.commons.concurrent.AsyncBatchTransmitter.OverflowPolicy;
+
+/**
+ * 按key分区的异步批量数据中转站
+ * <p>数据根据keyMapper路由到N个独立的批量通道（环形缓冲模式的{@link AsyncBatchTransmitter}），
+ * 每个通道按各自的数量和周期阀值刷新，并由单线程顺序执行，保证同一key的数据有序；
+ * 吞吐量随通道数（CPU核数）扩展；结束时每个通道的最后一批数据isEnd均为true
+ * @author Ponfee
+ * @param <T>
+ */
+public final class PartitionedBatchTransmitter<T> {
+
+    private static final int LANE_QUEUE_CAPACITY = 16; // 每个通道待执行批次的最大数量
+
+    private final Function<? super T, ?> keyMapper;
+    private final AsyncBatchTransmitter<T>[] lanes;
+
+    public PartitionedBatchTransmitter(RunnableFactory<T> factory, Function<? super T, ?> keyMapper) {
+        this(factory, keyMapper, Runtime.getRuntime().availableProcessors(), 
+             1000, 200, 8192, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * @param factory         消费线程工厂
+     * @param keyMapper       分区key
+     * @param laneCount       通道数量
+     * @param thresholdPeriod 每个通道的消费周期阀值
+     * @param thresholdChunk  每个通道的消费数量阀值
+     * @param bufferSize      每个通道的环形缓冲大小
+     * @param overflowPolicy  缓冲满时的处理策略
+     */
+    @SuppressWarnings("unchecked")
+    public PartitionedBatchTransmitter(RunnableFactory<T> factory, Function<? super T, ?> keyMapper, 
+                                       int laneCount, int thresholdPeriod, int thresholdChunk, 
+                                       int bufferSize, OverflowPolicy overflowPolicy) {
+        Preconditions.checkArgument(laneCount > 0);
+        Preconditions.checkArgument(overflowPolicy != OverflowPolicy.CALLER_RUNS, 
+                                    "caller runs cannot keep the order of key.");
+        this.keyMapper = Preconditions.checkNotNull(keyMapper);
+        this.lanes = (AsyncBatchTransmitter<T>[]) new AsyncBatchTransmitter<?>[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            // 单线程顺序执行，队列满时阻塞通道的消费线程
+            ThreadPoolExecutor executor = ThreadPoolExecutors.create(
+                1, 1, 300, LANE_QUEUE_CAPACITY, "partitioned-batch-transmitter-" + i, 
+                ThreadPoolExecutors.CALLER_BLOCKS_HANDLER
+            );
+            this.lanes[i] = new AsyncBatchTransmitter<>(factory, thresholdPeriod, thresholdChunk, 
+                                                        bufferSize, overflowPolicy, executor, true);
+        }
+    }
+
+    /**
+     * put one
+     * @param t
+     * @return
+     */
+    public boolean put(T t) {
+        return lanes[indexOf(keyMapper.apply(t))].put(t);
+    }
+
+    /**
+     * batch put
+     * @param ts
+     * @return
+     */
+    @SafeVarargs
+    public final boolean put(T... ts) {
+        if (ts == null || ts.length == 0) {
+            return false;
+        }
+
+        boolean flag = true;
+        for (T t : ts) {
+            flag &= this.put(t);
+        }
+        return flag;
+    }
+
+    /**
+     * batch put
+     * @param list
+     * @return
+     */
+    public boolean put(List<T> list) {
+        if (list == null || list.isEmpty()) {
+            return false;
+        }
+
+        boolean flag = true;
+        for (T t : list) {
+            flag &= this.put(t);
+        }
+        return flag;
+    }
+
+    /**
+     * 结束
+     */
+    public void end() {
+        for (AsyncBatchTransmitter<T> lane : lanes) {
+            lane.end();
+        }
+    }
+
+    private int indexOf(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int h = key.hashCode();
+        h ^= (h >>> 16); // spread
+        return (h & Integer.MAX_VALUE) % lanes.length;
+    }
+
+}
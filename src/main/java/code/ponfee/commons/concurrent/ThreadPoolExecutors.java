@@ -1,14 +1,22 @@
 package code.ponfee.commons.concurrent;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.AbortPolicy;
 import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
 import java.util.concurrent.TimeUnit;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * 线程池执行器创建
  * @author Ponfee
@@ -16,8 +24,26 @@ import java.util.concurrent.TimeUnit;
 public final class ThreadPoolExecutors {
     private ThreadPoolExecutors() {}
 
+    private static Logger logger = LoggerFactory.getLogger(ThreadPoolExecutors.class);
+
     public static final RejectedExecutionHandler CALLER_RUN_HANDLER = new CallerRunsPolicy();
 
+    /** 当前运行时是否支持虚拟线程（JDK 21+） */
+    public static final boolean VIRTUAL_THREAD_SUPPORTED = probeVirtualThread();
+
+    /** 队列满时阻塞调用方直到有空位（保持提交顺序），需corePoolSize > 0 */
+    public static final RejectedExecutionHandler CALLER_BLOCKS_HANDLER = (task, executor) -> {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Executor has been shutdown.");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(e);
+        }
+    };
+
     public static ThreadPoolExecutor create(int corePoolSize, int maximumPoolSize, long keepAliveTime) {
         return create(corePoolSize, maximumPoolSize, keepAliveTime, 0, null, null);
     }
@@ -50,25 +76,102 @@ public final class ThreadPoolExecutors {
     public static ThreadPoolExecutor create(int corePoolSize, int maximumPoolSize, long keepAliveTime, 
                                             int queueCapacity, String threadName, 
                                             RejectedExecutionHandler rejectedHandler) {
-        // work queue
-        BlockingQueue<Runnable> workQueue;
-        if (queueCapacity > 0) {
-            workQueue = new LinkedBlockingQueue<>(queueCapacity);
-        } else {
-            workQueue = new SynchronousQueue<>();
+        // create ThreadPoolExecutor instance
+        return new ThreadPoolExecutor(corePoolSize, maximumPoolSize, keepAliveTime, TimeUnit.SECONDS, 
+                                      workQueue(queueCapacity), new NamedThreadFactory(threadName), 
+                                      rejectedHandler(rejectedHandler));
+    }
+
+    public static MonitoredThreadPoolExecutor createMonitored(int corePoolSize, int maximumPoolSize, 
+                                                              long keepAliveTime, int queueCapacity, 
+                                                              String threadName) {
+        return createMonitored(corePoolSize, maximumPoolSize, keepAliveTime, queueCapacity, threadName, null);
+    }
+
+    /**
+     * 带监控指标的线程池创建器，提交的任务会被包装以记录延迟（见{@link MonitoredThreadPoolExecutor}）
+     * @param corePoolSize     核心线程数
+     * @param maximumPoolSize  最大线程数
+     * @param keepAliveTime    线程存活时间
+     * @param queueCapacity    队列长度
+     * @param threadName       线程名称
+     * @param rejectedHandler  拒绝策略
+     * @return a MonitoredThreadPoolExecutor instance
+     */
+    public static MonitoredThreadPoolExecutor createMonitored(int corePoolSize, int maximumPoolSize, 
+                                                              long keepAliveTime, int queueCapacity, 
+                                                              String threadName, 
+                                                              RejectedExecutionHandler rejectedHandler) {
+        // create ThreadPoolExecutor instance with metrics
+        return new MonitoredThreadPoolExecutor(threadName, corePoolSize, maximumPoolSize, 
+                                               keepAliveTime, TimeUnit.SECONDS, 
+                                               workQueue(queueCapacity), new NamedThreadFactory(threadName), 
+                                               rejectedHandler(rejectedHandler));
+    }
+
+    /**
+     * 虚拟线程执行器（每个任务一个虚拟线程），适用于阻塞I/O任务；
+     * 运行时不支持虚拟线程时使用平台线程池：最多maximumPoolSize个线程（空闲超时回收），
+     * 任务超出队列长度时抛出RejectedExecutionException，不在调用方线程中执行（避免异步调用被阻塞）
+     * @param threadName       线程名称
+     * @param maximumPoolSize  不支持时线程池的最大线程数
+     * @param keepAliveTime    不支持时线程池的线程存活时间
+     * @param queueCapacity    不支持时线程池的队列长度
+     * @return an ExecutorService instance
+     */
+    public static ExecutorService createVirtual(String threadName, int maximumPoolSize, 
+                                                long keepAliveTime, int queueCapacity) {
+        ExecutorService executor = VIRTUAL_THREAD_SUPPORTED ? createVirtualThreadExecutor(threadName) : null;
+        if (executor != null) {
+            return executor;
+        }
+
+        // 有界队列时只有队列满才会创建非核心线程，所以核心线程数取最大线程数
+        ThreadPoolExecutor pool = create(maximumPoolSize, maximumPoolSize, keepAliveTime, 
+                                         queueCapacity, threadName, new AbortPolicy());
+        if (keepAliveTime > 0) {
+            pool.allowCoreThreadTimeOut(true);
         }
+        return pool;
+    }
 
-        // thread factory, Executors.defaultThreadFactory()
-        ThreadFactory threadFactory = new NamedThreadFactory(threadName);
+    // work queue
+    private static BlockingQueue<Runnable> workQueue(int queueCapacity) {
+        return queueCapacity > 0 ? new LinkedBlockingQueue<>(queueCapacity) : new SynchronousQueue<>();
+    }
+
+    // rejected Handler Strategy
+    private static RejectedExecutionHandler rejectedHandler(RejectedExecutionHandler rejectedHandler) {
+        return rejectedHandler == null ? CALLER_RUN_HANDLER : rejectedHandler;
+    }
 
-        // rejected Handler Strategy 
-        if (rejectedHandler == null) {
-            rejectedHandler = CALLER_RUN_HANDLER;
+    private static boolean probeVirtualThread() {
+        ExecutorService executor = createVirtualThreadExecutor("virtual-probe");
+        if (executor == null) {
+            return false;
         }
+        executor.shutdown();
+        return true;
+    }
 
-        // create ThreadPoolExecutor instance
-        return new ThreadPoolExecutor(corePoolSize, maximumPoolSize, keepAliveTime, TimeUnit.SECONDS, 
-                                      workQueue, threadFactory, rejectedHandler);
+    /**
+     * 通过反射创建虚拟线程执行器（编译目标为JDK 8）
+     * @param threadName 线程名称
+     * @return the virtual thread executor, or null if unsupported
+     */
+    private static ExecutorService createVirtualThreadExecutor(String threadName) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class)
+                                 .invoke(builder, threadName + "-virtual-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) method.invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("Virtual thread unsupported: {}", e.toString());
+            return null; // JDK 21以下，或未开启preview
+        }
     }
 
 }
@@ -1,60 +1,149 @@
 package code.ponfee.commons.export;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
+import org.apache.commons.io.output.StringBuilderWriter;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.FastDateFormat;
+
+import code.ponfee.commons.io.ExtendedGZIPOutputStream;
 import code.ponfee.commons.io.Files;
+import code.ponfee.commons.util.Dates;
 import code.ponfee.commons.util.ObjectUtils;
 
 /**
- * csv导出
+ * csv导出（RFC 4180）
+ * <p>字段包含分隔符、双引号或换行符时用双引号包围，字段中的双引号转义为两个双引号
+ * <p>无参构造时在内存中构建，{@link #export()}返回csv字符串；
+ * 以Writer/OutputStream构造时经可复用的字符缓冲区直接写入输出流，
+ * 配合{@link #build(Table, Iterator)}逐行读取数据，内存占用与数据量无关
  * @author fupf
  */
 public class CsvExporter extends AbstractExporter {
 
-    private StringBuilder csv;
+    private static final String LINE_SEPARATOR = Files.WINDOWS_LINE_SEPARATOR; // RFC 4180: CRLF
+    private static final char QUOTE = '"';
+
     private final char csvSeparator;
+    private final boolean inMemory;
+    private Writer out;
+    private GZIPOutputStream gzip;
+    private char[] buffer;
+    private int count = 0;
+    private boolean written = false;
 
     public CsvExporter() {
         this(',');
     }
 
     public CsvExporter(char csvSeparator) {
+        this(new StringBuilderWriter(0x2000), csvSeparator, true); // 初始容量8192
+    }
+
+    public CsvExporter(Writer out) {
+        this(out, ',');
+    }
+
+    public CsvExporter(Writer out, char csvSeparator) {
+        this(out, csvSeparator, false);
+    }
+
+    /**
+     * @param out          输出流
+     * @param charset      字符编码
+     * @param csvSeparator 分隔符
+     * @param gzip         是否gzip压缩输出
+     */
+    public CsvExporter(OutputStream out, Charset charset, char csvSeparator, boolean gzip) {
         this.csvSeparator = csvSeparator;
-        this.csv = new StringBuilder(0x2000); // 初始容量8192
+        this.inMemory = false;
+        this.buffer = new char[Files.BUFF_SIZE];
+        try {
+            if (gzip) {
+                out = this.gzip = new ExtendedGZIPOutputStream(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.out = new OutputStreamWriter(out, charset);
+    }
+
+    private CsvExporter(Writer out, char csvSeparator, boolean inMemory) {
+        this.csvSeparator = csvSeparator;
+        this.inMemory = inMemory;
+        this.buffer = new char[Files.BUFF_SIZE];
+        this.out = out;
     }
 
     @Override
     public void build(Table table) {
-        if (csv.length() > 0) {
-            throw new UnsupportedOperationException("only support signle table");
-        }
+        List<Object[]> tbody = table.getTobdy();
+        build(table, tbody == null ? null : tbody.iterator());
+    }
+
+    /**
+     * 以流的方式构建csv，表体数据从stream中逐行读取（table的tobdy被忽略）
+     * @param table 表头、表尾等配置
+     * @param tbody 表体数据
+     */
+    public void build(Table table, Stream<Object[]> tbody) {
+        build(table, tbody == null ? null : tbody.iterator());
+    }
+
+    /**
+     * 以迭代的方式构建csv，多次构建时表格之间以空行分隔
+     * @param table 表头、表尾等配置（table的tobdy被忽略）
+     * @param tbody 表体数据
+     */
+    public void build(Table table, Iterator<Object[]> tbody) {
         if (table.getThead() == null || table.getThead().isEmpty()) {
             throw new IllegalArgumentException("thead can't be null");
         }
 
+        if (written) {
+            append(LINE_SEPARATOR); // 表格之间空一行
+        }
+        written = true;
+
         // build table thead
-        buildComplexThead(table.getThead(), table.getMaxTheadLevel());
+        buildComplexThead(table.getThead());
 
-        if (ObjectUtils.isEmpty(table.getTobdy()) && ObjectUtils.isEmpty(table.getTfoot())) {
-            csv.append(NO_RESULT_TIP);
+        boolean hasTbody = tbody != null && tbody.hasNext();
+        if (!hasTbody && ObjectUtils.isEmpty(table.getTfoot())) {
+            append(NO_RESULT_TIP);
+            append(LINE_SEPARATOR);
             return;
-        } 
+        }
 
         super.nonEmpty();
+        List<Formatter> formatters = createFormatters(table.getThead());
 
         // tbody---------------
-        List<Object[]> tbody = table.getTobdy();
-        if (tbody != null && !tbody.isEmpty()) {
+        if (hasTbody) {
             Object[] datas;
-            for (int n = tbody.size(), i = 0, j, m; i < n; i++) {
-                datas = tbody.get(i);
-                for (m = datas.length - 1, j = 0; j <= m; j++) {
-                    csv.append(datas[j]);
+            while (tbody.hasNext()) {
+                datas = tbody.next();
+                for (int m = datas.length - 1, j = 0; j <= m; j++) {
+                    appendField(format(datas[j], j < formatters.size() ? formatters.get(j) : null));
                     if (j < m) {
-                        csv.append(csvSeparator);
+                        append(csvSeparator);
                     }
                 }
-                csv.append(Files.SYSTEM_LINE_SEPARATOR); // 换行
+                append(LINE_SEPARATOR); // 换行
             }
         }
 
@@ -68,48 +157,200 @@ public class CsvExporter extends AbstractExporter {
             int n = table.getTotalLeafCount(), m = table.getTfoot().length, mergeNum = n - m;
             for (int i = 0; i < mergeNum; i++) {
                 if (i == mergeNum - 1) {
-                    csv.append("合计");
+                    append("合计");
                 }
-                csv.append(csvSeparator);
+                append(csvSeparator);
             }
             for (int i = mergeNum; i < n; i++) {
-                csv.append(table.getTfoot()[i - mergeNum]);
+                appendField(format(table.getTfoot()[i - mergeNum], formatters.get(i)));
                 if (i != n - 1) {
-                    csv.append(csvSeparator);
+                    append(csvSeparator);
                 }
             }
 
-            csv.append(Files.SYSTEM_LINE_SEPARATOR);
+            append(LINE_SEPARATOR);
         }
 
     }
 
+    /**
+     * 内存构建时返回csv字符串，输出流构建时刷新缓冲区并返回null
+     */
     @Override
     public Object export() {
-        return csv.toString();
+        flush();
+        return inMemory ? out.toString() : null;
     }
 
+    /**
+     * 刷新缓冲区并结束gzip压缩，不关闭调用方的输出流
+     */
     @Override
     public void close() {
-        csv = null;
+        if (out == null) {
+            return;
+        }
+        try {
+            flush();
+            if (gzip != null) {
+                gzip.finish();
+                gzip.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            out = null;
+            gzip = null;
+            buffer = null;
+        }
+    }
+
+    /**
+     * 将缓冲区写入输出流
+     */
+    public void flush() {
+        try {
+            if (count > 0) {
+                out.write(buffer, 0, count);
+                count = 0;
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
-    private void buildComplexThead(List<Thead> thead, int maxTheadLevel) {
+    // --------------------------------------------------------------------private methods
+    private void buildComplexThead(List<Thead> thead) {
+        boolean first = true;
         for (Thead cell : thead) {
             if (cell.isLeaf()) {
-                csv.append(cell.getName()).append(csvSeparator);
+                if (!first) {
+                    append(csvSeparator);
+                }
+                appendField(cell.getName());
+                first = false;
+            }
+        }
+        append(LINE_SEPARATOR);
+    }
+
+    /**
+     * 按RFC 4180写入字段
+     * @param field
+     */
+    private void appendField(String field) {
+        if (field == null || field.isEmpty()) {
+            return;
+        }
+
+        boolean quote = false;
+        for (int i = 0, n = field.length(); i < n; i++) {
+            char c = field.charAt(i);
+            if (c == csvSeparator || c == QUOTE || c == '\r' || c == '\n') {
+                quote = true;
+                break;
+            }
+        }
+        if (!quote) {
+            append(field);
+            return;
+        }
+
+        append(QUOTE);
+        for (int i = 0, n = field.length(); i < n; i++) {
+            char c = field.charAt(i);
+            if (c == QUOTE) {
+                append(QUOTE);
+            }
+            append(c);
+        }
+        append(QUOTE);
+    }
+
+    private void append(char c) {
+        if (count == buffer.length) {
+            drain();
+        }
+        buffer[count++] = c;
+    }
+
+    private void append(String str) {
+        for (int off = 0, len = str.length(), n; off < len; off += n) {
+            if (count == buffer.length) {
+                drain();
             }
+            n = Math.min(len - off, buffer.length - count);
+            str.getChars(off, off + n, buffer, count);
+            count += n;
         }
-        csv.deleteCharAt(csv.length() - 1);
-        csv.append(Files.SYSTEM_LINE_SEPARATOR);
     }
 
-    /*// 创建简单表头
-    private void buildSimpleThead(String[] theadName) {
-        for (String th : theadName) {
-            csv.append(th).append(csvSeparator);
+    private void drain() {
+        try {
+            out.write(buffer, 0, count);
+            count = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        csv.deleteCharAt(csv.length() - 1);
-        csv.append(Files.LINE_SEPARATOR);
-    }*/
+    }
+
+    private static String format(Object value, Formatter formatter) {
+        if (value == null) {
+            return null;
+        } else if (formatter == null) {
+            return value.toString();
+        } else if (formatter.number != null && value instanceof Number) {
+            return formatter.number.format(value);
+        } else if (formatter.date != null && (value instanceof Date || value instanceof Calendar)) {
+            return formatter.date.format(value);
+        } else {
+            return value.toString();
+        }
+    }
+
+    /**
+     * 按列的元数据创建格式化器，每次构建只创建一次
+     * @param thead
+     * @return
+     */
+    private static List<Formatter> createFormatters(List<Thead> thead) {
+        List<Formatter> formatters = new ArrayList<>();
+        for (Thead cell : thead) {
+            if (!cell.isLeaf()) {
+                continue; // 非叶子节点
+            }
+
+            Tmeta tmeta = cell.getTmeta();
+            if (tmeta == null || tmeta.getType() == null) {
+                formatters.add(null);
+                continue;
+            }
+            switch (tmeta.getType()) {
+                case NUMERIC:
+                    formatters.add(StringUtils.isBlank(tmeta.getFormat()) ? null
+                                   : new Formatter(new DecimalFormat(tmeta.getFormat()), null));
+                    break;
+                case DATETIME:
+                    String format = ObjectUtils.ifNull(tmeta.getFormat(), Dates.DEFAULT_DATE_FORMAT);
+                    formatters.add(new Formatter(null, FastDateFormat.getInstance(format)));
+                    break;
+                default:
+                    formatters.add(null);
+                    break;
+            }
+        }
+        return formatters;
+    }
+
+    private static final class Formatter {
+        final NumberFormat number;
+        final FastDateFormat date;
+
+        Formatter(NumberFormat number, FastDateFormat date) {
+            this.number = number;
+            this.date = date;
+        }
+    }
+
 }
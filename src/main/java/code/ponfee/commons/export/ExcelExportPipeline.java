@@ -0,0 +1,300 @@
+package code.ponfee.commons.export;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import code.ponfee.commons.concurrent.NamedThreadFactory;
+import code.ponfee.commons.export.ExcelExporter.SheetBuilder;
+
+/**
+ * excel多工作簿并行导出
+ * <p>每个工作簿由一个生产者线程查询数据，按批放入有界队列；
+ * 调用{@link #execute()}的线程作为唯一的写线程，从队列中取出数据交替写入各工作簿（POI非线程安全）
+ * <p>总耗时接近最慢的查询而非所有查询之和，内存中最多缓存(queueCapacity + 工作簿数) * batchSize行数据
+ * <pre>
+ *  ExcelExporter excel = new ExcelExporter();
+ *  new ExcelExportPipeline(excel)
+ *      .add("sheet1", table1, () -> mapper.query1().iterator())
+ *      .add("sheet2", table2, () -> mapper.query2().iterator())
+ *      .execute();
+ *  excel.write(out);
+ * </pre>
+ * @author fupf
+ */
+public class ExcelExportPipeline {
+
+    private static Logger logger = LoggerFactory.getLogger(ExcelExportPipeline.class);
+
+    private static final int DEFAULT_BATCH_SIZE = 200;
+    private static final int DEFAULT_QUEUE_CAPACITY = 50;
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final ExcelExporter excel;
+    private final int batchSize;
+    private final int queueCapacity;
+    private final List<Task> tasks = new ArrayList<>();
+    private final Set<String> names = new HashSet<>();
+    private Listener listener;
+
+    public ExcelExportPipeline(ExcelExporter excel) {
+        this(excel, DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param excel         excel导出器
+     * @param batchSize     每批的行数
+     * @param queueCapacity 队列容量（批数）
+     */
+    public ExcelExportPipeline(ExcelExporter excel, int batchSize, int queueCapacity) {
+        Preconditions.checkArgument(batchSize > 0, "batch size must be positive.");
+        Preconditions.checkArgument(queueCapacity > 0, "queue capacity must be positive.");
+        this.excel = excel;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * 添加工作簿，工作簿按添加顺序创建
+     * @param name  工作簿名称，不可重复
+     * @param table 表头、表尾等配置（table的tobdy被忽略）
+     * @param tbody 表体数据，在生产者线程中调用（如执行查询）
+     * @return this
+     */
+    public ExcelExportPipeline add(String name, Table table, Supplier<? extends Iterator<Object[]>> tbody) {
+        Preconditions.checkArgument(names.add(name), "repeated sheet name: %s", name);
+        tasks.add(new Task(name, table, tbody));
+        return this;
+    }
+
+    public ExcelExportPipeline setListener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * 每个工作簿创建一个生产者线程执行导出，完成后线程池关闭
+     */
+    public void execute() {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(
+            tasks.size(), new NamedThreadFactory("excel-export-pipeline", true)
+        );
+        try {
+            execute(executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 使用指定的线程池执行生产者，当前线程写入excel，阻塞直到全部工作簿完成
+     * <p>生产者须在其它线程中执行，不能使用在提交线程中执行任务的Executor（如CallerRunsPolicy拒绝时），
+     * 否则生产者在写线程中运行会因队列满而死锁，此时抛出IllegalStateException
+     * @param executor 生产者线程池
+     * @throws RuntimeException 生产者查询数据失败或写入失败
+     */
+    public void execute(Executor executor) {
+        int n = tasks.size();
+        if (n == 0) {
+            return;
+        }
+
+        // 写线程按添加顺序创建各工作簿并构建表头
+        SheetBuilder[] builders = new SheetBuilder[n];
+        for (int i = 0; i < n; i++) {
+            builders[i] = excel.openSheet(tasks.get(i).name, tasks.get(i).table);
+        }
+
+        Channel channel = new Channel(queueCapacity, Thread.currentThread());
+        try {
+            for (int i = 0; i < n; i++) {
+                executor.execute(new Producer(i, tasks.get(i).tbody, channel));
+            }
+
+            long totalRows = 0;
+            for (int finished = 0; finished < n;) {
+                Batch batch = channel.queue.take();
+                Task task = tasks.get(batch.index);
+                if (batch.error != null) {
+                    throw new RuntimeException("export sheet failed: " + task.name, batch.error);
+                }
+
+                SheetBuilder builder = builders[batch.index];
+                for (Object[] row : batch.rows) {
+                    builder.append(row);
+                }
+                totalRows += batch.rows.size();
+                if (listener != null && !batch.rows.isEmpty()) {
+                    listener.onRowsWritten(task.name, builder.rows(), totalRows);
+                }
+
+                if (batch.last) {
+                    builder.finish();
+                    finished++;
+                    if (listener != null) {
+                        listener.onSheetFinished(task.name, builder.rows(), finished, n);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            channel.closed = true; // 异常时使阻塞中的生产者退出
+        }
+    }
+
+    /**
+     * 进度回调，在写线程中调用
+     */
+    public interface Listener {
+
+        /**
+         * 写入一批数据后回调
+         * @param name      工作簿名称
+         * @param sheetRows 该工作簿已写入的行数
+         * @param totalRows 全部工作簿已写入的行数
+         */
+        default void onRowsWritten(String name, int sheetRows, long totalRows) {}
+
+        /**
+         * 工作簿完成后回调
+         * @param name           工作簿名称
+         * @param sheetRows      该工作簿的总行数
+         * @param finishedSheets 已完成的工作簿数
+         * @param totalSheets    总工作簿数
+         */
+        default void onSheetFinished(String name, int sheetRows, int finishedSheets, int totalSheets) {}
+    }
+
+    // ----------------------------------------------------------------------------private class
+    private static final class Task {
+        final String name;
+        final Table table;
+        final Supplier<? extends Iterator<Object[]>> tbody;
+
+        Task(String name, Table table, Supplier<? extends Iterator<Object[]>> tbody) {
+            this.name = name;
+            this.table = table;
+            this.tbody = tbody;
+        }
+    }
+
+    private static final class Batch {
+        final int index;
+        final List<Object[]> rows;
+        final boolean last;
+        final Throwable error;
+
+        Batch(int index, List<Object[]> rows, boolean last, Throwable error) {
+            this.index = index;
+            this.rows = rows;
+            this.last = last;
+            this.error = error;
+        }
+    }
+
+    private static final class Channel {
+        final BlockingQueue<Batch> queue;
+        final Thread writer;
+        volatile boolean closed = false;
+
+        Channel(int capacity, Thread writer) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.writer = writer;
+        }
+
+        /**
+         * 放入队列，队列满时阻塞直到有空位或通道已关闭
+         * @param batch
+         * @return {@code true} if put success
+         */
+        boolean put(Batch batch) throws InterruptedException {
+            while (!closed) {
+                if (queue.offer(batch, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final class Producer implements Runnable {
+        final int index;
+        final Supplier<? extends Iterator<Object[]>> tbody;
+        final Channel channel;
+
+        Producer(int index, Supplier<? extends Iterator<Object[]>> tbody, Channel channel) {
+            this.index = index;
+            this.tbody = tbody;
+            this.channel = channel;
+        }
+
+        @Override
+        public void run() {
+            if (Thread.currentThread() == channel.writer) {
+                throw new IllegalStateException("producer cannot run in the writer thread.");
+            }
+
+            Iterator<Object[]> iter = null;
+            try {
+                iter = tbody.get();
+                List<Object[]> rows = new ArrayList<>(batchSize);
+                while (iter != null && iter.hasNext()) {
+                    rows.add(iter.next());
+                    if (rows.size() == batchSize) {
+                        if (!channel.put(new Batch(index, rows, false, null))) {
+                            return; // 写线程已退出
+                        }
+                        rows = new ArrayList<>(batchSize);
+                    }
+                }
+                channel.put(new Batch(index, rows, true, null));
+            } catch (Throwable t) {
+                // 须通知写线程，否则写线程将一直等待
+                boolean interrupted = Thread.interrupted();
+                try {
+                    for (;;) {
+                        try {
+                            channel.put(new Batch(index, null, true, t));
+                            break;
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                } finally {
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            } finally {
+                // 正常结束、写线程已退出或异常时释放数据源（如数据库游标）
+                if (iter instanceof AutoCloseable) {
+                    try {
+                        ((AutoCloseable) iter).close();
+                    } catch (Exception e) {
+                        logger.error("close sheet data iterator occur error", e);
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -9,18 +9,23 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateUtils;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.BorderStyle;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.ClientAnchor.AnchorType;
@@ -40,6 +45,8 @@ import org.apache.poi.xssf.usermodel.XSSFDataFormat;
 import org.apache.poi.xssf.usermodel.XSSFFont;
 import org.apache.poi.xssf.usermodel.XSSFRichTextString;
 
+import com.google.common.base.Preconditions;
+
 import code.ponfee.commons.export.Tmeta.Type;
 import code.ponfee.commons.math.Numbers;
 import code.ponfee.commons.util.Colors;
@@ -65,6 +72,11 @@ public class ExcelExporter extends AbstractExporter {
     /** 作为分隔符（类似html的<hr />）的合并列数目 */
     private static final int MARGIN_ROW_CELL_SIZE = 26;
 
+    /** 内存中保留的行数，超出的行刷写到临时文件 */
+    private static final int DEFAULT_ROW_ACCESS_WINDOW_SIZE = 200;
+
+    private static final int MAX_SHEET_NAME_LENGTH = 31;
+
     private SXSSFWorkbook workbook; // excel
     private final XSSFCellStyle titleStyle; // 标题样式
     private final XSSFCellStyle headStyle; // 表头样式
@@ -77,9 +89,25 @@ public class ExcelExporter extends AbstractExporter {
     private final Map<String, SXSSFSheet> sheets = new HashMap<>();
     private final Map<String, Integer>    images = new HashMap<>();
     private final Map<String, Freeze>    freezes = new HashMap<>();
+    private final Map<String, Integer>  rollovers = new HashMap<>(); // 因超出行数限制而续写的工作簿数
+
+    /** 样式缓存，避免重复创建样式（xlsx最多64000个样式） */
+    private final Map<StyleKey, XSSFCellStyle> styleCache = new HashMap<>();
+    private final Map<Color, XSSFFont>          fontCache = new HashMap<>();
+
+    private int maxRowsPerSheet = SpreadsheetVersion.EXCEL2007.getMaxRows();
 
     public ExcelExporter() {
-        workbook = new SXSSFWorkbook(200);
+        this(DEFAULT_ROW_ACCESS_WINDOW_SIZE, false);
+    }
+
+    /**
+     * @param rowAccessWindowSize 内存中保留的行数
+     * @param compressTempFiles   是否压缩刷写的临时文件（百万行级别导出时可减少磁盘占用）
+     */
+    public ExcelExporter(int rowAccessWindowSize, boolean compressTempFiles) {
+        workbook = new SXSSFWorkbook(rowAccessWindowSize);
+        workbook.setCompressTempFiles(compressTempFiles);
         dataFormat = (XSSFDataFormat) workbook.createDataFormat();
 
         XSSFFont titleFont = (XSSFFont) workbook.createFont();
@@ -144,98 +172,61 @@ public class ExcelExporter extends AbstractExporter {
      */
     @Override
     public void build(Table table) {
-        // 1、校验表头是否为空
-        if (table.getThead() == null || table.getThead().isEmpty()) {
-            throw new IllegalArgumentException("thead can't be null");
-        }
-
-        String name = this.getName();
-        // 2、获取工作簿
-        SXSSFSheet sheet = getSheet(name);
-
-        // 3、判断工作簿是否已创建过行数据
-        CursorRow cursorRow = new CursorRow(sheet.getLastRowNum());
-        if (cursorRow.get() > 0) {
-            // 创建两行空白行
-            cursorRow.increment();
-            int i = cursorRow.getAndIncrement(), j = cursorRow.getAndIncrement();
-            SXSSFRow row1 = sheet.createRow(i);
-            row1.setHeight(DEFAULT_HEIGHT);
-            SXSSFRow row2 = sheet.createRow(j);
-            row2.setHeight(DEFAULT_HEIGHT);
-            for (int k = 0; k < MARGIN_ROW_CELL_SIZE; k++) {
-                createCell(row1, k, noneStyle, null);
-                createCell(row2, k, noneStyle, null);
-            }
-            sheet.addMergedRegion(new CellRangeAddress(i, j, 0, MARGIN_ROW_CELL_SIZE - 1));
-        }
-
-        // 4、构建复合表头
-        buildComplexThead(table, sheet, cursorRow);
-
-        // 5、冻结窗口配置
-        if (freezes.get(name) != null) {
-            freezes.get(name).disable();
-        } else {
-            freezes.put(name, new Freeze(1, cursorRow.get())); // 叶子节点只占一列，故colSplit=1
-        }
-
-        // 6、判断是否有数据
-        if (ObjectUtils.isEmpty(table.getTobdy()) && ObjectUtils.isEmpty(table.getTfoot())) {
-            createBlankRow(NO_RESULT_TIP, sheet, tipStyle, cursorRow, table.getTotalLeafCount());
-            return;
-        }
-
-        super.nonEmpty();
-        List<XSSFCellStyle> styles = createStyles(table.getThead());
-        List<Thead> theads = table.getThead();
-        SXSSFRow row;
-
-        // 7、处理tbody数据
         List<Object[]> tbody = table.getTobdy();
-        if (tbody != null && !tbody.isEmpty()) {
-            Map<CellStyleOptions, Object> options = table.getOptions();
-            Object[] data;
-            for (int i = 0, n = tbody.size(), j, m; i < n; i++) {
-                row = sheet.createRow(cursorRow.getAndIncrement());
-                row.setHeight(DEFAULT_HEIGHT);
-                data = tbody.get(i);
-                for (m = data.length, j = 0; j < m; j++) {
-                    createCell(row, j, styles.get(j), theads.get(j).getTmeta(), data[j], i, j, options);
-                }
-            }
-        }
-
-        // 8、处理tfoot数据
-        Object[] tfoots = table.getTfoot();
-        if (tfoots != null && tfoots.length > 0) {
-            int rowNum = cursorRow.getAndIncrement();
-            row = sheet.createRow(rowNum);
-            row.setHeight(DEFAULT_HEIGHT);
-
-            if (table.getTfoot().length > table.getTotalLeafCount()) {
-                throw new IllegalStateException("tfoot data length cannot more than total leaf count.");
-            }
+        build(table, tbody == null ? null : tbody.iterator());
+    }
 
-            // 合计单元格
-            int mergeNum = table.getTotalLeafCount() - table.getTfoot().length;
-            for (int i = 0; i < mergeNum; i++) {
-                createCell(row, i, tfootMergeStyle, (i == 0) ? "合计" : null);
-            }
-            if (mergeNum > 1) {
-                sheet.addMergedRegion(new CellRangeAddress(rowNum, rowNum, 0, mergeNum - 1));
-            }
+    /**
+     * 以流的方式构建excel，表体数据从stream中逐行读取（table的tobdy被忽略）
+     * @param table 表头、表尾等配置
+     * @param tbody 表体数据，如mybatis cursor
+     * @see #build(Table, Iterator)
+     */
+    public void build(Table table, Stream<Object[]> tbody) {
+        build(table, tbody == null ? null : tbody.iterator());
+    }
 
-            // 合计数据
-            for (int i = 0; i < tfoots.length; i++) {
-                createCell(row, i + mergeNum, styles.get(mergeNum + i), theads.get(mergeNum + i).getTmeta(), tfoots[i]);
+    /**
+     * 以迭代的方式构建excel，表体数据逐行读取并写入SXSSFWorkbook的行窗口，
+     * 无需将全部数据加载到内存；工作簿行数达到{@link #setMaxRowsPerSheet(int)}时，
+     * 续写到新的工作簿（名称为name(2)、name(3)...，并重复标题及表头）
+     * <p>构建完成后调用{@link #write(OutputStream)}直接输出，
+     * 避免{@link #export()}在内存中缓存整个excel
+     * @param table 表头、表尾等配置（table的tobdy被忽略）
+     * @param tbody 表体数据
+     */
+    public void build(Table table, Iterator<Object[]> tbody) {
+        SheetBuilder builder = new SheetBuilder(this.getName(), table);
+        if (tbody != null) {
+            while (tbody.hasNext()) {
+                builder.append(tbody.next());
             }
         }
+        builder.finish();
+    }
 
-        // 9、文字注释
-        if (StringUtils.isNotBlank(table.getComment())) {
-            createBlankRow(table.getComment(), sheet, tipStyle, cursorRow, table.getTotalLeafCount());
-        }
+    /**
+     * 开始构建表格，返回的构建器只能在同一线程中使用
+     * @param name  工作簿名称
+     * @param table 表头、表尾等配置
+     * @return the sheet builder
+     */
+    SheetBuilder openSheet(String name, Table table) {
+        return new SheetBuilder(name, table);
+    }
+
+    /**
+     * 设置每个工作簿的最大行数（包含标题及表头），超出时续写到新的工作簿
+     * @param maxRowsPerSheet 默认为excel2007的最大行数1048576
+     * @return this
+     */
+    public ExcelExporter setMaxRowsPerSheet(int maxRowsPerSheet) {
+        Preconditions.checkArgument(
+            maxRowsPerSheet > 0 && maxRowsPerSheet <= SpreadsheetVersion.EXCEL2007.getMaxRows(),
+            "invalid max rows per sheet: %s", maxRowsPerSheet
+        );
+        this.maxRowsPerSheet = maxRowsPerSheet;
+        return this;
     }
 
     public void insertImage(byte[] imageBytes) {
@@ -277,7 +268,7 @@ public class ExcelExporter extends AbstractExporter {
     }
 
     /**
-     * 输出到输出流
+     * 输出到输出流（直接写入，不在内存中缓存整个excel）
      */
     public void write(OutputStream out) {
         try (BufferedOutputStream bos = new BufferedOutputStream(out)) {
@@ -297,7 +288,7 @@ public class ExcelExporter extends AbstractExporter {
     }
 
     /**
-     * 导出
+     * 导出（在内存中缓存整个excel，大数据量时应使用{@link #write(OutputStream)}）
      */
     @Override
     public byte[] export() {
@@ -312,6 +303,7 @@ public class ExcelExporter extends AbstractExporter {
     @Override
     public void close() {
         if (workbook != null) try {
+            workbook.dispose(); // 删除刷写的临时文件
             workbook.close();
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -320,6 +312,9 @@ public class ExcelExporter extends AbstractExporter {
         sheets.clear();
         images.clear();
         freezes.clear();
+        rollovers.clear();
+        styleCache.clear();
+        fontCache.clear();
     }
 
     //--protected methods------------------------------------------------------------------
@@ -340,6 +335,42 @@ public class ExcelExporter extends AbstractExporter {
         sheets.remove(name);
     }
 
+    /**
+     * 工作簿名称对应的当前（最后续写的）工作簿名称
+     * @param name
+     * @return the current sheet name
+     */
+    private String currentSheetName(String name) {
+        Integer count = rollovers.get(name);
+        if (count == null) {
+            return name;
+        }
+        String suffix = "(" + (count + 1) + ")";
+        // 工作簿名称最长31个字符
+        return StringUtils.left(name, MAX_SHEET_NAME_LENGTH - suffix.length()) + suffix;
+    }
+
+    /**
+     * 续写到新的工作簿，并重复构建标题及表头
+     * @param name
+     * @param table
+     * @param cursorRow
+     * @return the new sheet
+     */
+    private SXSSFSheet rollover(String name, Table table, CursorRow cursorRow) {
+        rollovers.merge(name, 1, Integer::sum);
+        String sheetName = currentSheetName(name);
+        SXSSFSheet sheet = getSheet(sheetName);
+
+        cursorRow.set(0);
+        buildComplexThead(table, sheet, cursorRow);
+        if (cursorRow.get() >= maxRowsPerSheet) {
+            throw new IllegalStateException("max rows per sheet too small: " + maxRowsPerSheet);
+        }
+        freezes.put(sheetName, new Freeze(1, cursorRow.get()));
+        return sheet;
+    }
+
     private void createFreezePane() {
         for (Entry<String, SXSSFSheet> entry : sheets.entrySet()) {
             Freeze freeze = freezes.get(entry.getKey());
@@ -459,7 +490,7 @@ public class ExcelExporter extends AbstractExporter {
      * @param options
      */
     private void createCell(SXSSFRow row, int colIndex, XSSFCellStyle style, Tmeta tmeta, Object value, 
-                            int tbodyRowIdx, int tbodyColIdx, Map<CellStyleOptions, Object> options) {
+                            int tbodyRowIdx, int tbodyColIdx, CellOptions options) {
 
         SXSSFCell cell = row.createCell(colIndex);
         cell.setCellStyle(style);
@@ -508,32 +539,19 @@ public class ExcelExporter extends AbstractExporter {
      * @param tbodyColIdx
      * @param options
      */
-    @SuppressWarnings("unchecked")
-    private void processOptions(SXSSFCell cell, int tbodyRowIdx, int tbodyColIdx, 
-                                Map<CellStyleOptions, Object> options) {
-        if (options == null || options.isEmpty()) {
+    private void processOptions(SXSSFCell cell, int tbodyRowIdx, int tbodyColIdx, CellOptions options) {
+        if (options == null) {
             return;
         }
 
         // 单元格高亮显示
-        Map<String, Object> highlight = (Map<String, Object>) options.get(CellStyleOptions.HIGHLIGHT);
-        if (highlight != null && !highlight.isEmpty()) {
-            for (List<Integer> c : (List<List<Integer>>) highlight.get("cells")) {
-                if (c.get(0) == tbodyRowIdx && c.get(1) == tbodyColIdx) {
-                    XSSFFont font = (XSSFFont) workbook.createFont();
-                    font.setColor(new XSSFColor(Colors.hex2color((String) highlight.get("color"))));
-                    XSSFCellStyle style = (XSSFCellStyle) workbook.createCellStyle();
-                    style.cloneStyleFrom(cell.getCellStyle());
-                    style.setFont(font);
-                    cell.setCellStyle(style);
-                }
-            }
+        if (options.isHighlight(tbodyRowIdx, tbodyColIdx)) {
+            cell.setCellStyle(getStyle((XSSFCellStyle) cell.getCellStyle(), null, options.highlightColor, null));
         }
 
         // 处理
-        Consumer<Object[]> processor = (Consumer<Object[]>) options.get(CellStyleOptions.CELL_PROCESS);
-        if (processor != null) {
-            processor.accept(new Object[] { workbook, cell, tbodyRowIdx, tbodyColIdx });
+        if (options.processor != null) {
+            options.processor.accept(new Object[] { workbook, cell, tbodyRowIdx, tbodyColIdx });
         }
     }
 
@@ -549,43 +567,76 @@ public class ExcelExporter extends AbstractExporter {
                 continue; // 非叶子节点
             }
 
-            XSSFCellStyle style = (XSSFCellStyle) workbook.createCellStyle();
-            styles.add(style);
-            style.cloneStyleFrom(dataStyle);
-
             Tmeta tmeta = cell.getTmeta();
-            if (tmeta != null) {
-                switch (tmeta.getAlign()) { // 对齐方式
+            if (tmeta == null) {
+                styles.add(getStyle(dataStyle, null, null, null));
+                continue;
+            }
+
+            HorizontalAlignment align = null; // 对齐方式
+            if (tmeta.getAlign() != null) {
+                switch (tmeta.getAlign()) {
                     case LEFT:
-                        style.setAlignment(HorizontalAlignment.LEFT);
+                        align = HorizontalAlignment.LEFT;
                         break;
                     case CENTER:
-                        style.setAlignment(HorizontalAlignment.CENTER);
+                        align = HorizontalAlignment.CENTER;
                         break;
                     case RIGHT:
-                        style.setAlignment(HorizontalAlignment.RIGHT);
+                        align = HorizontalAlignment.RIGHT;
                         break;
                     default:
                         break;
                 }
+            }
 
-                // 设置单元格格式
-                if (StringUtils.isNotBlank(tmeta.getFormat())) {
-                    //dataFormat.getFormat("0.00%")： 0.00%->0xa; #,###.00%->0xa5; #,##0->xxx;
-                    style.setDataFormat(dataFormat.getFormat(tmeta.getFormat()));
-                }
+            //dataFormat.getFormat("0.00%")： 0.00%->0xa; #,###.00%->0xa5; #,##0->xxx;
+            styles.add(getStyle(dataStyle, align, tmeta.getColor(), tmeta.getFormat()));
+        }
 
-                // 设置颜色
-                if (tmeta.getColor() != null) {
-                    XSSFFont font = (XSSFFont) workbook.createFont();
-                    font.setColor(new XSSFColor(tmeta.getColor()));
-                    style.setFont(font);
-                }
-            } // end of tmeta
+        return styles;
+    }
 
+    /**
+     * 获取样式，相同(基础样式, 对齐方式, 字体颜色, 数据格式)的样式只创建一次
+     * @param base      基础样式
+     * @param align     对齐方式，为null时同基础样式
+     * @param fontColor 字体颜色，为null时同基础样式
+     * @param format    数据格式，为空时同基础样式
+     * @return the cell style
+     */
+    private XSSFCellStyle getStyle(XSSFCellStyle base, HorizontalAlignment align, 
+                                   Color fontColor, String format) {
+        if (StringUtils.isBlank(format)) {
+            format = null;
+        }
+        StyleKey key = new StyleKey(base.getIndex(), align, fontColor, format);
+        XSSFCellStyle style = styleCache.get(key);
+        if (style == null) {
+            style = (XSSFCellStyle) workbook.createCellStyle();
+            style.cloneStyleFrom(base);
+            if (align != null) {
+                style.setAlignment(align);
+            }
+            if (format != null) {
+                style.setDataFormat(dataFormat.getFormat(format));
+            }
+            if (fontColor != null) {
+                style.setFont(getFont(fontColor));
+            }
+            styleCache.put(key, style);
         }
+        return style;
+    }
 
-        return styles;
+    private XSSFFont getFont(Color color) {
+        XSSFFont font = fontCache.get(color);
+        if (font == null) {
+            font = (XSSFFont) workbook.createFont();
+            font.setColor(new XSSFColor(color));
+            fontCache.put(color, font);
+        }
+        return font;
     }
 
     private static void setCellString(SXSSFCell cell, Object value) {
@@ -661,6 +712,228 @@ public class ExcelExporter extends AbstractExporter {
         }
     }
 
+    /**
+     * 表格构建器：创建时构建标题及表头，然后逐行追加表体数据，最后构建表尾
+     * <p>不同工作簿的构建器可交替追加数据（{@link ExcelExportPipeline}）
+     */
+    final class SheetBuilder {
+        private final String name;
+        private final Table table;
+        private final CellOptions options;
+        private final CursorRow cursorRow;
+        private SXSSFSheet sheet;
+        private List<XSSFCellStyle> styles;
+        private int tbodyRowIdx = 0;
+
+        SheetBuilder(String name, Table table) {
+            // 1、校验表头是否为空
+            if (table.getThead() == null || table.getThead().isEmpty()) {
+                throw new IllegalArgumentException("thead can't be null");
+            }
+
+            this.name = name;
+            this.table = table;
+            this.options = CellOptions.of(table.getOptions());
+
+            // 2、获取工作簿
+            String sheetName = currentSheetName(name);
+            this.sheet = getSheet(sheetName);
+
+            // 3、判断工作簿是否已创建过行数据
+            this.cursorRow = new CursorRow(sheet.getLastRowNum());
+            if (cursorRow.get() > 0 && cursorRow.get() + 3 + table.getMaxTheadLevel() >= maxRowsPerSheet) {
+                // 剩余行数不足以构建标题及表头，续写到新的工作簿
+                this.sheet = rollover(name, table, cursorRow);
+                return;
+            }
+
+            if (cursorRow.get() > 0) {
+                // 创建两行空白行
+                cursorRow.increment();
+                int i = cursorRow.getAndIncrement(), j = cursorRow.getAndIncrement();
+                SXSSFRow row1 = sheet.createRow(i);
+                row1.setHeight(DEFAULT_HEIGHT);
+                SXSSFRow row2 = sheet.createRow(j);
+                row2.setHeight(DEFAULT_HEIGHT);
+                for (int k = 0; k < MARGIN_ROW_CELL_SIZE; k++) {
+                    createCell(row1, k, noneStyle, null);
+                    createCell(row2, k, noneStyle, null);
+                }
+                sheet.addMergedRegion(new CellRangeAddress(i, j, 0, MARGIN_ROW_CELL_SIZE - 1));
+            }
+
+            // 4、构建复合表头
+            buildComplexThead(table, sheet, cursorRow);
+
+            // 5、冻结窗口配置
+            if (freezes.get(sheetName) != null) {
+                freezes.get(sheetName).disable();
+            } else {
+                freezes.put(sheetName, new Freeze(1, cursorRow.get())); // 叶子节点只占一列，故colSplit=1
+            }
+        }
+
+        /**
+         * 7、追加一行tbody数据
+         * @param data
+         */
+        void append(Object[] data) {
+            if (styles == null) {
+                nonEmpty();
+                styles = createStyles(table.getThead());
+            }
+            if (cursorRow.get() >= maxRowsPerSheet) {
+                sheet = rollover(name, table, cursorRow);
+            }
+
+            SXSSFRow row = sheet.createRow(cursorRow.getAndIncrement());
+            row.setHeight(DEFAULT_HEIGHT);
+            List<Thead> theads = table.getThead();
+            for (int m = data.length, j = 0; j < m; j++) {
+                createCell(row, j, styles.get(j), theads.get(j).getTmeta(), data[j], tbodyRowIdx, j, options);
+            }
+            tbodyRowIdx++;
+        }
+
+        /**
+         * 已追加的tbody行数
+         * @return the tbody row count
+         */
+        int rows() {
+            return tbodyRowIdx;
+        }
+
+        /**
+         * 构建表尾及注释
+         */
+        void finish() {
+            // 6、判断是否有数据
+            if (tbodyRowIdx == 0 && ObjectUtils.isEmpty(table.getTfoot())) {
+                if (cursorRow.get() >= maxRowsPerSheet) {
+                    sheet = rollover(name, table, cursorRow);
+                }
+                createBlankRow(NO_RESULT_TIP, sheet, tipStyle, cursorRow, table.getTotalLeafCount());
+                return;
+            }
+
+            if (styles == null) {
+                nonEmpty();
+                styles = createStyles(table.getThead());
+            }
+            List<Thead> theads = table.getThead();
+
+            // 8、处理tfoot数据
+            Object[] tfoots = table.getTfoot();
+            if (tfoots != null && tfoots.length > 0) {
+                if (tfoots.length > table.getTotalLeafCount()) {
+                    throw new IllegalStateException("tfoot data length cannot more than total leaf count.");
+                }
+                if (cursorRow.get() >= maxRowsPerSheet) {
+                    sheet = rollover(name, table, cursorRow);
+                }
+
+                int rowNum = cursorRow.getAndIncrement();
+                SXSSFRow row = sheet.createRow(rowNum);
+                row.setHeight(DEFAULT_HEIGHT);
+
+                // 合计单元格
+                int mergeNum = table.getTotalLeafCount() - tfoots.length;
+                for (int i = 0; i < mergeNum; i++) {
+                    createCell(row, i, tfootMergeStyle, (i == 0) ? "合计" : null);
+                }
+                if (mergeNum > 1) {
+                    sheet.addMergedRegion(new CellRangeAddress(rowNum, rowNum, 0, mergeNum - 1));
+                }
+
+                // 合计数据
+                for (int i = 0; i < tfoots.length; i++) {
+                    createCell(row, i + mergeNum, styles.get(mergeNum + i), theads.get(mergeNum + i).getTmeta(), tfoots[i]);
+                }
+            }
+
+            // 9、文字注释
+            if (StringUtils.isNotBlank(table.getComment())) {
+                if (cursorRow.get() >= maxRowsPerSheet) {
+                    sheet = rollover(name, table, cursorRow);
+                }
+                createBlankRow(table.getComment(), sheet, tipStyle, cursorRow, table.getTotalLeafCount());
+            }
+        }
+    }
+
+    /**
+     * 样式缓存key
+     */
+    private static final class StyleKey {
+        final short base;
+        final HorizontalAlignment align;
+        final Color fontColor;
+        final String format;
+
+        StyleKey(short base, HorizontalAlignment align, Color fontColor, String format) {
+            this.base = base;
+            this.align = align;
+            this.fontColor = fontColor;
+            this.format = format;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(base, align, fontColor, format);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof StyleKey)) {
+                return false;
+            }
+            StyleKey other = (StyleKey) obj;
+            return this.base == other.base
+                && this.align == other.align
+                && Objects.equals(this.fontColor, other.fontColor)
+                && Objects.equals(this.format, other.format);
+        }
+    }
+
+    /**
+     * 解析后的单元格配置项，高亮单元格按行索引为BitSet
+     * 如：{HIGHLIGHT:{"cells":[[2,15],[2,16]],"color":"#f00"}}
+     */
+    private static final class CellOptions {
+        final Map<Integer, BitSet> highlights = new HashMap<>(); // 行 -> 列
+        Color highlightColor;
+        Consumer<Object[]> processor;
+
+        @SuppressWarnings("unchecked")
+        static CellOptions of(Map<CellStyleOptions, Object> options) {
+            if (options == null || options.isEmpty()) {
+                return null;
+            }
+
+            CellOptions result = new CellOptions();
+            Map<String, Object> highlight = (Map<String, Object>) options.get(CellStyleOptions.HIGHLIGHT);
+            if (highlight != null && !highlight.isEmpty()) {
+                List<List<Integer>> cells = (List<List<Integer>>) highlight.get("cells");
+                if (cells != null && !cells.isEmpty()) {
+                    result.highlightColor = Colors.hex2color((String) highlight.get("color"));
+                    for (List<Integer> c : cells) {
+                        result.highlights.computeIfAbsent(c.get(0), k -> new BitSet()).set(c.get(1));
+                    }
+                }
+            }
+            result.processor = (Consumer<Object[]>) options.get(CellStyleOptions.CELL_PROCESS);
+            return result;
+        }
+
+        boolean isHighlight(int row, int col) {
+            if (highlights.isEmpty() || row < 0 || col < 0) {
+                return false;
+            }
+            BitSet cols = highlights.get(row);
+            return cols != null && cols.get(col);
+        }
+    }
+
     /**
      * 窗口冻结
      */
@@ -14,6 +14,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
@@ -24,6 +26,7 @@ import org.apache.commons.lang3.StringUtils;
 import com.fasterxml.jackson.databind.JavaType;
 import com.google.common.base.Preconditions;
 
+import code.ponfee.commons.concurrent.ThreadPoolExecutors;
 import code.ponfee.commons.io.Files;
 import code.ponfee.commons.json.Jsons;
 
@@ -305,6 +308,25 @@ public final class Http {
         }
     }
 
+    /**
+     * 异步发送请求，默认在虚拟线程（运行时支持时）中执行，
+     * 否则在平台线程池（50个线程，队列长度1000）中执行，队列满时抛出RejectedExecutionException
+     * @return the future of response data
+     */
+    public CompletableFuture<String> requestAsync() {
+        return requestAsync(AsyncExecutor.INSTANCE);
+    }
+
+    /**
+     * 在指定执行器中异步发送请求
+     * @param executor the executor, 
+     *        such as {@link ThreadPoolExecutors#createVirtual(String, int, long, int)}
+     * @return the future of response data
+     */
+    public CompletableFuture<String> requestAsync(ExecutorService executor) {
+        return CompletableFuture.supplyAsync(this::request, executor);
+    }
+
     public void download(String filepath) {
         try (OutputStream out = new FileOutputStream(filepath)) {
             download(out);
@@ -487,4 +509,11 @@ public final class Http {
         }
     }
 
+    /**
+     * 异步请求默认执行器，首次异步请求时创建
+     */
+    private static final class AsyncExecutor {
+        static final ExecutorService INSTANCE = ThreadPoolExecutors.createVirtual("http-async", 50, 60, 1000);
+    }
+
 }
@@ -0,0 +1,28 @@
+package code.ponfee.commons.io;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 写入ByteBuffer的输出流（容量不足时抛出BufferOverflowException）
+ * @author Ponfee
+ */
+public class ByteBufferOutputStream extends OutputStream {
+
+    private final ByteBuffer buffer;
+
+    public ByteBufferOutputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void write(int b) {
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        buffer.put(b, off, len);
+    }
+
+}
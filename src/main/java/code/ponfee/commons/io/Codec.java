@@ -0,0 +1,42 @@
+package code.ponfee.commons.io;
+
+/**
+ * 压缩编解码器
+ * <p>id写入{@link Codecs}的数据头部用于解压时识别编解码器，自定义编解码器
+ * 可通过{@link Codecs#register(Codec)}或java.util.ServiceLoader（META-INF/services）注册
+ * @author Ponfee
+ */
+public interface Codec {
+
+    /**
+     * 编解码器标识，取值范围[1, 127]，全局唯一
+     * @return the codec id
+     */
+    byte id();
+
+    /**
+     * 编解码器名称
+     * @return the codec name
+     */
+    String name();
+
+    /**
+     * 压缩
+     * @param data   原数据
+     * @param offset 起始位置
+     * @param length 长度
+     * @return 压缩后的数据
+     */
+    byte[] compress(byte[] data, int offset, int length);
+
+    /**
+     * 解压缩
+     * @param data      压缩数据
+     * @param offset    起始位置
+     * @param length    长度
+     * @param rawLength 原数据长度
+     * @return 解压缩后的数据
+     */
+    byte[] decompress(byte[] data, int offset, int length, int rawLength);
+
+}
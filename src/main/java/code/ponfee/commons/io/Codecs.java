@@ -0,0 +1,401 @@
+package code.ponfee.commons.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.ServiceLoader;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * 压缩编解码器注册及自描述数据格式
+ * <pre>
+ *  数据格式：[MAGIC(1)][codec id(1)][原数据长度(4)][数据]
+ *  codec id为0表示原数据小于阈值或压缩无收益，数据未压缩
+ * </pre>
+ * <p>以0x1F8B开头的数据视为旧版本的gzip格式，解压时仍可识别；
+ * 使用{@link #GZIP}压缩时输出旧版本的gzip格式（无头部且不受阈值限制），
+ * 用于与未升级的读取方保持兼容
+ * <p>Snappy（org.xerial.snappy:snappy-java）与Zstd（com.github.luben:zstd-jni）
+ * 在classpath中存在时启用，否则{@link #SNAPPY}、{@link #ZSTD}回退为纯java的{@link #LZ4}
+ * @author Ponfee
+ */
+public final class Codecs {
+
+    private static Logger logger = LoggerFactory.getLogger(Codecs.class);
+
+    public static final int HEADER_SIZE = 6;
+    public static final int DEFAULT_THRESHOLD = 512;
+
+    private static final byte MAGIC = (byte) 0xCE;
+    private static final byte STORED = 0;
+    private static final byte GZIP_MAGIC0 = (byte) 0x1F, GZIP_MAGIC1 = (byte) 0x8B;
+
+    private static final Codec[] REGISTRY = new Codec[128];
+
+    public static final Codec GZIP = register(new GzipCodec());
+    public static final Codec DEFLATE = register(new DeflateCodec());
+    public static final Codec LZ4 = register(Lz4Codec.INSTANCE);
+    public static final Codec SNAPPY = registerOrFallback(SnappyCodec::new, "snappy");
+    public static final Codec ZSTD = registerOrFallback(ZstdCodec::new, "zstd");
+
+    /** 默认编解码器 */
+    public static final Codec DEFAULT = LZ4;
+
+    static {
+        try {
+            for (Codec codec : ServiceLoader.load(Codec.class)) {
+                register(codec);
+            }
+        } catch (Throwable t) {
+            logger.error("load codec service occur error", t);
+        }
+    }
+
+    private Codecs() {}
+
+    /**
+     * 注册编解码器
+     * @param codec
+     * @return the codec
+     */
+    public static synchronized Codec register(Codec codec) {
+        int id = codec.id();
+        Preconditions.checkArgument(id > 0, "codec id must be in range [1, 127]: %s", id);
+        Codec exists = REGISTRY[id];
+        Preconditions.checkArgument(exists == null || exists == codec,
+                                    "codec id %s already registered: %s", id, exists);
+        REGISTRY[id] = codec;
+        return codec;
+    }
+
+    /**
+     * 按id获取编解码器
+     * @param id
+     * @return the codec, or null if not registered
+     */
+    public static Codec get(int id) {
+        return id > 0 && id < REGISTRY.length ? REGISTRY[id] : null;
+    }
+
+    // ---------------------------------------------------------------------compress
+    public static byte[] compress(Codec codec, int threshold, byte[] data) {
+        return compress(codec, threshold, data, 0, data.length);
+    }
+
+    /**
+     * 压缩为自描述格式
+     * @param codec     编解码器
+     * @param threshold 阈值，原数据长度小于此值时不压缩
+     * @param data      原数据
+     * @param offset    起始位置
+     * @param length    长度
+     * @return 带头部的数据
+     */
+    public static byte[] compress(Codec codec, int threshold, byte[] data, int offset, int length) {
+        if (codec == GZIP) {
+            return GZIP.compress(data, offset, length);
+        }
+
+        byte[] compressed = length < threshold ? null : codec.compress(data, offset, length);
+        byte[] result;
+        if (compressed == null || compressed.length >= length) {
+            result = header(STORED, length, length);
+            System.arraycopy(data, offset, result, HEADER_SIZE, length);
+        } else {
+            result = header(codec.id(), length, compressed.length);
+            System.arraycopy(compressed, 0, result, HEADER_SIZE, compressed.length);
+        }
+        return result;
+    }
+
+    /**
+     * 压缩为自描述格式并写入输出流
+     * @param codec     编解码器
+     * @param threshold 阈值，原数据长度小于此值时不压缩
+     * @param data      原数据
+     * @param offset    起始位置
+     * @param length    长度
+     * @param output    输出流
+     * @throws IOException
+     */
+    public static void compress(Codec codec, int threshold, byte[] data, int offset,
+                                int length, OutputStream output) throws IOException {
+        if (codec == GZIP) {
+            output.write(GZIP.compress(data, offset, length));
+            return;
+        }
+
+        byte[] compressed = length < threshold ? null : codec.compress(data, offset, length);
+        if (compressed == null || compressed.length >= length) {
+            output.write(header(STORED, length, 0));
+            output.write(data, offset, length);
+        } else {
+            output.write(header(codec.id(), length, 0));
+            output.write(compressed);
+        }
+    }
+
+    /**
+     * 解压缩自描述格式或旧版本的gzip格式数据
+     * @param data
+     * @return 原数据
+     */
+    public static byte[] decompress(byte[] data) {
+        if (data.length >= 2 && data[0] == GZIP_MAGIC0 && data[1] == GZIP_MAGIC1) {
+            return GzipProcessor.decompress(data);
+        }
+        if (data.length < HEADER_SIZE || data[0] != MAGIC) {
+            throw new IllegalArgumentException("Unknown compressed data format.");
+        }
+
+        int rawLength = (data[2] & 0xFF) << 24 | (data[3] & 0xFF) << 16
+                      | (data[4] & 0xFF) << 8  | (data[5] & 0xFF);
+        int length = data.length - HEADER_SIZE;
+        if (data[1] == STORED) {
+            Preconditions.checkArgument(rawLength == length, "Malformed stored data.");
+            return Arrays.copyOfRange(data, HEADER_SIZE, data.length);
+        }
+
+        Codec codec = get(data[1]);
+        if (codec == null) {
+            throw new IllegalArgumentException("Unregistered codec id: " + data[1]);
+        }
+        return codec.decompress(data, HEADER_SIZE, length, rawLength);
+    }
+
+    private static byte[] header(byte id, int rawLength, int dataLength) {
+        byte[] header = new byte[HEADER_SIZE + dataLength];
+        header[0] = MAGIC;
+        header[1] = id;
+        header[2] = (byte) (rawLength >>> 24);
+        header[3] = (byte) (rawLength >>> 16);
+        header[4] = (byte) (rawLength >>> 8);
+        header[5] = (byte) rawLength;
+        return header;
+    }
+
+    private static Codec registerOrFallback(CodecFactory factory, String name) {
+        try {
+            return register(factory.create());
+        } catch (Throwable t) {
+            logger.info("{} codec unavailable, fallback to lz4: {}", name, t.toString());
+            return LZ4;
+        }
+    }
+
+    @FunctionalInterface
+    private interface CodecFactory {
+        Codec create() throws Throwable;
+    }
+
+    // ---------------------------------------------------------------------codecs
+    /**
+     * gzip，与旧版本格式一致
+     */
+    private static final class GzipCodec implements Codec {
+        @Override
+        public byte id() {
+            return 1;
+        }
+
+        @Override
+        public String name() {
+            return "gzip";
+        }
+
+        @Override
+        public byte[] compress(byte[] data, int offset, int length) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(Math.max(length >>> 2, 64));
+            try (GZIPOutputStream gzout = new ExtendedGZIPOutputStream(baos)) {
+                gzout.write(data, offset, length);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return baos.toByteArray();
+        }
+
+        @Override
+        public byte[] decompress(byte[] data, int offset, int length, int rawLength) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(rawLength);
+            GzipProcessor.decompress(new ByteArrayInputStream(data, offset, length), baos);
+            return baos.toByteArray();
+        }
+    }
+
+    /**
+     * deflate（无zlib头部，BEST_SPEED），Deflater/Inflater按线程复用
+     */
+    private static final class DeflateCodec implements Codec {
+        private static final ThreadLocal<Deflater> DEFLATERS =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+        private static final ThreadLocal<Inflater> INFLATERS =
+            ThreadLocal.withInitial(() -> new Inflater(true));
+
+        @Override
+        public byte id() {
+            return 2;
+        }
+
+        @Override
+        public String name() {
+            return "deflate";
+        }
+
+        @Override
+        public byte[] compress(byte[] data, int offset, int length) {
+            Deflater deflater = DEFLATERS.get();
+            try {
+                deflater.setInput(data, offset, length);
+                deflater.finish();
+                byte[] buf = new byte[length + (length >>> 12) + (length >>> 14) + 64];
+                int n = 0;
+                while (!deflater.finished()) {
+                    if (n == buf.length) {
+                        buf = Arrays.copyOf(buf, buf.length << 1);
+                    }
+                    n += deflater.deflate(buf, n, buf.length - n);
+                }
+                return Arrays.copyOf(buf, n);
+            } finally {
+                deflater.reset();
+            }
+        }
+
+        @Override
+        public byte[] decompress(byte[] data, int offset, int length, int rawLength) {
+            Inflater inflater = INFLATERS.get();
+            try {
+                // nowrap模式需要额外一个字节的输入
+                byte[] input = Arrays.copyOfRange(data, offset, offset + length + 1);
+                inflater.setInput(input);
+                byte[] result = new byte[rawLength];
+                int n = 0;
+                while (n < rawLength && !inflater.finished()) {
+                    int count = inflater.inflate(result, n, rawLength - n);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    n += count;
+                }
+                if (n != rawLength) {
+                    throw new IllegalArgumentException("Malformed deflate data, expect length "
+                                                     + rawLength + " but " + n);
+                }
+                return result;
+            } catch (DataFormatException e) {
+                throw new IllegalArgumentException(e);
+            } finally {
+                inflater.reset();
+            }
+        }
+    }
+
+    /**
+     * snappy，依赖snappy-java
+     */
+    private static final class SnappyCodec implements Codec {
+        private final MethodHandle compress;
+        private final MethodHandle uncompress;
+
+        SnappyCodec() throws ReflectiveOperationException {
+            Class<?> type = Class.forName("org.xerial.snappy.Snappy");
+            MethodType signature = MethodType.methodType(byte[].class, byte[].class);
+            this.compress = MethodHandles.publicLookup().findStatic(type, "compress", signature);
+            this.uncompress = MethodHandles.publicLookup().findStatic(type, "uncompress", signature);
+        }
+
+        @Override
+        public byte id() {
+            return 4;
+        }
+
+        @Override
+        public String name() {
+            return "snappy";
+        }
+
+        @Override
+        public byte[] compress(byte[] data, int offset, int length) {
+            try {
+                return (byte[]) compress.invokeExact(slice(data, offset, length));
+            } catch (Throwable t) {
+                throw new IllegalStateException("snappy compress occur error", t);
+            }
+        }
+
+        @Override
+        public byte[] decompress(byte[] data, int offset, int length, int rawLength) {
+            try {
+                return (byte[]) uncompress.invokeExact(slice(data, offset, length));
+            } catch (Throwable t) {
+                throw new IllegalArgumentException("snappy decompress occur error", t);
+            }
+        }
+    }
+
+    /**
+     * zstd，依赖zstd-jni
+     */
+    private static final class ZstdCodec implements Codec {
+        private static final int LEVEL = 1;
+
+        private final MethodHandle compress;
+        private final MethodHandle decompress;
+
+        ZstdCodec() throws ReflectiveOperationException {
+            Class<?> type = Class.forName("com.github.luben.zstd.Zstd");
+            this.compress = MethodHandles.publicLookup().findStatic(
+                type, "compress", MethodType.methodType(byte[].class, byte[].class, int.class)
+            );
+            this.decompress = MethodHandles.publicLookup().findStatic(
+                type, "decompress", MethodType.methodType(byte[].class, byte[].class, int.class)
+            );
+        }
+
+        @Override
+        public byte id() {
+            return 5;
+        }
+
+        @Override
+        public String name() {
+            return "zstd";
+        }
+
+        @Override
+        public byte[] compress(byte[] data, int offset, int length) {
+            try {
+                return (byte[]) compress.invokeExact(slice(data, offset, length), LEVEL);
+            } catch (Throwable t) {
+                throw new IllegalStateException("zstd compress occur error", t);
+            }
+        }
+
+        @Override
+        public byte[] decompress(byte[] data, int offset, int length, int rawLength) {
+            try {
+                return (byte[]) decompress.invokeExact(slice(data, offset, length), rawLength);
+            } catch (Throwable t) {
+                throw new IllegalArgumentException("zstd decompress occur error", t);
+            }
+        }
+    }
+
+    private static byte[] slice(byte[] data, int offset, int length) {
+        return offset == 0 && length == data.length ? data : Arrays.copyOfRange(data, offset, offset + length);
+    }
+
+}
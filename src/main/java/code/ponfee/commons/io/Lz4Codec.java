@@ -0,0 +1,212 @@
+package code.ponfee.commons.io;
+
+import java.util.Arrays;
+
+/**
+ * LZ4块格式（block format）压缩，纯java实现
+ * <p>压缩为单次哈希查找的贪婪匹配，速度优先；解压缩对输入做边界校验，
+ * 输出与标准LZ4 block格式兼容
+ * @author Ponfee
+ */
+public final class Lz4Codec implements Codec {
+
+    public static final Lz4Codec INSTANCE = new Lz4Codec();
+
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5; // 最后5个字节必须为字面量
+    private static final int MF_LIMIT = 12; // 最后一个匹配须在结束前12字节之前开始
+    private static final int MAX_DISTANCE = 0xFFFF;
+    private static final int HASH_LOG = 12;
+    private static final int RUN_MASK = 0x0F;
+
+    private static final ThreadLocal<int[]> HASH_TABLE = ThreadLocal.withInitial(() -> new int[1 << HASH_LOG]);
+
+    private Lz4Codec() {}
+
+    @Override
+    public byte id() {
+        return 3;
+    }
+
+    @Override
+    public String name() {
+        return "lz4";
+    }
+
+    /**
+     * 压缩数据的最大长度
+     * @param length 原数据长度
+     * @return the max compressed length
+     */
+    public static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    @Override
+    public byte[] compress(byte[] src, int offset, int length) {
+        byte[] dest = new byte[maxCompressedLength(length)];
+        int end = offset + length, anchor = offset, dp = 0;
+
+        if (length > MF_LIMIT) {
+            int[] table = HASH_TABLE.get();
+            Arrays.fill(table, -1);
+            int mfLimit = end - MF_LIMIT, matchLimit = end - LAST_LITERALS;
+            for (int ip = offset, ref, h; ip <= mfLimit; ) {
+                h = hash(readInt(src, ip));
+                ref = table[h];
+                table[h] = ip;
+                if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != readInt(src, ip)) {
+                    ip++;
+                    continue;
+                }
+
+                // 向前扩展
+                while (ip > anchor && ref > offset && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                // 向后扩展
+                int matchLen = MIN_MATCH;
+                while (ip + matchLen < matchLimit && src[ip + matchLen] == src[ref + matchLen]) {
+                    matchLen++;
+                }
+
+                dp = writeSequence(dest, dp, src, anchor, ip - anchor, ip - ref, matchLen);
+                ip += matchLen;
+                anchor = ip;
+                if (ip <= mfLimit) {
+                    table[hash(readInt(src, ip - 2))] = ip - 2;
+                }
+            }
+        }
+
+        // 最后的字面量
+        int literalLen = end - anchor;
+        int token = dp++;
+        if (literalLen >= RUN_MASK) {
+            dest[token] = (byte) (RUN_MASK << 4);
+            dp = writeLength(dest, dp, literalLen - RUN_MASK);
+        } else {
+            dest[token] = (byte) (literalLen << 4);
+        }
+        System.arraycopy(src, anchor, dest, dp, literalLen);
+        dp += literalLen;
+        return Arrays.copyOf(dest, dp);
+    }
+
+    @Override
+    public byte[] decompress(byte[] src, int offset, int length, int rawLength) {
+        byte[] dest = new byte[rawLength];
+        int sp = offset, end = offset + length, dp = 0;
+        for (int token, len, b; ; ) {
+            if (sp >= end) {
+                throw malformed(sp);
+            }
+            token = src[sp++] & 0xFF;
+
+            // 字面量
+            if ((len = token >>> 4) == RUN_MASK) {
+                do {
+                    if (sp >= end) {
+                        throw malformed(sp);
+                    }
+                    len += (b = src[sp++] & 0xFF);
+                } while (b == 0xFF);
+            }
+            if (len > end - sp || len > rawLength - dp) {
+                throw malformed(sp);
+            }
+            System.arraycopy(src, sp, dest, dp, len);
+            sp += len;
+            dp += len;
+            if (sp == end) {
+                break; // 最后一个序列只有字面量
+            }
+
+            // 匹配
+            if (end - sp < 2) {
+                throw malformed(sp);
+            }
+            int distance = (src[sp] & 0xFF) | (src[sp + 1] & 0xFF) << 8;
+            sp += 2;
+            if (distance == 0 || distance > dp) {
+                throw malformed(sp);
+            }
+            if ((len = token & RUN_MASK) == RUN_MASK) {
+                do {
+                    if (sp >= end) {
+                        throw malformed(sp);
+                    }
+                    len += (b = src[sp++] & 0xFF);
+                } while (b == 0xFF);
+            }
+            len += MIN_MATCH;
+            if (len > rawLength - dp) {
+                throw malformed(sp);
+            }
+            int ref = dp - distance;
+            if (distance >= len) {
+                System.arraycopy(dest, ref, dest, dp, len);
+                dp += len;
+            } else {
+                // 重叠复制须逐字节
+                for (int n = dp + len; dp < n; ) {
+                    dest[dp++] = dest[ref++];
+                }
+            }
+        }
+
+        if (dp != rawLength) {
+            throw new IllegalArgumentException("Malformed lz4 data, expect length "
+                                             + rawLength + " but " + dp);
+        }
+        return dest;
+    }
+
+    private static int writeSequence(byte[] dest, int dp, byte[] src, int literalOffset,
+                                     int literalLen, int distance, int matchLen) {
+        int token = dp++, value;
+        if (literalLen >= RUN_MASK) {
+            value = RUN_MASK << 4;
+            dp = writeLength(dest, dp, literalLen - RUN_MASK);
+        } else {
+            value = literalLen << 4;
+        }
+        System.arraycopy(src, literalOffset, dest, dp, literalLen);
+        dp += literalLen;
+
+        dest[dp++] = (byte) distance;
+        dest[dp++] = (byte) (distance >>> 8);
+
+        matchLen -= MIN_MATCH;
+        if (matchLen >= RUN_MASK) {
+            value |= RUN_MASK;
+            dp = writeLength(dest, dp, matchLen - RUN_MASK);
+        } else {
+            value |= matchLen;
+        }
+        dest[token] = (byte) value;
+        return dp;
+    }
+
+    private static int writeLength(byte[] dest, int dp, int len) {
+        for (; len >= 0xFF; len -= 0xFF) {
+            dest[dp++] = (byte) 0xFF;
+        }
+        dest[dp++] = (byte) len;
+        return dp;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | b[i + 3] << 24;
+    }
+
+    private static int hash(int value) {
+        return (value * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static IllegalArgumentException malformed(int position) {
+        return new IllegalArgumentException("Malformed lz4 data at position " + position);
+    }
+
+}
@@ -41,11 +41,13 @@ public class HashOperations extends JedisOperations {
             return false;
         }
 
-        return call(shardedJedis -> {
+        boolean result = call(shardedJedis -> {
             boolean flag = Numbers.equals(shardedJedis.hset(key, field, value), 1);
             expireForce(shardedJedis, key, seconds);
             return flag;
         }, false, key, field, value, seconds);
+        nearInvalidate(key);
+        return result;
     }
 
     public boolean hset(String key, String field, String value) {
@@ -60,13 +62,13 @@ public class HashOperations extends JedisOperations {
      * @return 给定域的值。当给定域不存在或是给定 key 不存在时，返回 nil 。
      */
     public String hget(String key, String field, Integer seconds) {
-        return call(shardedJedis -> {
+        return nearHget(key, field, seconds, String.class, () -> call(shardedJedis -> {
             String result = shardedJedis.hget(key, field);
             if (result != null) {
                 expire(shardedJedis, key, seconds);
             }
             return result;
-        }, null, key, field, seconds);
+        }, null, key, field, seconds));
     }
 
     public String hget(String key, String field) {
@@ -137,12 +139,14 @@ public class HashOperations extends JedisOperations {
             return false;
         }
 
-        return call(shardedJedis -> {
+        boolean result = call(shardedJedis -> {
             byte[] data = jedisClient.serialize(t, isCompress);
             boolean flag = Numbers.equals(shardedJedis.hset(key, field, data), 1);
             expireForce(shardedJedis, key, seconds);
             return flag;
         }, false, key, field, t, isCompress, seconds);
+        nearInvalidate(key);
+        return result;
     }
 
     public <T extends Object> boolean hsetObject(byte[] key, byte[] field, T t, boolean isCompress) {
@@ -282,7 +286,7 @@ public class HashOperations extends JedisOperations {
      */
     public <T extends Object> boolean hmsetObjects(byte[] key, Map<byte[], T> map,
                                                    boolean isCompress, Integer seconds) {
-        return call(shardedJedis -> {
+        boolean flag = call(shardedJedis -> {
             Map<byte[], byte[]> data = new HashMap<>();
             for (Entry<byte[], T> entry : map.entrySet()) {
                 data.put(entry.getKey(), jedisClient.serialize(entry.getValue(), isCompress));
@@ -292,6 +296,8 @@ public class HashOperations extends JedisOperations {
             expireForce(shardedJedis, key, seconds);
             return SUCCESS_MSG.equalsIgnoreCase(rtn);
         }, false, key, map, isCompress, seconds);
+        nearInvalidate(key);
+        return flag;
     }
 
     public <T extends Object> boolean hmsetObjects(byte[] key, Map<byte[], T> map, boolean isCompress) {
@@ -368,11 +374,13 @@ public class HashOperations extends JedisOperations {
      * @return 执行 HINCRBY 命令之后，哈希表 key 中域 field 的值
      */
     public Long hincrBy(String key, String field, int value, Integer seconds) {
-        return call(shardedJedis -> {
+        Long result = call(shardedJedis -> {
             Long rtn = shardedJedis.hincrBy(key, field, value);
             expireForce(shardedJedis, key, seconds);
             return rtn;
         }, null, key, field, value, seconds);
+        nearInvalidate(key);
+        return result;
     }
 
     public Long hincrBy(String key, String field, int value) {
@@ -396,11 +404,13 @@ public class HashOperations extends JedisOperations {
             return false;
         }
 
-        return call(shardedJedis -> {
+        boolean flag = call(shardedJedis -> {
             String rtn = shardedJedis.hmset(key, map);
             expireForce(shardedJedis, key, seconds);
             return SUCCESS_MSG.equalsIgnoreCase(rtn);
         }, false, key, map, seconds);
+        nearInvalidate(key);
+        return flag;
     }
 
     public boolean hmset(String key, Map<String, String> map) {
@@ -439,11 +449,13 @@ public class HashOperations extends JedisOperations {
      * @return 被成功移除的域的数量，不包括被忽略的域
      */
     public Long hdel(String key, Integer seconds, String... fields) {
-        return call(shardedJedis -> {
+        Long result = call(shardedJedis -> {
             Long rtn = shardedJedis.hdel(key, fields);
             expire(shardedJedis, key, seconds);
             return rtn;
         }, null, key, seconds, fields);
+        nearInvalidate(key);
+        return result;
     }
 
     public Long hdel(String key, String... fields) {
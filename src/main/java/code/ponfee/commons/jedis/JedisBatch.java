@@ -0,0 +1,322 @@
+package code.ponfee.commons.jedis;
+
+import static code.ponfee.commons.jedis.JedisOperations.SUCCESS_MSG;
+import static code.ponfee.commons.jedis.JedisOperations.getActualExpire;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.Function;
+
+import code.ponfee.commons.math.Numbers;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ShardedJedisPipeline;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * <pre>
+ *  批量命令（pipeline）：
+ *    1、命令按key所在分片分组，每个分片一次往返；
+ *    2、seconds不为null时，EXPIRE命令与写命令在同一个pipeline中发送；
+ *    3、seconds为null时不设置失效时间（与XxxOperations的expireForce不同，
+ *       pipeline中无法根据TTL结果做判断）；
+ *    4、返回的{@link JedisFuture}在pipeline执行完成后才能获取结果
+ * </pre>
+ *
+ * e.g.：
+ * <pre>
+ *  Map&lt;String, JedisFuture&lt;String&gt;&gt; result = jedisClient.pipelined(batch -&gt; {
+ *      Map&lt;String, JedisFuture&lt;String&gt;&gt; map = new HashMap&lt;&gt;();
+ *      for (String key : keys) {
+ *          map.put(key, batch.get(key));
+ *      }
+ *      return map;
+ *  });
+ * </pre>
+ *
+ * @author fupf
+ */
+public class JedisBatch {
+
+    private final JedisClient jedisClient;
+    private final ShardedJedisPipeline pipeline;
+    private final Set<String> writtenKeys = new LinkedHashSet<>(); // 用于失效近端缓存
+
+    JedisBatch(JedisClient jedisClient, ShardedJedisPipeline pipeline) {
+        this.jedisClient = jedisClient;
+        this.pipeline = pipeline;
+    }
+
+    // ---------------------------------------------------------------keys
+    public JedisFuture<Long> del(String key) {
+        written(key);
+        return future(pipeline.del(key));
+    }
+
+    public JedisFuture<Long> del(byte[] key) {
+        written(key);
+        return future(pipeline.del(key));
+    }
+
+    public JedisFuture<Boolean> exists(String key) {
+        return future(pipeline.exists(key));
+    }
+
+    public JedisFuture<Boolean> expire(String key, int seconds) {
+        return future(pipeline.expire(key, getActualExpire(seconds)), JedisBatch::isOne);
+    }
+
+    public JedisFuture<Long> ttl(String key) {
+        return future(pipeline.ttl(key));
+    }
+
+    // ---------------------------------------------------------------value
+    public JedisFuture<Boolean> set(String key, String value, int seconds) {
+        written(key);
+        return future(pipeline.setex(key, getActualExpire(seconds), value), JedisBatch::isOk);
+    }
+
+    public JedisFuture<String> get(String key) {
+        return future(pipeline.get(key));
+    }
+
+    public JedisFuture<Long> incrBy(String key, long step, Integer seconds) {
+        written(key);
+        Response<Long> response = pipeline.incrBy(key, step);
+        expireIfNecessary(key, seconds);
+        return future(response);
+    }
+
+    public <T> JedisFuture<Boolean> setObject(byte[] key, T t, boolean isCompress, int seconds) {
+        written(key);
+        byte[] data = jedisClient.serialize(t, isCompress);
+        return future(pipeline.setex(key, getActualExpire(seconds), data), JedisBatch::isOk);
+    }
+
+    public <T> JedisFuture<Boolean> setObject(byte[] key, T t, int seconds) {
+        return setObject(key, t, true, seconds);
+    }
+
+    public <T> JedisFuture<T> getObject(byte[] key, Class<T> clazz, boolean isCompress) {
+        return future(pipeline.get(key), data -> jedisClient.deserialize(data, clazz, isCompress));
+    }
+
+    public <T> JedisFuture<T> getObject(byte[] key, Class<T> clazz) {
+        return getObject(key, clazz, true);
+    }
+
+    // ---------------------------------------------------------------hash
+    public JedisFuture<Boolean> hset(String key, String field, String value, Integer seconds) {
+        written(key);
+        Response<Long> response = pipeline.hset(key, field, value);
+        expireIfNecessary(key, seconds);
+        return future(response, JedisBatch::isOne);
+    }
+
+    public JedisFuture<String> hget(String key, String field) {
+        return future(pipeline.hget(key, field));
+    }
+
+    public JedisFuture<Boolean> hmset(String key, Map<String, String> map, Integer seconds) {
+        written(key);
+        Response<String> response = pipeline.hmset(key, map);
+        expireIfNecessary(key, seconds);
+        return future(response, JedisBatch::isOk);
+    }
+
+    public JedisFuture<Map<String, String>> hgetAll(String key) {
+        return future(pipeline.hgetAll(key));
+    }
+
+    public JedisFuture<Long> hincrBy(String key, String field, long value, Integer seconds) {
+        written(key);
+        Response<Long> response = pipeline.hincrBy(key, field, value);
+        expireIfNecessary(key, seconds);
+        return future(response);
+    }
+
+    public JedisFuture<Long> hdel(String key, String... fields) {
+        written(key);
+        return future(pipeline.hdel(key, fields));
+    }
+
+    public <T> JedisFuture<Boolean> hsetObject(byte[] key, byte[] field, T t,
+                                               boolean isCompress, Integer seconds) {
+        written(key);
+        Response<Long> response = pipeline.hset(key, field, jedisClient.serialize(t, isCompress));
+        expireIfNecessary(key, seconds);
+        return future(response, JedisBatch::isOne);
+    }
+
+    public <T> JedisFuture<T> hgetObject(byte[] key, byte[] field, Class<T> clazz, boolean isCompress) {
+        return future(pipeline.hget(key, field), data -> jedisClient.deserialize(data, clazz, isCompress));
+    }
+
+    public <T> JedisFuture<Map<byte[], T>> hgetAllObject(byte[] key, Class<T> clazz, boolean isCompress) {
+        return future(pipeline.hgetAll(key), datas -> {
+            Map<byte[], T> result = new HashMap<>();
+            if (datas != null) {
+                for (Entry<byte[], byte[]> entry : datas.entrySet()) {
+                    result.put(entry.getKey(), jedisClient.deserialize(entry.getValue(), clazz, isCompress));
+                }
+            }
+            return result;
+        });
+    }
+
+    // ---------------------------------------------------------------list
+    public JedisFuture<Long> lpush(String key, Integer seconds, String... items) {
+        written(key);
+        Response<Long> response = pipeline.lpush(key, items);
+        expireIfNecessary(key, seconds);
+        return future(response);
+    }
+
+    public JedisFuture<Long> rpush(String key, Integer seconds, String... items) {
+        written(key);
+        Response<Long> response = pipeline.rpush(key, items);
+        expireIfNecessary(key, seconds);
+        return future(response);
+    }
+
+    public JedisFuture<List<String>> lrange(String key, long start, long end) {
+        return future(pipeline.lrange(key, start, end));
+    }
+
+    public <T> JedisFuture<List<T>> lrangeObject(byte[] key, long start, long end,
+                                                 Class<T> clazz, boolean isCompress) {
+        return future(pipeline.lrange(key, start, end), datas -> {
+            List<T> result = new ArrayList<>();
+            if (datas != null) {
+                for (byte[] data : datas) {
+                    result.add(jedisClient.deserialize(data, clazz, isCompress));
+                }
+            }
+            return result;
+        });
+    }
+
+    // ---------------------------------------------------------------set
+    public JedisFuture<Long> sadd(String key, Integer seconds, String... members) {
+        written(key);
+        Response<Long> response = pipeline.sadd(key, members);
+        expireIfNecessary(key, seconds);
+        return future(response);
+    }
+
+    public JedisFuture<Long> srem(String key, String... members) {
+        written(key);
+        return future(pipeline.srem(key, members));
+    }
+
+    public JedisFuture<Set<String>> smembers(String key) {
+        return future(pipeline.smembers(key));
+    }
+
+    // ---------------------------------------------------------------sorted set
+    public JedisFuture<Long> zadd(String key, double score, String member, Integer seconds) {
+        written(key);
+        Response<Long> response = pipeline.zadd(key, score, member);
+        expireIfNecessary(key, seconds);
+        return future(response);
+    }
+
+    public JedisFuture<Long> zadd(String key, Map<String, Double> scoreMembers, Integer seconds) {
+        written(key);
+        Response<Long> response = pipeline.zadd(key, scoreMembers);
+        expireIfNecessary(key, seconds);
+        return future(response);
+    }
+
+    public JedisFuture<Long> zadd(byte[] key, Map<byte[], Double> scoreMembers, Integer seconds) {
+        written(key);
+        Response<Long> response = pipeline.zadd(key, scoreMembers);
+        expireIfNecessary(key, seconds);
+        return future(response);
+    }
+
+    public JedisFuture<Long> zrem(String key, String... members) {
+        written(key);
+        return future(pipeline.zrem(key, members));
+    }
+
+    public JedisFuture<Set<String>> zrange(String key, long start, long end) {
+        return future(pipeline.zrange(key, start, end));
+    }
+
+    public JedisFuture<Long> zcount(String key, double min, double max) {
+        return future(pipeline.zcount(key, min, max));
+    }
+
+    public JedisFuture<Long> zremrangeByScore(String key, double start, double end) {
+        written(key);
+        return future(pipeline.zremrangeByScore(key, start, end));
+    }
+
+    // ---------------------------------------------------------------package methods
+    /**
+     * 执行pipeline并失效近端缓存
+     */
+    void sync() {
+        pipeline.sync();
+        invalidateNearCache();
+    }
+
+    /**
+     * 出错时放弃未提交的命令，部分命令可能已发送，仍须使近端缓存失效
+     */
+    void discard() {
+        invalidateNearCache();
+    }
+
+    // ---------------------------------------------------------------private methods
+    private void invalidateNearCache() {
+        NearCache nearCache = jedisClient.nearCache();
+        if (nearCache != null) {
+            for (String key : writtenKeys) {
+                nearCache.invalidate(key);
+            }
+        }
+    }
+
+    private void expireIfNecessary(String key, Integer seconds) {
+        if (seconds != null) {
+            pipeline.expire(key, getActualExpire(seconds));
+        }
+    }
+
+    private void expireIfNecessary(byte[] key, Integer seconds) {
+        if (seconds != null) {
+            pipeline.expire(key, getActualExpire(seconds));
+        }
+    }
+
+    private void written(String key) {
+        writtenKeys.add(key);
+    }
+
+    private void written(byte[] key) {
+        writtenKeys.add(SafeEncoder.encode(key));
+    }
+
+    private static <T> JedisFuture<T> future(Response<T> response) {
+        return new JedisFuture<>(response, Function.identity());
+    }
+
+    private static <S, T> JedisFuture<T> future(Response<S> response, Function<? super S, T> mapper) {
+        return new JedisFuture<>(response, mapper);
+    }
+
+    private static boolean isOk(String reply) {
+        return SUCCESS_MSG.equalsIgnoreCase(reply);
+    }
+
+    private static boolean isOne(Long reply) {
+        return Numbers.equals(reply, 1);
+    }
+
+}
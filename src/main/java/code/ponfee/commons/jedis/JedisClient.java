@@ -5,7 +5,11 @@ import java.util.Arrays;
 import java.util.Base64;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
@@ -13,6 +17,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
 
+import code.ponfee.commons.io.Codec;
+import code.ponfee.commons.io.Codecs;
 import code.ponfee.commons.serial.FstSerializer;
 import code.ponfee.commons.serial.Serializer;
 import redis.clients.jedis.Jedis;
@@ -44,6 +50,11 @@ public class JedisClient implements DisposableBean {
     private ZSetOperations zsetOps;
     private ScriptOperations scriptOps;
     private MQOperations mqOps;
+    private volatile NearCache nearCache; // 近端缓存，默认不开启
+    private volatile LockNotifier lockNotifier; // 分布式锁释放通知，首次使用时创建
+    private volatile ExecutorService executor; // 多分片并行执行器，默认使用共享线程池
+    private volatile Codec codec = Codecs.DEFAULT; // byte[]值的压缩编解码器
+    private volatile int compressThreshold = Codecs.DEFAULT_THRESHOLD;
 
     // -----------------------------------ShardedJedisPool（分片模式）-----------------------------------
     public JedisClient(GenericObjectPoolConfig poolCfg, String hosts) {
@@ -206,8 +217,81 @@ public class JedisClient implements DisposableBean {
         return this.mqOps;
     }
 
+    /**
+     * 开启近端缓存：匹配前缀的key在本地缓存反序列化后的数据，
+     * 通过{@link MQOperations}发布/订阅消息在各节点间失效
+     *
+     * @param maximumSize  本地缓存最大数量
+     * @param prefixTtls   key前缀及其本地缓存时间（毫秒）
+     * @return the near cache
+     */
+    public synchronized NearCache enableNearCache(long maximumSize, Map<String, Integer> prefixTtls) {
+        if (this.nearCache != null) {
+            this.nearCache.close();
+        }
+        return this.nearCache = new NearCache(this, maximumSize, prefixTtls);
+    }
+
+    public synchronized void disableNearCache() {
+        if (this.nearCache != null) {
+            this.nearCache.close();
+            this.nearCache = null;
+        }
+    }
+
+    /**
+     * 近端缓存，未开启时返回null
+     * @return the near cache
+     */
+    public NearCache nearCache() {
+        return this.nearCache;
+    }
+
+    /**
+     * 设置多分片并行（mget、delWithWildcard等）的执行器，
+     * 如{@link code.ponfee.commons.concurrent.ThreadPoolExecutors#createVirtual}使用虚拟线程
+     * @param executor the executor, null to use the shared thread pool
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    ExecutorService executor() {
+        return this.executor;
+    }
+
+    LockNotifier lockNotifier() {
+        LockNotifier notifier = this.lockNotifier;
+        if (notifier == null) {
+            synchronized (this) {
+                if ((notifier = this.lockNotifier) == null) {
+                    notifier = this.lockNotifier = new LockNotifier(this);
+                }
+            }
+        }
+        return notifier;
+    }
+
+    /**
+     * 设置byte[]值（{@link ValueOperations#set(byte[], byte[], boolean, int)}等）的压缩编解码器，
+     * 对象值的压缩由{@link Serializer#setCodec(Codec)}设置
+     * @param codec the codec
+     * @param compressThreshold 小于此长度的值不压缩
+     */
+    public void setCodec(Codec codec, int compressThreshold) {
+        this.codec = Objects.requireNonNull(codec);
+        this.compressThreshold = compressThreshold;
+    }
+
     @Override
     public void destroy() {
+        disableNearCache();
+        synchronized (this) {
+            if (lockNotifier != null) {
+                lockNotifier.close();
+                lockNotifier = null;
+            }
+        }
         if (shardedJedisPool != null && !shardedJedisPool.isClosed()) {
             shardedJedisPool.close();
             shardedJedisPool = null;
@@ -229,6 +313,43 @@ public class JedisClient implements DisposableBean {
         return call.call(this, occurErrorRtnVal, args);
     }
 
+    /**
+     * 批量命令（pipeline），action中添加的命令在action返回后一次提交，
+     * 返回的{@link JedisFuture}在本方法返回后才能获取结果
+     * <p>action或提交出错时断开各分片连接（丢弃未读取的响应）后再归还连接池，并抛出异常
+     * @param action  添加批量命令的函数
+     * @return the action result
+     */
+    public final <R> R pipelined(Function<JedisBatch, R> action) {
+        try (ShardedJedis shardedJedis = getShardedJedis()) {
+            JedisBatch batch = new JedisBatch(this, shardedJedis.pipelined());
+            try {
+                R result = action.apply(batch);
+                batch.sync();
+                return result;
+            } catch (RuntimeException | Error e) {
+                batch.discard();
+                disconnect(shardedJedis);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 断开各分片的连接，下次使用时重新连接（不能用ShardedJedis#disconnect，其QUIT会读取到未读的pipeline响应）
+     * @param shardedJedis
+     */
+    private static void disconnect(ShardedJedis shardedJedis) {
+        for (Jedis jedis : shardedJedis.getAllShards()) {
+            try {
+                jedis.getClient().resetPipelinedCount();
+                jedis.getClient().disconnect();
+            } catch (Exception e) {
+                logger.warn("disconnect redis shard occur error: {}", e.getMessage());
+            }
+        }
+    }
+
     /**
      * 勾子函数：无返回值
      * @param hook 调用勾子函数
@@ -356,6 +477,14 @@ public class JedisClient implements DisposableBean {
         //jedis.disconnect();
     }*/
 
+    final byte[] compress(byte[] data) {
+        return Codecs.compress(codec, compressThreshold, data);
+    }
+
+    final byte[] decompress(byte[] data) {
+        return Codecs.decompress(data);
+    }
+
     final <T> byte[] serialize(T t, boolean isCompress) {
         return serializer.serialize(t, isCompress);
     }
@@ -0,0 +1,45 @@
+package code.ponfee.commons.jedis;
+
+import java.util.function.Function;
+
+import redis.clients.jedis.Response;
+
+/**
+ * pipeline命令的执行结果，在{@link JedisClient#pipelined(java.util.function.Function)}
+ * 执行完成（pipeline sync）后才能获取
+ *
+ * @author fupf
+ * @param <T>
+ */
+public final class JedisFuture<T> {
+
+    private final Response<?> response;
+    private final Function<Object, T> mapper;
+    private volatile boolean done = false;
+    private T value;
+
+    @SuppressWarnings("unchecked")
+    <S> JedisFuture(Response<S> response, Function<? super S, T> mapper) {
+        this.response = response;
+        this.mapper = (Function<Object, T>) mapper;
+    }
+
+    /**
+     * 获取结果
+     * @return the result
+     * @throws redis.clients.jedis.exceptions.JedisDataException
+     *         if the pipeline not yet sync or command occur error
+     */
+    public T get() {
+        if (!done) {
+            synchronized (this) {
+                if (!done) {
+                    value = mapper.apply(response.get());
+                    done = true;
+                }
+            }
+        }
+        return value;
+    }
+
+}
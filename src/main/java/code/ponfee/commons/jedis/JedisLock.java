@@ -1,9 +1,13 @@
 package code.ponfee.commons.jedis;
 
 import java.util.Arrays;
-import java.util.List;
+import java.util.Collections;
 import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 
@@ -13,10 +17,11 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 
+import code.ponfee.commons.concurrent.NamedThreadFactory;
+import code.ponfee.commons.jce.digest.DigestUtils;
 import code.ponfee.commons.math.Numbers;
-import code.ponfee.commons.util.Bytes;
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisException;
 
 /**
  * <pre>
@@ -58,8 +63,14 @@ import redis.clients.jedis.Transaction;
  * }
  * </pre>
  * 
- * 基于redis的分布式锁
- * 使用redis transaction功能实现
+ * 基于redis的分布式锁：
+ *   1、通过SET NX PX原子获取锁，值为当前持有者的唯一标识；
+ *   2、通过lua脚本比较值后删除释放锁，并发布释放通知；
+ *   3、可重入，同一线程的重入次数在本地记录，重入时校验redis中的锁仍属于当前持有者并续期，
+ *      锁已过期或被他人获取时重新获取；
+ *   4、等待锁的线程阻塞至收到释放通知（{@link LockNotifier}），
+ *      未收到通知时最长等待至持有者的锁过期，订阅未建立时按sleepMillis轮询；
+ *   5、开启watchdog时，持有期间每1/3锁超时时间续期一次
  * @author fupf
  */
 public class JedisLock implements Lock, java.io.Serializable {
@@ -70,14 +81,24 @@ public class JedisLock implements Lock, java.io.Serializable {
     private static final int MAX_TOMEOUT_SECONDS = 86400; // 最大超 时为1天
     private static final int MIN_TOMEOUT_SECONDS = 1; // 最小超 时为1秒
     private static final int MIN_SLEEP_MILLIS = 9; // 最小休眠时间为9毫秒
-    private static final byte[] KEY_PREFIX = "jedis:lock:".getBytes();
-    private static final transient ThreadLocal<byte[]> LOCK_VALUE = new ThreadLocal<>();
+    private static final String KEY_PREFIX = "jedis:lock:";
+
+    private static final String RELEASE_SCRIPT = 
+        "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+    private static final String RELEASE_SCRIPT_SHA1 = DigestUtils.sha1Hex(RELEASE_SCRIPT);
+    private static final String RENEW_SCRIPT = 
+        "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end";
+    private static final String RENEW_SCRIPT_SHA1 = DigestUtils.sha1Hex(RENEW_SCRIPT);
+
+    private static final String OWNER_PREFIX = UUID.randomUUID().toString() + ":";
+    private static final AtomicLong OWNER_SEQ = new AtomicLong();
 
     private final transient JedisClient jedisClient;
-    private final byte[] lockKey;
-    private final int timeoutSeconds; // 锁的超时时间，防止死锁
-    private final long timeoutMillis;
+    private final String lockKey;
+    private final long timeoutMillis; // 锁的超时时间，防止死锁
     private final long sleepMillis;
+    private final boolean watchdog;
+    private final transient ThreadLocal<Hold> holds = new ThreadLocal<>();
 
     public JedisLock(JedisClient jedisClient, String lockKey) {
         this(jedisClient, lockKey, MAX_TOMEOUT_SECONDS);
@@ -87,43 +108,44 @@ public class JedisLock implements Lock, java.io.Serializable {
         this(jedisClient, lockKey, timeoutSeconds, 9);
     }
 
+    public JedisLock(JedisClient jedisClient, String lockKey, int timeoutSeconds, int sleepMillis) {
+        this(jedisClient, lockKey, timeoutSeconds, sleepMillis, false);
+    }
+
     /**
      * 锁对象构造函数
      * @param jedisClient        jedisClient实例
      * @param lockKey            待加锁的键
      * @param timeoutSeconds     锁超时时间（防止死锁）
-     * @param sleepMillis        休眠时间（毫秒）
+     * @param sleepMillis        未订阅释放通知时的轮询休眠时间（毫秒）
+     * @param watchdog           是否在持有期间自动续期
      */
-    public JedisLock(JedisClient jedisClient, String lockKey, int timeoutSeconds, int sleepMillis) {
+    public JedisLock(JedisClient jedisClient, String lockKey, int timeoutSeconds, 
+                     int sleepMillis, boolean watchdog) {
         Preconditions.checkArgument(jedisClient != null, "jedis client cannot be null");
         Preconditions.checkArgument(StringUtils.isNotEmpty(lockKey), "lock key cannot be null");
 
         this.jedisClient = jedisClient;
-        this.lockKey = Bytes.concat(KEY_PREFIX, lockKey.getBytes()); // add prefix key by "jedis:lock:"
+        this.lockKey = KEY_PREFIX + lockKey; // add prefix key by "jedis:lock:"
         timeoutSeconds = Math.abs(timeoutSeconds);
         if (timeoutSeconds > MAX_TOMEOUT_SECONDS) {
             timeoutSeconds = MAX_TOMEOUT_SECONDS;
         } else if (timeoutSeconds < MIN_TOMEOUT_SECONDS) {
             timeoutSeconds = MIN_TOMEOUT_SECONDS;
         }
-        this.timeoutSeconds = timeoutSeconds;
         this.timeoutMillis = TimeUnit.SECONDS.toMillis(timeoutSeconds);
         this.sleepMillis = Numbers.bounds(sleepMillis, MIN_SLEEP_MILLIS, (int) timeoutMillis);
+        this.watchdog = watchdog;
     }
 
     /**
      * 等待锁直到获取
      */
     public @Override void lock() {
-        for (;;) {
-            if (tryLock()) {
-                break;
-            }
-            try {
-                TimeUnit.MILLISECONDS.sleep(sleepMillis);
-            } catch (InterruptedException e) {
-                logger.error("jedis lock sleep occur interrupted exception", e);
-            }
+        try {
+            acquire(Long.MAX_VALUE, false);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e); // cannot happen
         }
     }
 
@@ -131,50 +153,24 @@ public class JedisLock implements Lock, java.io.Serializable {
      * 等待锁直到获取成功或抛出InterruptedException异常
      */
     public @Override void lockInterruptibly() throws InterruptedException {
-        for (;;) {
-            if (Thread.interrupted()) {
-                throw new InterruptedException();
-            }
-            if (tryLock()) {
-                break;
-            }
-            TimeUnit.MILLISECONDS.sleep(sleepMillis);
-        }
+        acquire(Long.MAX_VALUE, true);
     }
 
     /**
      * 尝试获取锁，成功返回true，失败返回false
      */
     public @Override boolean tryLock() {
-        return jedisClient.call(shardedJedis -> {
-            Jedis jedis = shardedJedis.getShard(lockKey);
-
-            // 仅当lockKey不存在才能设置成功并返回1，否则setnx不做任何动作返回0
-            Long result = jedis.setnx(lockKey, generateValue());
-            if (result != null && result.intValue() == 1) {
-                // 成功获取锁后需要设置失效期
-                jedis.expire(lockKey, JedisOperations.getActualExpire(timeoutSeconds));
-                return true;
-            }
+        Hold hold = holds.get();
+        if (hold != null && reenter(hold)) {
+            return true;
+        }
 
-            jedis.watch(lockKey); // 监视lockKey
-            byte[] value = jedis.get(lockKey); // 获取当前锁值
-            if (value == null) {
-                jedis.unwatch();
-                return tryLock(); // 锁被释放，重新获取
-            } else if (System.currentTimeMillis() <= parseValue(value)) {
-                jedis.unwatch();
-                return false; // 锁未超时
-            } else {
-                // 锁已超时，争抢锁（事务控制）
-                Transaction tx = jedis.multi();
-                tx.getSet(lockKey, generateValue());
-                tx.expire(lockKey, JedisOperations.getActualExpire(timeoutSeconds));
-                List<Object> exec = tx.exec(); // exec执行完后被监控的key会自动unwatch
-                return exec != null && !exec.isEmpty() 
-                    && Arrays.equals(value, (byte[]) exec.get(0));
-            }
-        }, false);
+        String owner = newOwner();
+        if (tryAcquire(owner) != 0) {
+            return false;
+        }
+        onAcquired(owner, holdCount(hold));
+        return true;
     }
 
     /**
@@ -183,43 +179,32 @@ public class JedisLock implements Lock, java.io.Serializable {
      */
     public @Override boolean tryLock(long timeout, TimeUnit unit) 
         throws InterruptedException {
-        timeout = unit.toNanos(timeout);
-        long startTime = System.nanoTime();
-        for (;;) {
-            if (Thread.interrupted()) {
-                throw new InterruptedException();
-            }
-            if (tryLock()) {
-                return true;
-            }
-            if (System.nanoTime() - startTime > timeout) {
-                return false; // 等待超时则返回
-            }
-            TimeUnit.MILLISECONDS.sleep(sleepMillis);
-        }
+        return acquire(unit.toNanos(timeout), true);
     }
 
     /**
-     * 释放锁
+     * 释放锁，重入时只减少重入次数
      */
     public @Override void unlock() {
-        jedisClient.hook(shardedJedis -> {
-            // 根据分片获取jedis
-            Jedis jedis = shardedJedis.getShard(lockKey);
-            jedis.watch(lockKey);
-            byte[] value = LOCK_VALUE.get(); // 获取当前线程保存的锁值
-            if (value == null || !Arrays.equals(value, jedis.get(lockKey))) {
-                // 当前线程未获取过锁或锁已被其它线程获取
-                jedis.unwatch();
-            } else {
-                // 当前线程持有锁，需要释放锁
-                Transaction tx = jedis.multi();
-                tx.del(lockKey);
-                tx.exec(); // 自动unwatch
-            }
+        Hold hold = holds.get();
+        if (hold == null) {
+            return; // 当前线程未持有锁
+        }
+        if (--hold.count > 0) {
+            return;
+        }
 
-            LOCK_VALUE.remove(); // 删除
-        });
+        holds.remove();
+        if (hold.renewal != null) {
+            hold.renewal.cancel(false);
+        }
+        Object result = jedisClient.scriptOps().evalsha(
+            RELEASE_SCRIPT, RELEASE_SCRIPT_SHA1, 
+            Collections.singletonList(lockKey), Collections.singletonList(hold.owner)
+        );
+        if (result instanceof Long && (Long) result > 0) {
+            jedisClient.lockNotifier().publish(lockKey);
+        }
     }
 
     public @Override Condition newCondition() {
@@ -248,8 +233,17 @@ public class JedisLock implements Lock, java.io.Serializable {
      * @return
      */
     public boolean isHeldByCurrentThread() {
-        byte[] value = LOCK_VALUE.get();
-        return value != null && Arrays.equals(value, jedisClient.valueOps().get(lockKey));
+        Hold hold = holds.get();
+        return hold != null && hold.owner.equals(jedisClient.valueOps().get(lockKey));
+    }
+
+    /**
+     * 当前线程的重入次数
+     * @return the hold count, 0 if not held
+     */
+    public int getHoldCount() {
+        Hold hold = holds.get();
+        return hold == null ? 0 : hold.count;
     }
 
     /**
@@ -260,50 +254,179 @@ public class JedisLock implements Lock, java.io.Serializable {
         return jedisClient.valueOps().get(lockKey) != null;
     }
 
+    // -------------------------------------------------------------private methods
     /**
-     * 解析值数据
-     * @param value
-     * @return
+     * 获取锁，未获取到时等待释放通知
+     * @param timeoutNanos  最长等待纳秒数，Long.MAX_VALUE表示一直等待
+     * @param interruptible 是否响应中断
+     * @return {@code true} if acquired
+     * @throws InterruptedException
      */
-    private long parseValue(byte[] value) {
-        return Bytes.toLong(value, 16); // long value after 16 byte uuid
+    private boolean acquire(long timeoutNanos, boolean interruptible) throws InterruptedException {
+        if (interruptible && Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        Hold hold = holds.get();
+        if (hold != null && reenter(hold)) {
+            return true;
+        }
+        int count = holdCount(hold);
+        String owner = newOwner();
+        if (tryAcquire(owner) == 0) {
+            onAcquired(owner, count);
+            return true;
+        }
+        if (timeoutNanos <= 0) {
+            return false;
+        }
+
+        long deadline = System.nanoTime() + timeoutNanos;
+        LockNotifier notifier = jedisClient.lockNotifier();
+        LockNotifier.Waiters waiters = notifier.register(lockKey);
+        boolean interrupted = false;
+        try {
+            for (;;) {
+                // 先取版本再尝试获取，避免丢失两者之间的通知
+                long version = waiters.version();
+                long ttl = tryAcquire(owner);
+                if (ttl == 0) {
+                    onAcquired(owner, count);
+                    return true;
+                }
+
+                long remaining = timeoutNanos == Long.MAX_VALUE 
+                               ? Long.MAX_VALUE : deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false; // 等待超时则返回
+                }
+                long waitMillis = notifier.isSubscribed() ? ttl : Math.min(ttl, sleepMillis);
+                waitMillis = Math.min(waitMillis, TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+                try {
+                    waiters.await(version, waitMillis);
+                } catch (InterruptedException e) {
+                    if (interruptible) {
+                        throw e;
+                    }
+                    interrupted = true;
+                }
+            }
+        } finally {
+            notifier.unregister(lockKey, waiters);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     /**
-     * 获取锁值
-     * @return
+     * SET NX PX获取锁
+     * @param owner 持有者标识
+     * @return 0表示获取成功，否则为建议的等待毫秒数（当前持有者锁的剩余时间）
+     */
+    private long tryAcquire(String owner) {
+        return jedisClient.call(shardedJedis -> {
+            Jedis jedis = shardedJedis.getShard(lockKey);
+            if (JedisOperations.SUCCESS_MSG.equals(jedis.set(lockKey, owner, "NX", "PX", timeoutMillis))) {
+                return 0L;
+            }
+            Long ttl = jedis.pttl(lockKey);
+            if (ttl == null || ttl == -1) {
+                return sleepMillis; // 无过期时间（非本锁设置的值）
+            }
+            return ttl == -2 ? 1L : Math.max(ttl, 1L); // -2：已释放，立即重试
+        }, sleepMillis, lockKey);
+    }
+
+    private static String newOwner() {
+        return OWNER_PREFIX + Thread.currentThread().getId() + ":" + OWNER_SEQ.incrementAndGet();
+    }
+
+    /**
+     * 重入，校验redis中的锁仍属于当前持有者并续期，锁已不属于当前持有者时丢弃失效的本地记录；
+     * redis出错时无法确定是否仍持有，保留本地记录并抛出异常（重新获取会以新标识等待自己持有的锁）
+     * @param hold 当前线程的持有记录
+     * @return {@code true} if reentered
+     * @throws JedisException if the ownership cannot be verified
+     */
+    private boolean reenter(Hold hold) {
+        Object result = renew(hold.owner);
+        if (!(result instanceof Long)) {
+            throw new JedisException("verify jedis lock ownership failed on reentry: " + lockKey);
+        }
+        if ((Long) result > 0) {
+            hold.count++;
+            return true;
+        }
+        logger.warn("jedis lock {} lost before reentry, acquire again.", lockKey);
+        holds.remove();
+        if (hold.renewal != null) {
+            hold.renewal.cancel(false);
+        }
+        return false;
+    }
+
+    /**
+     * 获取锁后的重入次数，锁失效后重新获取时保留外层的重入次数，使各层unlock仍成对
+     * @param stale 失效的持有记录
+     * @return the hold count
      */
-    private byte[] generateValue() {
-        UUID uuid = UUID.randomUUID();
-        //byte[] value = ByteBuffer
-        //    .allocate(24)
-        //    .putLong(uuid.getMostSignificantBits()) // 8 byte most bits of uuid
-        //    .putLong(uuid.getLeastSignificantBits()) // 8 byte least bits of uuid
-        //    .putLong(System.currentTimeMillis() + timeoutMillis) // 8 byte time stamp
-        //    .array();
-
-        long most  = uuid.getMostSignificantBits(), 
-             least = uuid.getLeastSignificantBits(),
-             time  = System.currentTimeMillis() + timeoutMillis;
-
-        byte[] value = {
-            (byte) (most  >>> 56), (byte) (most  >>> 48),
-            (byte) (most  >>> 40), (byte) (most  >>> 32),
-            (byte) (most  >>> 24), (byte) (most  >>> 16),
-            (byte) (most  >>>  8), (byte) (most        ),
-
-            (byte) (least >>> 56), (byte) (least >>> 48),
-            (byte) (least >>> 40), (byte) (least >>> 32),
-            (byte) (least >>> 24), (byte) (least >>> 16),
-            (byte) (least >>>  8), (byte) (least       ),
-
-            (byte) (time  >>> 56), (byte) (time  >>> 48),
-            (byte) (time  >>> 40), (byte) (time  >>> 32),
-            (byte) (time  >>> 24), (byte) (time  >>> 16),
-            (byte) (time  >>>  8), (byte) (time        )
-        };
-        LOCK_VALUE.set(value);
-        return value;
+    private static int holdCount(Hold stale) {
+        return stale == null ? 1 : stale.count + 1;
+    }
+
+    private void onAcquired(String owner, int count) {
+        Hold hold = new Hold(owner, count);
+        if (watchdog) {
+            long period = Math.max(timeoutMillis / 3, 1);
+            hold.renewal = Watchdog.EXECUTOR.scheduleWithFixedDelay(
+                () -> renew(hold), period, period, TimeUnit.MILLISECONDS
+            );
+        }
+        holds.set(hold);
+    }
+
+    private void renew(Hold hold) {
+        try {
+            Object result = renew(hold.owner);
+            if (result instanceof Long && (Long) result == 0) {
+                logger.warn("jedis lock {} lost before unlock, stop renewal.", lockKey);
+                hold.renewal.cancel(false);
+            }
+        } catch (Throwable t) {
+            logger.error("jedis lock renewal occur error", t);
+        }
+    }
+
+    /**
+     * 锁仍属于持有者时续期
+     * @param owner 持有者标识
+     * @return 1续期成功，0锁已不属于该持有者，null执行出错
+     */
+    private Object renew(String owner) {
+        return jedisClient.scriptOps().evalsha(
+            RENEW_SCRIPT, RENEW_SCRIPT_SHA1, Collections.singletonList(lockKey), 
+            Arrays.asList(owner, Long.toString(timeoutMillis))
+        );
+    }
+
+    /**
+     * 当前线程持有锁的信息
+     */
+    private static final class Hold {
+        final String owner;
+        int count;
+        volatile ScheduledFuture<?> renewal;
+
+        Hold(String owner, int count) {
+            this.owner = owner;
+            this.count = count;
+        }
+    }
+
+    private static final class Watchdog {
+        static final ScheduledExecutorService EXECUTOR = new ScheduledThreadPoolExecutor(
+            1, new NamedThreadFactory("jedis-lock-watchdog", true)
+        );
     }
 
 }
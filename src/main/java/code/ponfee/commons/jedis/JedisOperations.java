@@ -1,12 +1,18 @@
 package code.ponfee.commons.jedis;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import code.ponfee.commons.concurrent.ThreadPoolExecutors;
 import code.ponfee.commons.math.Numbers;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.ShardedJedis;
+import redis.clients.util.SafeEncoder;
 
 /**
  * jedis操作抽象类
@@ -52,6 +58,66 @@ public abstract class JedisOperations {
         hook.hook(jedisClient, args);
     }
 
+    /**
+     * 并行执行多分片命令的执行器
+     * @return the client's executor if set, else the shared executor
+     */
+    final ExecutorService executor() {
+        ExecutorService executor = jedisClient.executor();
+        return executor != null ? executor : EXECUTOR;
+    }
+
+    /**
+     * 近端缓存获取：未开启、需要刷新失效时间或key不匹配时直接从redis获取
+     * @param key     the redis key
+     * @param seconds the expire seconds, must be null for near cache
+     * @param type    the value type
+     * @param loader  load from redis
+     * @return the value
+     */
+    final <T> T nearGet(String key, Integer seconds, Class<T> type, Supplier<T> loader) {
+        NearCache nearCache = jedisClient.nearCache();
+        if (nearCache == null || seconds != null) {
+            return loader.get();
+        }
+        return nearCache.get(key, type, loader);
+    }
+
+    final <T> T nearGet(byte[] key, Integer seconds, Class<T> type, Supplier<T> loader) {
+        NearCache nearCache = jedisClient.nearCache();
+        if (nearCache == null || seconds != null || key == null) {
+            return loader.get();
+        }
+        return nearCache.get(SafeEncoder.encode(key), type, loader);
+    }
+
+    final <T> T nearHget(String key, String field, Integer seconds, 
+                         Class<T> type, Supplier<T> loader) {
+        NearCache nearCache = jedisClient.nearCache();
+        if (nearCache == null || seconds != null) {
+            return loader.get();
+        }
+        return nearCache.hget(key, field, type, loader);
+    }
+
+    /**
+     * 写入或删除后失效近端缓存
+     * @param key the redis key
+     */
+    final void nearInvalidate(String key) {
+        NearCache nearCache = jedisClient.nearCache();
+        if (nearCache != null) {
+            nearCache.invalidate(key);
+        }
+    }
+
+    final void nearInvalidate(byte[] key) {
+        NearCache nearCache = jedisClient.nearCache();
+        if (nearCache != null && key != null) {
+            nearCache.invalidate(key);
+        }
+    }
+
     // --------------------------------------------------------------static methods
     /**
      * 获取分片的Jedis
@@ -67,6 +133,28 @@ public abstract class JedisOperations {
         return shardedJedis.getShard(key);
     }
 
+    /**
+     * 按分片对key分组
+     * @param shardedJedis
+     * @param keys
+     * @return 分片Jedis及其所属的key
+     */
+    public static Map<Jedis, List<String>> groupByShard(ShardedJedis shardedJedis, String... keys) {
+        Map<Jedis, List<String>> groups = new HashMap<>();
+        for (String key : keys) {
+            groups.computeIfAbsent(shardedJedis.getShard(key), k -> new ArrayList<>()).add(key);
+        }
+        return groups;
+    }
+
+    public static Map<Jedis, List<byte[]>> groupByShard(ShardedJedis shardedJedis, byte[]... keys) {
+        Map<Jedis, List<byte[]>> groups = new HashMap<>();
+        for (byte[] key : keys) {
+            groups.computeIfAbsent(shardedJedis.getShard(key), k -> new ArrayList<>()).add(key);
+        }
+        return groups;
+    }
+
     /**
      * 设置过期时间，若seconds为null则不做处理
      * @param shardedJedis
@@ -1,17 +1,30 @@
 package code.ponfee.commons.jedis;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorCompletionService;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import code.ponfee.commons.util.ObjectUtils;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ShardedJedis;
+import redis.clients.jedis.exceptions.JedisDataException;
 
 /**
  * redis key（键）操作类
@@ -19,8 +32,12 @@ import redis.clients.jedis.Jedis;
  */
 public class KeysOperations extends JedisOperations {
 
+    private static final int DEFAULT_SCAN_COUNT = 500; // default SCAN count
+    private static final String UNLINK_SCRIPT = "return redis.call('UNLINK', unpack(KEYS))";
     private static Logger logger = LoggerFactory.getLogger(KeysOperations.class);
 
+    private final Set<String> unlinkUnsupportedShards = ConcurrentHashMap.newKeySet(); // 不支持UNLINK的分片：host:port
+
     KeysOperations(JedisClient jedisClient) {
         super(jedisClient);
     }
@@ -46,20 +63,86 @@ public class KeysOperations extends JedisOperations {
     }
 
     /**
-     * 获取key列表
+     * 获取key列表（SCAN遍历，不阻塞redis，但结果仍全部加载到内存，
+     * key数量较多时使用{@link #scan(String, int)}）
      * @param keyWildcard
      * @return
      */
     public Set<String> keys(String keyWildcard) {
         return call(shardedJedis -> {
             Set<String> keys = new HashSet<>();
-            for (Jedis jedis : shardedJedis.getAllShards()) {
-                keys.addAll(jedis.keys(keyWildcard));
+            Iterator<List<String>> iter = new ScanIterator(
+                shardedJedis.getAllShards(), keyWildcard, DEFAULT_SCAN_COUNT
+            );
+            while (iter.hasNext()) {
+                keys.addAll(iter.next());
             }
             return keys;
         }, null, keyWildcard);
     }
 
+    /**
+     * 以SCAN游标遍历所有分片匹配的key，按需从redis拉取，内存占用恒定；
+     * 返回的Stream持有redis连接，使用完后必须关闭：
+     * <pre>
+     *  try (Stream&lt;String&gt; keys = jedisClient.keysOps().scan("prefix:*", 500)) {
+     *      keys.forEach(...);
+     *  }
+     * </pre>
+     * SCAN可能返回重复的key，需要时由调用方去重
+     * @param keyWildcard the key wildcard
+     * @param count       每次SCAN的COUNT参数
+     * @return the key stream
+     */
+    public Stream<String> scan(String keyWildcard, int count) {
+        ShardedJedis shardedJedis = jedisClient.getShardedJedis();
+        try {
+            Iterator<List<String>> iter = new ScanIterator(shardedJedis.getAllShards(), keyWildcard, count);
+            return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iter, Spliterator.ORDERED | Spliterator.NONNULL), false
+            ).flatMap(List::stream).onClose(shardedJedis::close);
+        } catch (RuntimeException e) {
+            shardedJedis.close();
+            throw e;
+        }
+    }
+
+    public Stream<String> scan(String keyWildcard) {
+        return scan(keyWildcard, DEFAULT_SCAN_COUNT);
+    }
+
+    /**
+     * 以SCAN游标遍历所有分片匹配的key，每批key回调一次
+     * @param keyWildcard the key wildcard
+     * @param count       每次SCAN的COUNT参数
+     * @param action      批量key的处理函数
+     */
+    public void scan(String keyWildcard, int count, Consumer<List<String>> action) {
+        hook(shardedJedis -> {
+            Iterator<List<String>> iter = new ScanIterator(shardedJedis.getAllShards(), keyWildcard, count);
+            while (iter.hasNext()) {
+                action.accept(iter.next());
+            }
+        }, keyWildcard, count);
+    }
+
+    /**
+     * 以SCAN游标遍历所有分片匹配的key，每批key连同其所在分片的连接回调一次，
+     * 可直接在该分片连接上执行pipeline，无需再从连接池获取连接
+     * @param keyWildcard the key wildcard
+     * @param count       每次SCAN的COUNT参数
+     * @param action      批量key的处理函数：(分片连接, 同一分片的key)
+     */
+    public void scanShard(String keyWildcard, int count, BiConsumer<Jedis, List<String>> action) {
+        hook(shardedJedis -> {
+            ScanIterator iter = new ScanIterator(shardedJedis.getAllShards(), keyWildcard, count);
+            while (iter.hasNext()) {
+                List<String> keys = iter.next();
+                action.accept(iter.shard(), keys);
+            }
+        }, keyWildcard, count);
+    }
+
     /**
      * 设置失效时间
      * @param key
@@ -101,9 +184,11 @@ public class KeysOperations extends JedisOperations {
      * @return 被删除 key 的数量
      */
     public Long del(String key) {
-        return call(shardedJedis -> {
+        Long result = call(shardedJedis -> {
             return shardedJedis.del(key);
         }, null, key);
+        nearInvalidate(key);
+        return result;
     }
 
     /**
@@ -112,9 +197,11 @@ public class KeysOperations extends JedisOperations {
      * @return 被删除 key 的数量
      */
     public Long del(byte[] key) {
-        return call(shardedJedis -> {
+        Long result = call(shardedJedis -> {
             return shardedJedis.del(key);
         }, null, key);
+        nearInvalidate(key);
+        return result;
     }
 
     /**
@@ -123,7 +210,7 @@ public class KeysOperations extends JedisOperations {
      * @return
      */
     public Long dels(String... keys) {
-        return call(shardedJedis -> {
+        Long result = call(shardedJedis -> {
             if (keys == null || keys.length == 0) {
                 return 0L;
             }
@@ -136,7 +223,7 @@ public class KeysOperations extends JedisOperations {
             Long delCounts = 0L;
             int number = jedisList.size();
             if (number < keys.length / BATCH_MULTIPLE) { // key数量大于分片数量的BATCH_MULTIPLE倍
-                CompletionService<Long> service = new ExecutorCompletionService<>(EXECUTOR);
+                CompletionService<Long> service = new ExecutorCompletionService<>(executor());
                 for (Jedis jedis : jedisList) {
                     service.submit(() -> {
                         return jedis.del(keys);
@@ -156,15 +243,31 @@ public class KeysOperations extends JedisOperations {
             }
             return delCounts;
         }, null, (Object[]) keys);
+        if (keys != null) {
+            for (String key : keys) {
+                nearInvalidate(key);
+            }
+        }
+        return result;
     }
 
     /**
-     * 删除key（匹配通配符）
+     * 删除key（匹配通配符）：各分片并行SCAN，每批key使用UNLINK删除（redis 4.0以下使用DEL）
      * @param keyWildcard
      * @return 被删除 key 的数量
      */
     public long delWithWildcard(String keyWildcard) {
-        return call(shardedJedis -> {
+        return delWithWildcard(keyWildcard, DEFAULT_SCAN_COUNT);
+    }
+
+    /**
+     * 删除key（匹配通配符）
+     * @param keyWildcard
+     * @param count       每次SCAN的COUNT参数，也是每批删除的最大数量
+     * @return 被删除 key 的数量
+     */
+    public long delWithWildcard(String keyWildcard, int count) {
+        long counts = call(shardedJedis -> {
             long delCounts = 0L;
             Collection<Jedis> jedisList = shardedJedis.getAllShards();
             if (jedisList == null || jedisList.isEmpty()) {
@@ -172,15 +275,17 @@ public class KeysOperations extends JedisOperations {
             }
 
             int number = jedisList.size();
-            CompletionService<Long> service = new ExecutorCompletionService<>(EXECUTOR);
+            CompletionService<Long> service = new ExecutorCompletionService<>(executor());
             for (Jedis jedis : jedisList) {
                 service.submit(() -> {
-                    Set<String> keys = jedis.keys(keyWildcard);
-                    if (keys == null || keys.isEmpty()) {
-                        return 0L;
-                    } else {
-                        return jedis.del(keys.toArray(new String[keys.size()]));
+                    long shardCounts = 0L;
+                    Iterator<List<String>> iter = new ScanIterator(
+                        Collections.singletonList(jedis), keyWildcard, count
+                    );
+                    while (iter.hasNext()) {
+                        shardCounts += unlink(jedis, iter.next());
                     }
+                    return shardCounts;
                 });
             }
             for (; number > 0; number--) {
@@ -192,6 +297,12 @@ public class KeysOperations extends JedisOperations {
             }
             return delCounts;
         }, 0L, keyWildcard);
+
+        NearCache nearCache = jedisClient.nearCache();
+        if (counts > 0 && nearCache != null) {
+            nearCache.invalidateAllLocal(); // 无法逐个失效，清空本地缓存
+        }
+        return counts;
     }
 
     /**
@@ -205,4 +316,29 @@ public class KeysOperations extends JedisOperations {
         }, null, key);
     }
 
+    // -------------------------------------------------------------private methods
+    /**
+     * 非阻塞删除（UNLINK在后台线程释放内存），分片不支持UNLINK时使用DEL
+     */
+    private long unlink(Jedis jedis, List<String> keys) {
+        String[] array = keys.toArray(new String[keys.size()]);
+        String shard = jedis.getClient().getHost() + ":" + jedis.getClient().getPort();
+        if (!unlinkUnsupportedShards.contains(shard)) {
+            try {
+                return ((Number) jedis.eval(UNLINK_SCRIPT, array.length, array)).longValue();
+            } catch (JedisDataException e) {
+                String msg = StringUtils.lowerCase(e.getMessage());
+                if (StringUtils.contains(msg, "unknown command") 
+                    || StringUtils.contains(msg, "unknown redis command")) {
+                    // redis 4.0以下不支持UNLINK（lua中调用时报错为Unknown Redis command）
+                    unlinkUnsupportedShards.add(shard);
+                    logger.warn("Redis shard {} unsupported UNLINK command, use DEL instead: {}", shard, e.getMessage());
+                } else {
+                    logger.warn("Redis shard {} UNLINK occur error, use DEL instead: {}", shard, e.getMessage());
+                }
+            }
+        }
+        return ObjectUtils.ifNull(jedis.del(array), 0L);
+    }
+
 }
@@ -0,0 +1,161 @@
+package code.ponfee.commons.jedis;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * <pre>
+ *  分布式锁释放通知：
+ *    1、{@link JedisLock}释放锁后在{@link #RELEASE_CHANNEL}频道发布锁的key；
+ *    2、订阅该频道后唤醒本地等待该key的线程，订阅线程在首次等待锁时启动；
+ *    3、消息可能丢失（如订阅断开），等待方须以超时等待作为兜底
+ * </pre>
+ *
+ * @author fupf
+ */
+final class LockNotifier {
+
+    static final String RELEASE_CHANNEL = "jedis-lock-release";
+    private static final int RESUBSCRIBE_INTERVAL_MILLIS = 3000;
+    private static Logger logger = LoggerFactory.getLogger(LockNotifier.class);
+
+    private final JedisClient jedisClient;
+    private final ConcurrentHashMap<String, Waiters> waiters = new ConcurrentHashMap<>();
+    private final JedisPubSub subscriber;
+    private volatile boolean started = false;
+    private volatile boolean closed = false;
+
+    LockNotifier(JedisClient jedisClient) {
+        this.jedisClient = jedisClient;
+        this.subscriber = new JedisPubSub() {
+            @Override
+            public void onMessage(String channel, String message) {
+                Waiters w = waiters.get(message);
+                if (w != null) {
+                    w.signal();
+                }
+            }
+
+            @Override
+            public void onSubscribe(String channel, int subscribedChannels) {
+                waiters.values().forEach(Waiters::signal); // 订阅断开期间可能丢失通知
+            }
+        };
+    }
+
+    /**
+     * 是否已订阅，未订阅时等待方须轮询
+     * @return {@code true} if subscribed
+     */
+    boolean isSubscribed() {
+        return started && subscriber.isSubscribed();
+    }
+
+    /**
+     * 登记等待key的线程，须与{@link #unregister(String, Waiters)}成对调用
+     * @param key the lock key
+     * @return the waiters of key
+     */
+    Waiters register(String key) {
+        start();
+        return waiters.compute(key, (k, w) -> {
+            if (w == null) {
+                w = new Waiters();
+            }
+            w.count++;
+            return w;
+        });
+    }
+
+    void unregister(String key, Waiters w) {
+        waiters.computeIfPresent(key, (k, v) -> (v == w && --v.count == 0) ? null : v);
+    }
+
+    /**
+     * 发布锁释放通知
+     * @param key the lock key
+     */
+    void publish(String key) {
+        jedisClient.mqOps().publish(RELEASE_CHANNEL, key);
+    }
+
+    void close() {
+        closed = true;
+        try {
+            if (subscriber.isSubscribed()) {
+                subscriber.unsubscribe();
+            }
+        } catch (Exception e) {
+            logger.error("Unsubscribe lock release channel occur error", e);
+        }
+        waiters.values().forEach(Waiters::signal);
+    }
+
+    // -------------------------------------------------------------private methods
+    private void start() {
+        if (started || closed) {
+            return;
+        }
+        synchronized (this) {
+            if (started || closed) {
+                return;
+            }
+            Thread thread = new Thread(this::subscribe, "jedis-lock-subscriber");
+            thread.setDaemon(true);
+            thread.start();
+            started = true;
+        }
+    }
+
+    /**
+     * 订阅释放通知，subscribe会阻塞当前线程，连接断开后重新订阅
+     */
+    private void subscribe() {
+        while (!closed) {
+            jedisClient.mqOps().subscribe(subscriber, RELEASE_CHANNEL);
+            if (closed) {
+                break;
+            }
+            try {
+                Thread.sleep(RESUBSCRIBE_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * 同一key的本地等待线程
+     */
+    static final class Waiters {
+        private int count; // 登记数，在ConcurrentHashMap.compute中修改
+        private long version; // 通知版本
+
+        synchronized long version() {
+            return version;
+        }
+
+        synchronized void signal() {
+            version++;
+            notifyAll();
+        }
+
+        /**
+         * 版本未变化时等待通知或超时
+         * @param version 尝试获取锁前的版本
+         * @param millis  最长等待毫秒数
+         * @throws InterruptedException
+         */
+        synchronized void await(long version, long millis) throws InterruptedException {
+            if (this.version == version && millis > 0) {
+                wait(millis);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,270 @@
+package code.ponfee.commons.jedis;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import code.ponfee.commons.cache.Cache;
+import code.ponfee.commons.cache.CacheBuilder;
+import code.ponfee.commons.cache.CacheStats;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * <pre>
+ *  redis近端缓存（二级缓存）：
+ *    1、只缓存已配置key前缀的数据，每个前缀可设置本地缓存时间；
+ *    2、本地缓存反序列化后的对象，容量有限，超出时按分段LRU淘汰；
+ *    3、通过JedisClient写入或删除时，失效本地缓存并在{@link #INVALIDATE_CHANNEL}频道发布消息，
+ *       其它节点订阅该频道后失效各自的本地缓存；
+ *    4、不经过JedisClient的写入（如其它系统直接写redis、通配符删除等）只能等待本地缓存过期，
+ *       因此前缀的缓存时间即为可容忍的最大不一致时间；
+ *    5、命中时返回的是本地缓存的同一个对象，调用方不要修改
+ * </pre>
+ *
+ * @author fupf
+ */
+public class NearCache {
+
+    public static final String INVALIDATE_CHANNEL = "jedis-near-cache-invalidate";
+    private static final int RESUBSCRIBE_INTERVAL_MILLIS = 3000;
+    private static Logger logger = LoggerFactory.getLogger(NearCache.class);
+
+    private final JedisClient jedisClient;
+    private final Cache<Object> cache;
+    private final String[] prefixes; // 按长度倒序，优先匹配最长的前缀
+    private final int[] ttls; // 本地缓存时间（毫秒）
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final JedisPubSub subscriber;
+    private volatile boolean closed = false;
+
+    /**
+     * @param jedisClient    the jedis client
+     * @param maximumSize    本地缓存的最大数量
+     * @param prefixTtls     key前缀及其本地缓存时间（毫秒）
+     */
+    NearCache(JedisClient jedisClient, long maximumSize, Map<String, Integer> prefixTtls) {
+        Preconditions.checkArgument(prefixTtls != null && !prefixTtls.isEmpty(),
+                                    "Near cache key prefixes cannot be empty.");
+        this.jedisClient = jedisClient;
+        this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize)
+                                 .autoReleaseInSeconds(60).build();
+
+        List<Entry<String, Integer>> list = new ArrayList<>(prefixTtls.entrySet());
+        list.sort(Comparator.comparingInt(e -> -e.getKey().length()));
+        this.prefixes = new String[list.size()];
+        this.ttls = new int[list.size()];
+        for (int i = 0; i < prefixes.length; i++) {
+            Preconditions.checkArgument(list.get(i).getValue() > 0, "Invalid ttl: " + list.get(i));
+            this.prefixes[i] = list.get(i).getKey();
+            this.ttls[i] = list.get(i).getValue();
+        }
+
+        this.subscriber = new JedisPubSub() {
+            @Override
+            public void onMessage(String channel, String message) {
+                cache.getAndRemove(message);
+            }
+
+            @Override
+            public void onSubscribe(String channel, int subscribedChannels) {
+                clearLocal(); // 订阅断开期间可能丢失失效消息
+            }
+        };
+        Thread thread = new Thread(this::subscribe, "jedis-near-cache-subscriber");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 是否为近端缓存的key
+     * @param key
+     * @return {@code true} if the key matches a configured prefix
+     */
+    public boolean isCacheable(String key) {
+        return ttl(key) > 0;
+    }
+
+    /**
+     * 获取本地缓存，未命中则通过loader加载并缓存
+     * @param key    the redis key
+     * @param type   the value type
+     * @param loader the redis loader
+     * @return the value
+     */
+    <T> T get(String key, Class<T> type, Supplier<T> loader) {
+        int ttl = ttl(key);
+        if (ttl <= 0 || closed) {
+            return loader.get();
+        }
+
+        Object value = cache.get(key);
+        if (type.isInstance(value)) {
+            hitCount.increment();
+            return type.cast(value);
+        }
+
+        missCount.increment();
+        T t = loader.get();
+        if (t != null) {
+            cache.setWithAliveInMillis(key, t, ttl);
+        }
+        return t;
+    }
+
+    /**
+     * 获取本地缓存的哈希域，未命中则通过loader加载并缓存
+     * @param key    the redis key
+     * @param field  the hash field
+     * @param type   the value type
+     * @param loader the redis loader
+     * @return the field value
+     */
+    <T> T hget(String key, String field, Class<T> type, Supplier<T> loader) {
+        int ttl = ttl(key);
+        if (ttl <= 0 || closed) {
+            return loader.get();
+        }
+
+        Object value = cache.get(key);
+        HashFields fields = value instanceof HashFields ? (HashFields) value : null;
+        if (fields != null && type.isInstance(value = fields.get(field))) {
+            hitCount.increment();
+            return type.cast(value);
+        }
+
+        missCount.increment();
+        T t = loader.get();
+        if (t != null) {
+            if (fields == null) {
+                fields = new HashFields();
+                cache.setWithAliveInMillis(key, fields, ttl);
+            }
+            fields.put(field, t);
+        }
+        return t;
+    }
+
+    /**
+     * 失效本地缓存并通知其它节点
+     * @param key the redis key
+     */
+    public void invalidate(String key) {
+        if (!isCacheable(key)) {
+            return;
+        }
+        cache.getAndRemove(key);
+        jedisClient.mqOps().publish(INVALIDATE_CHANNEL, key);
+    }
+
+    public void invalidate(byte[] key) {
+        invalidate(SafeEncoder.encode(key));
+    }
+
+    /**
+     * 只失效本地缓存
+     * @param key the redis key
+     */
+    public void invalidateLocal(String key) {
+        cache.getAndRemove(key);
+    }
+
+    public void invalidateAllLocal() {
+        clearLocal();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 本地缓存命中率
+     * @return the hit rate
+     */
+    public double hitRate() {
+        long hit = hitCount.sum(), total = hit + missCount.sum();
+        return total == 0 ? 1.0D : (double) hit / total;
+    }
+
+    /**
+     * 本地缓存的统计信息（含淘汰次数）
+     * @return the local cache stats
+     */
+    public CacheStats localStats() {
+        return cache.stats();
+    }
+
+    public int localSize() {
+        return cache.size();
+    }
+
+    void close() {
+        closed = true;
+        try {
+            if (subscriber.isSubscribed()) {
+                subscriber.unsubscribe();
+            }
+        } catch (Exception e) {
+            logger.error("Unsubscribe near cache channel occur error", e);
+        }
+        cache.destroy();
+    }
+
+    // -------------------------------------------------------------private methods
+    private int ttl(String key) {
+        if (key == null) {
+            return 0;
+        }
+        for (int i = 0; i < prefixes.length; i++) {
+            if (key.startsWith(prefixes[i])) {
+                return ttls[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 订阅失效消息，subscribe会阻塞当前线程，连接断开后重新订阅
+     */
+    private void subscribe() {
+        while (!closed) {
+            jedisClient.mqOps().subscribe(subscriber, INVALIDATE_CHANNEL);
+            if (closed) {
+                break;
+            }
+            clearLocal(); // 断开期间不使用本地缓存的数据
+            try {
+                Thread.sleep(RESUBSCRIBE_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private void clearLocal() {
+        if (!closed) {
+            cache.clear();
+        }
+    }
+
+    private static final class HashFields extends ConcurrentHashMap<String, Object> {
+        private static final long serialVersionUID = -3164725397431862104L;
+    }
+
+}
@@ -0,0 +1,78 @@
+package code.ponfee.commons.jedis;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+/**
+ * 基于SCAN游标的key迭代器：依次遍历各分片，每次只从服务端取一批key，
+ * 内存占用与key总数无关，不会像KEYS命令那样阻塞redis
+ *
+ * SCAN的语义：遍历期间一直存在的key至少返回一次，可能重复返回，
+ * 遍历期间新增或删除的key不保证是否返回
+ *
+ * 非线程安全
+ *
+ * @author fupf
+ */
+final class ScanIterator implements Iterator<List<String>> {
+
+    private final Iterator<Jedis> shards;
+    private final ScanParams params;
+    private Jedis current;
+    private String cursor;
+    private List<String> batch;
+
+    ScanIterator(Collection<Jedis> shards, String keyWildcard, int count) {
+        this.shards = shards.iterator();
+        this.params = new ScanParams().match(keyWildcard).count(count);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (batch == null || batch.isEmpty()) {
+            if (current == null) {
+                if (!shards.hasNext()) {
+                    return false;
+                }
+                current = shards.next();
+                cursor = ScanParams.SCAN_POINTER_START;
+            } else if (ScanParams.SCAN_POINTER_START.equals(cursor)) {
+                current = null; // 当前分片已遍历完成
+                continue;
+            }
+
+            ScanResult<String> result = current.scan(cursor, params);
+            cursor = result.getStringCursor();
+            batch = result.getResult();
+        }
+        return true;
+    }
+
+    /**
+     * 下一批key（同一分片，非空）
+     */
+    @Override
+    public List<String> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<String> result = batch;
+        batch = Collections.emptyList();
+        return result;
+    }
+
+    /**
+     * 上一次{@link #next()}返回的key所在的分片
+     */
+    Jedis shard() {
+        return current;
+    }
+
+}
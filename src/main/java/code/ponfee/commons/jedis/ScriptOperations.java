@@ -2,6 +2,9 @@ package code.ponfee.commons.jedis;
 
 import java.util.List;
 
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+
 /**
  * redis lua script
  * @author fupf
@@ -10,6 +13,7 @@ public class ScriptOperations extends JedisOperations {
 
      public static final String JEDIS_SCRIPT_OPS = "jedis-script-ops";
      private static final byte[] JEDIS_SCRIPT_OPS_BYTES = JEDIS_SCRIPT_OPS.getBytes();
+     private static final String NO_SCRIPT_ERROR = "NOSCRIPT";
 
     ScriptOperations(JedisClient jedisClient) {
         super(jedisClient);
@@ -50,4 +54,28 @@ public class ScriptOperations extends JedisOperations {
         }, null, sha1, keys, args);
     }
 
+    /**
+     * 在keys所属分片上根据sha1执行脚本（以第一个key路由，keys须位于同一分片），
+     * 若该分片未缓存脚本（NOSCRIPT）则加载script后重试
+     * @param script 脚本内容
+     * @param sha1   脚本的SHA1校验和
+     * @param keys
+     * @param args
+     * @return
+     */
+    public Object evalsha(String script, String sha1, List<String> keys, List<String> args) {
+        return call(shardedJedis -> {
+            Jedis jedis = getShard(shardedJedis, keys.get(0));
+            try {
+                return jedis.evalsha(sha1, keys, args);
+            } catch (JedisDataException e) {
+                if (e.getMessage() == null || !e.getMessage().startsWith(NO_SCRIPT_ERROR)) {
+                    throw e;
+                }
+                jedis.scriptLoad(script);
+                return jedis.evalsha(sha1, keys, args);
+            }
+        }, null, sha1, keys, args);
+    }
+
 }
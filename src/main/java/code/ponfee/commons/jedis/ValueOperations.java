@@ -1,23 +1,24 @@
 package code.ponfee.commons.jedis;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
+import java.util.function.BiFunction;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import code.ponfee.commons.io.GzipProcessor;
 import code.ponfee.commons.math.Numbers;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
 
 /**
  * redis string（字符串）操作类
@@ -25,6 +26,8 @@ import redis.clients.jedis.Jedis;
  */
 public class ValueOperations extends JedisOperations {
     private static Logger logger = LoggerFactory.getLogger(ValueOperations.class);
+    private static final int PARALLEL_DESERIALIZE_THRESHOLD = 256; // 超过该数量时并行反序列化
+    private static final int GETS_SCAN_COUNT = 500; // 通配符获取时每次SCAN的数量
 
     ValueOperations(JedisClient jedisClient) {
         super(jedisClient);
@@ -50,10 +53,12 @@ public class ValueOperations extends JedisOperations {
      * @return 是否设置成功
      */
     public boolean set(String key, String value, int seconds) {
-        return call(shardedJedis -> {
+        boolean flag = call(shardedJedis -> {
             String rtn = shardedJedis.setex(key, getActualExpire(seconds), value);
             return SUCCESS_MSG.equalsIgnoreCase(rtn);
         }, false, key, value, seconds);
+        nearInvalidate(key);
+        return flag;
     }
 
     public String get(String key) {
@@ -67,14 +72,14 @@ public class ValueOperations extends JedisOperations {
      * @return
      */
     public String get(String key, Integer seconds) {
-        return call(shardedJedis -> {
+        return nearGet(key, seconds, String.class, () -> call(shardedJedis -> {
             String value = shardedJedis.get(key);
             if (value != null) {
                 // 存在则设置失效时间
                 expire(shardedJedis, key, seconds);
             }
             return value;
-        }, null, key, seconds);
+        }, null, key, seconds));
     }
 
     /**
@@ -83,13 +88,17 @@ public class ValueOperations extends JedisOperations {
      * @return
      */
     public String getAndDel(String key) {
-        return call(shardedJedis -> {
-            String value = shardedJedis.get(key);
-            if (value != null) {
+        String value = call(shardedJedis -> {
+            String value0 = shardedJedis.get(key);
+            if (value0 != null) {
                 shardedJedis.del(key);
             }
-            return value;
+            return value0;
         }, null, key);
+        if (value != null) {
+            nearInvalidate(key);
+        }
+        return value;
     }
 
     /**
@@ -99,16 +108,20 @@ public class ValueOperations extends JedisOperations {
      */
     public List<String> gets(String keyWildcard) {
         return call(shardedJedis -> {
-            CompletionService<List<String>> service = new ExecutorCompletionService<>(EXECUTOR);
+            CompletionService<List<String>> service = new ExecutorCompletionService<>(executor());
             int number = 0;
             for (final Jedis jedis : shardedJedis.getAllShards()) {
-                Set<String> keys = jedis.keys(keyWildcard);
-                if (keys == null || keys.isEmpty()) {
-                    continue;
-                }
-
                 service.submit(() -> {
-                    return jedis.mget(keys.toArray(new String[keys.size()]));
+                    // SCAN每批key执行一次MGET，不阻塞redis
+                    List<String> values = new ArrayList<>();
+                    Iterator<List<String>> iter = new ScanIterator(
+                        Collections.singletonList(jedis), keyWildcard, GETS_SCAN_COUNT
+                    );
+                    while (iter.hasNext()) {
+                        List<String> keys = iter.next();
+                        values.addAll(jedis.mget(keys.toArray(new String[keys.size()])));
+                    }
+                    return values;
                 });
                 number++;
             }
@@ -145,10 +158,12 @@ public class ValueOperations extends JedisOperations {
      * @return
      */
     public boolean setLong(String key, long value, int seconds) {
-        return call(shardedJedis -> {
+        boolean flag = call(shardedJedis -> {
             String rtn = shardedJedis.setex(key, getActualExpire(seconds), String.valueOf(value));
             return SUCCESS_MSG.equalsIgnoreCase(rtn);
         }, false, key, value, seconds);
+        nearInvalidate(key);
+        return flag;
     }
 
     /**
@@ -184,11 +199,13 @@ public class ValueOperations extends JedisOperations {
     }
 
     public String getSet(String key, String value, int seconds) {
-        return call(shardedJedis -> {
-            String oldValue = shardedJedis.getSet(key, value);
+        String oldValue = call(shardedJedis -> {
+            String oldValue0 = shardedJedis.getSet(key, value);
             expireForce(shardedJedis, key, seconds);
-            return oldValue;
+            return oldValue0;
         }, null, key, value, seconds);
+        nearInvalidate(key);
+        return oldValue;
     }
 
     /**
@@ -203,7 +220,7 @@ public class ValueOperations extends JedisOperations {
      * @return
      */
     public boolean setnx(String key, String value, int seconds) {
-        return call(shardedJedis -> {
+        boolean flag = call(shardedJedis -> {
             Long result = shardedJedis.setnx(key, value);
             if (Numbers.equals(result, 1)) {
                 // 设置成功则需要设置失效期
@@ -213,6 +230,10 @@ public class ValueOperations extends JedisOperations {
                 return false;
             }
         }, false, key, value, seconds);
+        if (flag) {
+            nearInvalidate(key);
+        }
+        return flag;
     }
 
     /**
@@ -229,11 +250,13 @@ public class ValueOperations extends JedisOperations {
     }
 
     public Long incrBy(String key, int step, Integer seconds) {
-        return call(shardedJedis -> {
+        Long result = call(shardedJedis -> {
             Long rtn = shardedJedis.incrBy(key, step);
             expireForce(shardedJedis, key, seconds);
             return rtn;
         }, null, key, step, seconds);
+        nearInvalidate(key);
+        return result;
     }
 
     /**
@@ -247,11 +270,13 @@ public class ValueOperations extends JedisOperations {
     }
 
     public Double incrByFloat(String key, double step, Integer seconds) {
-        return call(shardedJedis -> {
+        Double result = call(shardedJedis -> {
             Double rtn = shardedJedis.incrByFloat(key, step);
             expireForce(shardedJedis, key, seconds);
             return rtn;
         }, null, key, step, seconds);
+        nearInvalidate(key);
+        return result;
     }
 
     /**
@@ -268,11 +293,13 @@ public class ValueOperations extends JedisOperations {
     }
 
     public Long decrBy(String key, int step, Integer seconds) {
-        return call(shardedJedis -> {
+        Long result = call(shardedJedis -> {
             Long rtn = shardedJedis.decrBy(key, step);
             expireForce(shardedJedis, key, seconds);
             return rtn;
         }, null, key, step, seconds);
+        nearInvalidate(key);
+        return result;
     }
 
     /**
@@ -289,11 +316,13 @@ public class ValueOperations extends JedisOperations {
             return false;
         }
 
-        return call(shardedJedis -> {
+        boolean flag = call(shardedJedis -> {
             byte[] data = jedisClient.serialize(t, isCompress);
             String rtn = shardedJedis.setex(key, getActualExpire(seconds), data);
             return SUCCESS_MSG.equalsIgnoreCase(rtn);
         }, false, key, t, isCompress, seconds);
+        nearInvalidate(key);
+        return flag;
     }
 
     public <T extends Object> boolean setObject(byte[] key, T t, boolean isCompress) {
@@ -318,14 +347,14 @@ public class ValueOperations extends JedisOperations {
      */
     public <T extends Object> T getObject(byte[] key, Class<T> clazz, 
                                           boolean isCompress, Integer seconds) {
-        return call(shardedJedis -> {
+        return nearGet(key, seconds, clazz, () -> call(shardedJedis -> {
             T t = jedisClient.deserialize(shardedJedis.get(key), clazz, isCompress);
             if (t != null) {
                 // 存在则设置失效时间
                 expire(shardedJedis, key, seconds);
             }
             return t;
-        }, null, key, clazz, isCompress, seconds);
+        }, null, key, clazz, isCompress, seconds));
     }
 
     public <T extends Object> T getObject(byte[] key, Class<T> clazz, boolean isCompress) {
@@ -353,12 +382,14 @@ public class ValueOperations extends JedisOperations {
             return false;
         }
 
-        byte[] value0 = isCompress ? GzipProcessor.compress(value) : value;
+        byte[] value0 = isCompress ? jedisClient.compress(value) : value;
 
-        return call(shardedJedis -> {
+        boolean flag = call(shardedJedis -> {
             String rtn = shardedJedis.setex(key, getActualExpire(seconds), value0);
             return SUCCESS_MSG.equalsIgnoreCase(rtn);
         }, false, key, value0, isCompress, seconds);
+        nearInvalidate(key);
+        return flag;
     }
 
     public boolean set(String key, byte[] value, int seconds) {
@@ -381,7 +412,7 @@ public class ValueOperations extends JedisOperations {
             byte[] result = shardedJedis.get(key);
             if (result != null) {
                 if (isCompress) {
-                    result = GzipProcessor.decompress(result);
+                    result = jedisClient.decompress(result);
                 }
                 expire(shardedJedis, key, seconds);
             }
@@ -398,7 +429,7 @@ public class ValueOperations extends JedisOperations {
     }
 
     /**
-     * 批量获取值
+     * 批量获取值：按分片分组，每个分片只发送属于该分片的key
      * @param keys
      * @return
      */
@@ -408,54 +439,23 @@ public class ValueOperations extends JedisOperations {
         }
 
         return call(shardedJedis -> {
-            Collection<Jedis> jedisList = shardedJedis.getAllShards();
-            if (jedisList == null || jedisList.isEmpty()) {
-                return null;
-            }
-
-            Map<String, String> resultMap;
-            int number = jedisList.size();
-            if (number < keys.length / BATCH_MULTIPLE) { // key数量大于分片数量倍数，则采用mget方式
-                resultMap = new ConcurrentHashMap<>();
-                CompletionService<List<String>> service = new ExecutorCompletionService<>(EXECUTOR);
-                for (Jedis jedis : jedisList) {
-                    service.submit(() -> {
-                        return jedis.mget(keys);
-                    });
-                }
-                for (; number > 0; number--) {
-                    try {
-                        // 所有的 future get 等待
-                        List<String> list = service.take().get();
-                        if (list == null || list.isEmpty()) {
-                            continue;
-                        }
-                        String s;
-                        for (int i = 0; i < keys.length; i++) {
-                            s = list.get(i);
-                            if (s != null && !resultMap.containsKey(keys[i])) {
-                                resultMap.put(keys[i], s);
-                            }
-                        }
-                    } catch (InterruptedException | ExecutionException e) {
-                        logger.error("Jedis mget occur error", e);
-                    }
-                }
-            } else { // 直接获取，不用mget方式
-                resultMap = new HashMap<>();
-                for (String k : keys) {
-                    String v = shardedJedis.get(k);
-                    if (v != null) {
-                        resultMap.put(k, v);
+            Map<Jedis, List<String>> groups = groupByShard(shardedJedis, keys);
+            return executeByShard(groups, (jedis, list) -> {
+                List<String> values = jedis.mget(list.toArray(new String[list.size()]));
+                Map<String, String> result = new HashMap<>(list.size() << 1);
+                String v;
+                for (int i = 0, n = list.size(); i < n; i++) {
+                    if ((v = values.get(i)) != null) {
+                        result.put(list.get(i), v);
                     }
                 }
-            }
-            return resultMap;
+                return result;
+            }, "mget");
         }, null, String.valueOf(keys));
     }
 
     /**
-     * 批量获取值
+     * 批量获取值：按分片分组，每个分片只发送属于该分片的key
      * @param isCompress
      * @param keys
      * @return
@@ -466,57 +466,18 @@ public class ValueOperations extends JedisOperations {
         }
 
         return call(shardedJedis -> {
-            Collection<Jedis> jedisList = shardedJedis.getAllShards();
-            if (jedisList == null || jedisList.isEmpty()) {
-                return null;
-            }
-
-            Map<byte[], byte[]> resultMap;
-            int number = jedisList.size();
-            if (number < keys.length / BATCH_MULTIPLE) { // key数量大于分片数量倍数，则采用mget方式
-                resultMap = new ConcurrentHashMap<>();
-                CompletionService<List<byte[]>> service = new ExecutorCompletionService<>(EXECUTOR);
-                for (Jedis jedis : jedisList) {
-                    service.submit(() -> {
-                        return jedis.mget((byte[][]) keys);
-                    });
-                }
-                for (; number > 0; number--) {
-                    try {
-                        // 获取异步执行的返回数据
-                        byte[] v;
-                        List<byte[]> list = service.take().get();
-                        if (list == null || list.isEmpty()) {
-                            continue;
-                        }
-                        for (int i = 0; i < keys.length; i++) {
-                            v = list.get(i);
-                            if (v != null && !resultMap.containsKey(keys[i])) {
-                                if (isCompress) {
-                                    v = GzipProcessor.decompress(v);
-                                }
-                                resultMap.put(keys[i], v);
-                            }
-                        }
-                    } catch (Exception e) {
-                        logger.error("Jedis mget occur error", e);
-                    }
-                }
-            } else { // 直接获取，不用mget方式
-                resultMap = new HashMap<>();
+            Map<Jedis, List<byte[]>> groups = groupByShard(shardedJedis, keys);
+            return executeByShard(groups, (jedis, list) -> {
+                List<byte[]> values = jedis.mget(list.toArray(new byte[list.size()][]));
+                Map<byte[], byte[]> result = new HashMap<>(list.size() << 1);
                 byte[] v;
-                for (byte[] k : (byte[][]) keys) {
-                    v = shardedJedis.get(k);
-                    if (v == null) {
-                        continue;
+                for (int i = 0, n = list.size(); i < n; i++) {
+                    if ((v = values.get(i)) != null) {
+                        result.put(list.get(i), isCompress ? jedisClient.decompress(v) : v);
                     }
-                    if (isCompress) {
-                        v = GzipProcessor.decompress(v);
-                    }
-                    resultMap.put(k, v);
                 }
-            }
-            return resultMap;
+                return result;
+            }, "mget");
         }, null, isCompress, keys);
     }
 
@@ -525,7 +486,7 @@ public class ValueOperations extends JedisOperations {
     }
 
     /**
-     * 批量获取
+     * 批量获取：数量较多时并行反序列化
      * @param clazz
      * @param keys
      * @return
@@ -536,17 +497,150 @@ public class ValueOperations extends JedisOperations {
             return null;
         }
 
-        HashMap<byte[], T> result = new HashMap<>();
-        for (Entry<byte[], byte[]> entry : datas.entrySet()) {
+        if (datas.size() < PARALLEL_DESERIALIZE_THRESHOLD) {
+            Map<byte[], T> result = new HashMap<>(datas.size() << 1);
+            for (Entry<byte[], byte[]> entry : datas.entrySet()) {
+                T t = jedisClient.deserialize(entry.getValue(), clazz, isCompress);
+                if (t != null) {
+                    result.put(entry.getKey(), t);
+                }
+            }
+            return result;
+        }
+
+        Map<byte[], T> result = new ConcurrentHashMap<>(datas.size() << 1);
+        datas.entrySet().parallelStream().forEach(entry -> {
             T t = jedisClient.deserialize(entry.getValue(), clazz, isCompress);
             if (t != null) {
                 result.put(entry.getKey(), t);
             }
-        }
+        });
         return result;
     }
 
     public <T extends Object> Map<byte[], T> mgetObject(Class<T> clazz, byte[]... keys) {
         return this.mgetObject(clazz, true, keys);
     }
+
+    /**
+     * 批量设置值：按分片分组，每个分片通过pipeline发送SETEX命令
+     * @param map
+     * @param seconds
+     * @return 是否全部设置成功
+     */
+    public boolean mset(Map<String, String> map, int seconds) {
+        if (map == null || map.isEmpty()) {
+            return false;
+        }
+
+        int expire = getActualExpire(seconds);
+        Boolean flag = call(shardedJedis -> {
+            Map<Jedis, List<String>> groups = groupByShard(
+                shardedJedis, map.keySet().toArray(new String[map.size()])
+            );
+            return allSuccess(executeByShard(groups, (jedis, list) -> {
+                Pipeline pipeline = jedis.pipelined();
+                for (String key : list) {
+                    pipeline.setex(key, expire, map.get(key));
+                }
+                return toSuccessMap(list, pipeline.syncAndReturnAll());
+            }, "mset"), map.size());
+        }, false, map, seconds);
+
+        for (String key : map.keySet()) {
+            nearInvalidate(key);
+        }
+        return flag;
+    }
+
+    public boolean mset(Map<String, String> map) {
+        return this.mset(map, DEFAULT_EXPIRE_SECONDS);
+    }
+
+    /**
+     * 批量序例化并缓存：按分片分组，每个分片通过pipeline发送SETEX命令
+     * @param map
+     * @param isCompress
+     * @param seconds
+     * @return 是否全部设置成功
+     */
+    public <T extends Object> boolean msetObject(Map<byte[], T> map, boolean isCompress, int seconds) {
+        if (map == null || map.isEmpty()) {
+            return false;
+        }
+
+        byte[][] keys = map.entrySet().stream().filter(e -> e.getValue() != null)
+                           .map(Entry::getKey).toArray(byte[][]::new);
+        if (keys.length == 0) {
+            return false;
+        }
+
+        int expire = getActualExpire(seconds);
+        Boolean flag = call(shardedJedis -> {
+            Map<Jedis, List<byte[]>> groups = groupByShard(shardedJedis, keys);
+            return allSuccess(executeByShard(groups, (jedis, list) -> {
+                Pipeline pipeline = jedis.pipelined();
+                for (byte[] key : list) {
+                    pipeline.setex(key, expire, jedisClient.serialize(map.get(key), isCompress));
+                }
+                return toSuccessMap(list, pipeline.syncAndReturnAll());
+            }, "msetObject"), keys.length);
+        }, false, map, isCompress, seconds);
+
+        for (byte[] key : map.keySet()) {
+            nearInvalidate(key);
+        }
+        return flag;
+    }
+
+    public <T extends Object> boolean msetObject(Map<byte[], T> map, int seconds) {
+        return this.msetObject(map, true, seconds);
+    }
+
+    public <T extends Object> boolean msetObject(Map<byte[], T> map) {
+        return this.msetObject(map, true, DEFAULT_EXPIRE_SECONDS);
+    }
+
+    // -----------------------------------------------------------------private methods
+    /**
+     * 按分片执行，多个分片时并行执行
+     * @param groups   the shard groups
+     * @param function the function of per shard execute
+     * @param command  the command name for log
+     * @return the merged result map
+     */
+    private <K, V> Map<K, V> executeByShard(Map<Jedis, List<K>> groups, 
+        BiFunction<Jedis, List<K>, Map<K, V>> function, String command) {
+        if (groups.size() == 1) {
+            Entry<Jedis, List<K>> entry = groups.entrySet().iterator().next();
+            return function.apply(entry.getKey(), entry.getValue());
+        }
+
+        CompletionService<Map<K, V>> service = new ExecutorCompletionService<>(executor());
+        for (Entry<Jedis, List<K>> entry : groups.entrySet()) {
+            service.submit(() -> function.apply(entry.getKey(), entry.getValue()));
+        }
+        Map<K, V> result = new HashMap<>();
+        for (int number = groups.size(); number > 0; number--) {
+            try {
+                result.putAll(service.take().get());
+            } catch (InterruptedException | ExecutionException e) {
+                logger.error("Jedis " + command + " occur error", e);
+            }
+        }
+        return result;
+    }
+
+    private static <K> Map<K, Boolean> toSuccessMap(List<K> keys, List<Object> replies) {
+        Map<K, Boolean> result = new HashMap<>(keys.size() << 1);
+        for (int i = 0, n = Math.min(keys.size(), replies.size()); i < n; i++) {
+            result.put(keys.get(i), SUCCESS_MSG.equalsIgnoreCase(String.valueOf(replies.get(i))));
+        }
+        return result;
+    }
+
+    private static <K> boolean allSuccess(Map<K, Boolean> result, int expectSize) {
+        return result.size() == expectSize && result.values().stream().allMatch(Boolean.TRUE::equals);
+    }
+
 }
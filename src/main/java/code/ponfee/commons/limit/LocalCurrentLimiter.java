@@ -0,0 +1,214 @@
+package code.ponfee.commons.limit;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import static code.ponfee.commons.concurrent.ThreadPoolExecutors.CALLER_RUN_HANDLER;
+
+/**
+ * 本地限流器（GCRA，无redis依赖，适用于单节点）
+ * <p>每个key的理论到达时间（TAT）通过CAS更新，校验过程无锁且不分配对象；
+ * 访问量按时间桶记录在每个key的环形数组中，用于countByRange统计；
+ * 长时间未访问的key会被定时清除
+ *
+ * @author fupf
+ */
+public class LocalCurrentLimiter implements CurrentLimiter {
+
+    private static Logger logger = LoggerFactory.getLogger(LocalCurrentLimiter.class);
+
+    private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1); // 限流窗口：一分钟
+    private static final long COUNT_MASK = 0xFFFFFFFFL; // 时间桶低32位为访问量，高32位为桶序号
+
+    private final ConcurrentHashMap<String, Long> thresholds = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, KeyState> states = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1, CALLER_RUN_HANDLER);
+    private final long baseMillis = System.currentTimeMillis(); // 桶序号的起始时间
+    private final long bucketMillis;
+    private final int bucketCount;
+    private final long idleNanos;
+
+    public LocalCurrentLimiter() {
+        this(1, 300); // 1秒一个桶，保留5分钟
+    }
+
+    /**
+     * @param bucketSeconds 每个时间桶的秒数
+     * @param bucketCount   每个key的时间桶数量（bucketSeconds * bucketCount为可统计的时长）
+     */
+    public LocalCurrentLimiter(int bucketSeconds, int bucketCount) {
+        Preconditions.checkArgument(bucketSeconds > 0, "bucket seconds must be positive.");
+        Preconditions.checkArgument(bucketCount > 0, "bucket count must be positive.");
+        this.bucketMillis = TimeUnit.SECONDS.toMillis(bucketSeconds);
+        this.bucketCount = bucketCount;
+
+        // 空闲超过限流窗口及统计时长的key才清除
+        long retainMillis = bucketMillis * bucketCount;
+        this.idleNanos = Math.max(WINDOW_NANOS, TimeUnit.MILLISECONDS.toNanos(retainMillis));
+        long period = Math.max(TimeUnit.NANOSECONDS.toSeconds(idleNanos) / 2, 1);
+        this.executor.scheduleAtFixedRate(() -> {
+            try {
+                evictIdle();
+            } catch (Throwable t) {
+                logger.error("Evict idle limiter key occur error", t);
+            }
+        }, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 校验并记录
+     * @param key
+     * @return 是否频繁访问：true是；false否；
+     */
+    public @Override boolean checkpoint(String key) {
+        return checkpoint(key, getRequestThreshold(key));
+    }
+
+    public @Override boolean checkpoint(String key, long requestThreshold) {
+        if (requestThreshold < 0) {
+            return true; // 小于0表示无限制
+        } else if (requestThreshold == 0) {
+            return false; // 禁止访问
+        }
+
+        KeyState state = states.get(key);
+        if (state == null) {
+            state = states.computeIfAbsent(key, k -> new KeyState(bucketCount));
+        }
+
+        // GCRA：每次访问使TAT后移一个间隔，TAT超出当前时间一个窗口则拒绝
+        long now = System.nanoTime(), interval = Math.max(WINDOW_NANOS / requestThreshold, 1);
+        state.lastAccessNanos = now;
+        for (long tat, newTat; ;) {
+            tat = state.tat;
+            newTat = Math.max(tat, now) + interval;
+            if (newTat - now > WINDOW_NANOS) {
+                return false; // 超过频率
+            }
+            if (KeyState.TAT_UPDATER.compareAndSet(state, tat, newTat)) {
+                break;
+            }
+        }
+
+        state.record(bucketIndex(System.currentTimeMillis()), bucketCount);
+        return true;
+    }
+
+    /**
+     * 按区间统计，精度为时间桶，超出保留时长的部分不计入
+     */
+    @Override
+    public long countByRange(String key, Date from, Date to) {
+        long fromMillis = from.getTime(), toMillis = to.getTime();
+        Preconditions.checkArgument(fromMillis < toMillis, "from time must before to time.");
+        KeyState state = states.get(key);
+        if (state == null) {
+            return 0;
+        }
+
+        long current = bucketIndex(System.currentTimeMillis());
+        long begin = Math.max(bucketIndex(fromMillis), current - bucketCount + 1);
+        long end = Math.min(bucketIndex(toMillis), current);
+        return state.count(begin, end, bucketCount);
+    }
+
+    /**
+     * 限制一分钟的访问频率
+     * @param key
+     * @param threshold
+     * @return 是否设置成功：true是；false否；
+     */
+    public @Override boolean setRequestThreshold(String key, long threshold) {
+        thresholds.put(key, threshold);
+        return true;
+    }
+
+    /**
+     * 获取一分钟的限制频率量
+     * @param key
+     * @return
+     */
+    public @Override long getRequestThreshold(String key) {
+        Long threshold = thresholds.get(key);
+        return threshold == null ? -1L : threshold; // -1表示无限制
+    }
+
+    /**
+     * 销毁
+     */
+    public void destory() {
+        executor.shutdown();
+        states.clear();
+    }
+
+    // -------------------------------------------------------------------private methods
+    private long bucketIndex(long timeMillis) {
+        return Math.max(timeMillis - baseMillis, 0) / bucketMillis;
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        for (Iterator<KeyState> iter = states.values().iterator(); iter.hasNext();) {
+            if (now - iter.next().lastAccessNanos > idleNanos) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * 每个key的限流状态
+     */
+    private static final class KeyState {
+        static final AtomicLongFieldUpdater<KeyState> TAT_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(KeyState.class, "tat");
+
+        volatile long tat = Long.MIN_VALUE / 2; // theoretical arrival time（nanos）
+        volatile long lastAccessNanos = System.nanoTime();
+
+        // 环形时间桶：高32位为桶序号，低32位为该桶的访问量
+        final AtomicLongArray buckets;
+
+        KeyState(int bucketCount) {
+            this.buckets = new AtomicLongArray(bucketCount);
+        }
+
+        void record(long index, int bucketCount) {
+            int slot = (int) (index % bucketCount);
+            for (long value, update; ;) {
+                value = buckets.get(slot);
+                if ((value >>> 32) == index) {
+                    update = (value & COUNT_MASK) == COUNT_MASK ? value : value + 1;
+                } else if ((value >>> 32) < index) {
+                    update = (index << 32) | 1; // 桶已过期，重置
+                } else {
+                    return; // 已被更新的时间占用
+                }
+                if (value == update || buckets.compareAndSet(slot, value, update)) {
+                    return;
+                }
+            }
+        }
+
+        long count(long begin, long end, int bucketCount) {
+            long total = 0, value;
+            for (long index = begin; index <= end; index++) {
+                value = buckets.get((int) (index % bucketCount));
+                if ((value >>> 32) == index) {
+                    total += value & COUNT_MASK;
+                }
+            }
+            return total;
+        }
+    }
+
+}
@@ -2,28 +2,29 @@ package code.ponfee.commons.limit;
 
 import code.ponfee.commons.cache.Cache;
 import code.ponfee.commons.cache.CacheBuilder;
-import code.ponfee.commons.concurrent.AsyncBatchTransmitter;
+import code.ponfee.commons.cache.LoadingCache;
+import code.ponfee.commons.jce.digest.DigestUtils;
 import code.ponfee.commons.jedis.JedisClient;
 import code.ponfee.commons.jedis.JedisLock;
-import code.ponfee.commons.util.Bytes;
 import code.ponfee.commons.util.IdWorker;
 import com.google.common.base.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Pipeline;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import static code.ponfee.commons.concurrent.ThreadPoolExecutors.CALLER_RUN_HANDLER;
-import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
- * Redis限流器
+ * Redis限流器（滑动窗口日志）
+ * <p>每次校验通过一次EVALSHA在key所属分片上原子完成：
+ * 清除过期记录、统计窗口内访问量、未超限时记录本次访问
  *
  * @author fupf
  */
@@ -33,25 +34,43 @@ public class RedisCurrentLimiter implements CurrentLimiter {
 
     private static final int EXPIRE_SECONDS = (int) TimeUnit.DAYS.toSeconds(30) + 1; // key的失效日期
     private static final String TRACE_KEY_PREFIX = "cir:bre:"; // 频率缓存key前缀
-    private static final byte[] TRACE_KEY_BYTES = TRACE_KEY_PREFIX.getBytes(); // 频率缓存key前缀
     private static final String THRESHOLD_KEY_PREFIX = "freq:thrd:"; // 限制次数缓存key前缀
-    private static final Map<String, Object> LOCK_MAP = new HashMap<>(); // the map for store lock object
+    private static final int CLEAR_SCAN_COUNT = 500; // 定时清除时每次SCAN的数量
+    private static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(1); // 限流窗口：一分钟
+
+    /**
+     * KEYS[1]：记录key；ARGV：当前毫秒数、窗口毫秒数、限制量、保留毫秒数、key失效秒数、记录成员
+     * <p>返回1表示通过并已记录，0表示超过频率
+     */
+    private static final String CHECKPOINT_SCRIPT =
+        "local key = KEYS[1] "
+      + "local now = tonumber(ARGV[1]) "
+      + "redis.call('ZREMRANGEBYSCORE', key, '-inf', '(' .. (now - tonumber(ARGV[4]))) "
+      + "if redis.call('ZCOUNT', key, '(' .. (now - tonumber(ARGV[2])), '+inf') >= tonumber(ARGV[3]) then "
+      + "  return 0 "
+      + "end "
+      + "redis.call('ZADD', key, now, ARGV[6]) "
+      + "redis.call('EXPIRE', key, ARGV[5]) "
+      + "return 1";
+    private static final String CHECKPOINT_SCRIPT_SHA1 = DigestUtils.sha1Hex(CHECKPOINT_SCRIPT);
 
     private final JedisClient jedisClient;
     private final JedisLock lock;
     private final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1, CALLER_RUN_HANDLER);
-    private final AsyncBatchTransmitter<Trace> transmitter;
-    private final int clearBeforeMillis;
+    private final long clearBeforeMillis;
 
     private final Cache<Long> confCache = CacheBuilder.newBuilder().keepaliveInMillis(120000L) // 2 minutes of cache alive
                                                       .autoReleaseInSeconds(1800).build(); // 30 minutes to release expire cache
 
-    private final Cache<Long> countCache = CacheBuilder.newBuilder().keepaliveInMillis(500L) // 500 millis of cache alive
-                                                       .autoReleaseInSeconds(1800).build(); // 30 minutes to release expire cache
+    // key format: key:millis, the same key only one thread to load from redis
+    private final LoadingCache<Long> countCache = CacheBuilder.newBuilder().keepaliveInMillis(500L) // 500 millis of cache alive
+                                                              .autoReleaseInSeconds(1800) // 30 minutes to release expire cache
+                                                              .build(this::loadCount);
 
     public RedisCurrentLimiter(JedisClient jedisClient, int clearBeforeMinutes, int autoClearInSeconds) {
         this.jedisClient = jedisClient;
-        this.clearBeforeMillis = (int) TimeUnit.MINUTES.toMillis(clearBeforeMinutes);
+        // 至少保留一个窗口的记录
+        this.clearBeforeMillis = Math.max(TimeUnit.MINUTES.toMillis(clearBeforeMinutes), WINDOW_MILLIS);
 
         // 定时清除记录(zrem range by score)，jedis:lock:cir:bre:clear
         this.lock = new JedisLock(jedisClient, TRACE_KEY_PREFIX + "clear", autoClearInSeconds / 2);
@@ -59,47 +78,17 @@ public class RedisCurrentLimiter implements CurrentLimiter {
             try {
                 if (this.lock.tryLock()) { // 不用释放锁，让其自动超时
                     long beforeTimeMillis = System.currentTimeMillis() - clearBeforeMillis;
-                    for (String key : jedisClient.keysOps().keys(TRACE_KEY_PREFIX + "*")) {
-                        jedisClient.zsetOps().zremrangeByScore(key, 0, beforeTimeMillis);
-                    }
+                    // SCAN遍历，不阻塞redis，每批key在其所在分片的连接上通过pipeline清除
+                    jedisClient.keysOps().scanShard(TRACE_KEY_PREFIX + "*", CLEAR_SCAN_COUNT, (jedis, keys) -> {
+                        Pipeline pipeline = jedis.pipelined();
+                        keys.forEach(key -> pipeline.zremrangeByScore(key, 0, beforeTimeMillis));
+                        pipeline.sync();
+                    });
                 }
             } catch (Throwable t) {
                 logger.error("JedisLock tryLock occur error", t);
             }
         }, autoClearInSeconds, autoClearInSeconds, TimeUnit.SECONDS);
-
-        // 批量记录
-        this.transmitter = new AsyncBatchTransmitter<>((traces, isEnd) -> {
-            return () -> {
-                Map<String, Map<byte[], Double>> groups = new HashMap<>();
-                Map<byte[], Double> batch;
-                for (Trace trace : traces) {
-                    batch = groups.get(trace.key);
-                    if (batch == null) {
-                        batch = new HashMap<>();
-                        groups.put(trace.key, batch);
-                    }
-                    // ObjectUtils.uuid22()
-                    // Long.toString(IdWorker.LOCAL_WORKER.nextId(), Character.MAX_RADIX)
-                    batch.put(Bytes.fromLong(IdWorker.LOCAL_WORKER.nextId()), trace.timeMillis);
-                }
-                for (Entry<String, Map<byte[], Double>> entry : groups.entrySet()) {
-                    if (entry.getValue().isEmpty()) {
-                        continue;
-                    }
-
-                    // TRACE_KEY_PREFIX + trace.key
-                    jedisClient.zsetOps().zadd(
-                        concat(TRACE_KEY_BYTES, entry.getKey().getBytes(UTF_8)),
-                        entry.getValue(), EXPIRE_SECONDS
-                    );
-                    entry.getValue().clear();
-                }
-                groups.clear();
-                groups = null;
-                traces.clear();
-            };
-        }, 100, 5000); // 100毫秒间隔，5000条∕次
     }
 
     /**
@@ -118,41 +107,29 @@ public class RedisCurrentLimiter implements CurrentLimiter {
             return false; // 禁止访问
         }
 
-        if (requestThreshold < countByLastTime(key, 1, TimeUnit.MINUTES)) {
-            return false; // 超过频率
-        } else {
-            return transmitter.put(new Trace(key, System.currentTimeMillis()));
+        // 成员使用唯一id，避免同一毫秒内的访问相互覆盖
+        Object result = jedisClient.scriptOps().evalsha(
+            CHECKPOINT_SCRIPT, CHECKPOINT_SCRIPT_SHA1,
+            Collections.singletonList(TRACE_KEY_PREFIX + key),
+            Arrays.asList(
+                Long.toString(System.currentTimeMillis()),
+                Long.toString(WINDOW_MILLIS),
+                Long.toString(requestThreshold),
+                Long.toString(clearBeforeMillis),
+                Integer.toString(EXPIRE_SECONDS),
+                Long.toString(IdWorker.LOCAL_WORKER.nextId(), Character.MAX_RADIX)
+            )
+        );
+        if (result == null) {
+            return true; // redis异常时放行
         }
+        return ((Number) result).longValue() == 1;
     }
 
     public long countByLastTime(String key, int time, TimeUnit unit) {
         long millis = unit.toMillis(time);
-        String key0 = new StringBuilder(key).append(':').append(millis).toString();
-        Long count = countCache.get(key0);
-        if (count == null) {
-            // get the lock for access redis
-            Object lock = LOCK_MAP.get(key0);
-            if (lock == null) {
-                synchronized (this.getClass()) {
-                    lock = LOCK_MAP.get(key0);
-                    if (lock == null) {
-                        lock = new Object();
-                        LOCK_MAP.put(key0, lock);
-                    }
-                }
-            }
-
-            // load the freq from cache, if not hit then calculate by redis zcount
-            synchronized (lock) {
-                count = countCache.get(key0);
-                if (count == null) {
-                    long now = System.currentTimeMillis();
-                    count = countByRangeMillis(key, now - millis, now);
-                    countCache.set(key0, count);
-                }
-            }
-        }
-        return count;
+        // load the freq from cache, if not hit then calculate by redis zcount
+        return countCache.get(new StringBuilder(key).append(':').append(millis).toString());
     }
 
     @Override
@@ -200,11 +177,19 @@ public class RedisCurrentLimiter implements CurrentLimiter {
     public void destory() {
         confCache.destroy();
         countCache.destroy();
-        transmitter.end();
         executor.shutdown();
-        synchronized (this.getClass()) {
-            LOCK_MAP.clear();
-        }
+    }
+
+    /**
+     * 缓存加载：根据key:millis计算最近millis毫秒内的访问次数
+     * @param key0 the key:millis
+     * @return the count of last millis
+     */
+    private Long loadCount(Comparable<?> key0) {
+        String str = key0.toString();
+        int pos = str.lastIndexOf(':');
+        long millis = Long.parseLong(str.substring(pos + 1)), now = System.currentTimeMillis();
+        return countByRangeMillis(str.substring(0, pos), now - millis, now);
     }
 
     /**
@@ -219,21 +204,4 @@ public class RedisCurrentLimiter implements CurrentLimiter {
         return jedisClient.zsetOps().zcount(TRACE_KEY_PREFIX + key, fromMillis, toMillis);
     }
 
-    private static class Trace {
-        final String key;
-        final double timeMillis;
-
-        Trace(String key, double timeMillis) {
-            this.key = key;
-            this.timeMillis = timeMillis;
-        }
-    }
-
-    private static byte[] concat(byte[] array1, byte[] array2) {
-        byte[] result = new byte[array1.length + array2.length];
-        System.arraycopy(array1, 0, result, 0, array1.length);
-        System.arraycopy(array2, 0, result, array1.length, array2.length);
-        return result;
-    }
-
 }
@@ -0,0 +1,131 @@
+package code.ponfee.commons.loadbalance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 基于实时负载的负载均衡：通过{@link #acquire()}获取服务并计数，
+ * 调用结束后通过{@link Lease#release()}释放（可用try-with-resources）
+ * <p>各服务的活跃数使用无锁计数
+ * @author fupf
+ */
+public abstract class AbstractActiveLoadBalance extends AbstractLoadBalance {
+
+    protected final String[] servers;
+    protected final int[] weights;
+    protected final AtomicIntegerArray actives; // 进行中的请求数
+
+    protected AbstractActiveLoadBalance(Map<String, Integer> serverMap) {
+        List<String> list = new ArrayList<>(serverMap.size());
+        List<Integer> values = new ArrayList<>(serverMap.size());
+        for (Entry<String, Integer> entry : serverMap.entrySet()) {
+            if (entry.getValue() != null && entry.getValue() > 0) {
+                list.add(entry.getKey());
+                values.add(entry.getValue());
+            }
+        }
+        this.servers = list.toArray(new String[list.size()]);
+        this.weights = new int[values.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = values.get(i);
+        }
+        this.actives = new AtomicIntegerArray(servers.length);
+    }
+
+    @Override
+    public String select() {
+        int index = selectIndex();
+        return index < 0 ? null : servers[index];
+    }
+
+    /**
+     * 选择服务并增加其活跃数
+     * @return the lease, or null if has not server
+     */
+    public Lease acquire() {
+        int index = selectIndex();
+        if (index < 0) {
+            return null;
+        }
+        actives.incrementAndGet(index);
+        return lease(index);
+    }
+
+    /**
+     * 获取服务的活跃数
+     * @param server
+     * @return the active count, -1 if not exists
+     */
+    public int active(String server) {
+        for (int i = 0; i < servers.length; i++) {
+            if (servers[i].equals(server)) {
+                return actives.get(i);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 选择服务
+     * @return the index of servers, -1 if has not server
+     */
+    protected abstract int selectIndex();
+
+    /**
+     * 创建已选择服务的租约（调用方须已增加其活跃数）
+     * @param index the index of servers
+     * @return the lease
+     */
+    protected final Lease lease(int index) {
+        return new Lease(this, index);
+    }
+
+    /**
+     * 请求结束时回调
+     * @param index        the index of servers
+     * @param elapsedNanos the request elapsed nanos
+     */
+    protected void onRelease(int index, long elapsedNanos) {
+        // do nothing
+    }
+
+    /**
+     * 已选择的服务，释放后减少其活跃数
+     */
+    public static final class Lease implements AutoCloseable {
+        private final AbstractActiveLoadBalance balancer;
+        private final int index;
+        private final long startNanos = System.nanoTime();
+        private boolean released = false;
+
+        Lease(AbstractActiveLoadBalance balancer, int index) {
+            this.balancer = balancer;
+            this.index = index;
+        }
+
+        public String server() {
+            return balancer.servers[index];
+        }
+
+        /**
+         * 释放，重复调用无效
+         */
+        public void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            balancer.actives.decrementAndGet(index);
+            balancer.onRelease(index, System.nanoTime() - startNanos);
+        }
+
+        @Override
+        public void close() {
+            release();
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package code.ponfee.commons.loadbalance;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * 加权负载均衡：权重可动态调整，服务可标记下线/上线
+ * <p>每次变更后以可用（在线且权重大于0）的服务重建选择表，select不加锁
+ * @author fupf
+ */
+public abstract class AbstractWeightLoadBalance extends AbstractLoadBalance {
+
+    private final Map<String, Integer> weights = new LinkedHashMap<>();
+    private final Set<String> downs = new HashSet<>();
+
+    protected AbstractWeightLoadBalance(Map<String, Integer> serverMap) {
+        for (Entry<String, Integer> entry : serverMap.entrySet()) {
+            Preconditions.checkArgument(entry.getValue() >= 0, "weight cannot be negative.");
+            this.weights.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 更新权重，不存在则新增
+     * @param server
+     * @param weight
+     */
+    public synchronized void updateWeight(String server, int weight) {
+        Preconditions.checkArgument(weight >= 0, "weight cannot be negative.");
+        weights.put(server, weight);
+        refresh();
+    }
+
+    public synchronized void removeServer(String server) {
+        weights.remove(server);
+        downs.remove(server);
+        refresh();
+    }
+
+    /**
+     * 健康检查失败时标记下线
+     * @param server
+     */
+    public synchronized void markDown(String server) {
+        if (weights.containsKey(server) && downs.add(server)) {
+            refresh();
+        }
+    }
+
+    /**
+     * 健康检查恢复时标记上线
+     * @param server
+     */
+    public synchronized void markUp(String server) {
+        if (downs.remove(server)) {
+            refresh();
+        }
+    }
+
+    public synchronized boolean isUp(String server) {
+        return weights.containsKey(server) && !downs.contains(server);
+    }
+
+    /**
+     * 以当前可用的服务重建选择表，子类构造完成后须调用一次
+     */
+    protected final synchronized void refresh() {
+        List<String> servers = new ArrayList<>(weights.size());
+        List<Integer> values = new ArrayList<>(weights.size());
+        for (Entry<String, Integer> entry : weights.entrySet()) {
+            if (entry.getValue() > 0 && !downs.contains(entry.getKey())) {
+                servers.add(entry.getKey());
+                values.add(entry.getValue());
+            }
+        }
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        rebuild(servers.toArray(new String[servers.size()]), array);
+    }
+
+    /**
+     * 重建选择表
+     * @param servers 可用的服务
+     * @param weights 对应的权重（均大于0）
+     */
+    protected abstract void rebuild(String[] servers, int[] weights);
+
+}
@@ -0,0 +1,108 @@
+package code.ponfee.commons.loadbalance;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一致性哈希法：增减服务时只影响相邻区间的key
+ * <p>{@link #select(String)}按key选择服务；{@link #acquire(String)}在有界负载模式下
+ * （Consistent Hashing with Bounded Loads），若服务活跃数已达上限
+ * ceil((1 + ε) * 总活跃数 / 服务数)，则沿环顺时针选择下一个未达上限的服务
+ * @author fupf
+ */
+public class ConsistentHashLoadBalance extends AbstractActiveLoadBalance {
+
+    private final ConsistentHashRing<String> ring;
+    private final double loadFactor; // 1 + ε，小于等于0表示不限制负载
+    private final AtomicInteger totalActive = new AtomicInteger();
+
+    public ConsistentHashLoadBalance(Map<String, Integer> serverMap) {
+        this(serverMap, ConsistentHashRing.DEFAULT_VIRTUAL_NODES, 0);
+    }
+
+    /**
+     * @param serverMap    服务及权重
+     * @param virtualNodes 每单位权重的虚拟节点数
+     * @param balanceFactor 有界负载的ε（如0.25），小于等于0表示不限制负载
+     */
+    public ConsistentHashLoadBalance(Map<String, Integer> serverMap, 
+                                     int virtualNodes, double balanceFactor) {
+        super(serverMap);
+        Map<String, Integer> nodes = new LinkedHashMap<>();
+        for (int i = 0; i < servers.length; i++) {
+            nodes.put(servers[i], weights[i]); // 与servers下标一致
+        }
+        this.ring = new ConsistentHashRing<>(nodes, virtualNodes);
+        this.loadFactor = balanceFactor > 0 ? 1 + balanceFactor : 0;
+    }
+
+    @Override
+    public String select() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 选择key所在的服务（不考虑负载）
+     * @param key such as the invoke ip
+     * @return the server
+     */
+    public String select(String key) {
+        return ring.get(key);
+    }
+
+    @Override
+    public Lease acquire() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 选择key所在的服务并增加其活跃数，有界负载模式下跳过已达上限的服务
+     * @param key
+     * @return the lease, or null if has not server
+     */
+    public Lease acquire(String key) {
+        if (ring.size() == 0) {
+            return null;
+        }
+
+        int point = ring.pointOf(ConsistentHashRing.hash(key));
+        if (loadFactor > 0) {
+            int capacity = (int) Math.ceil(loadFactor * (totalActive.get() + 1) / servers.length);
+            for (int i = 0, n = ring.size(); i < n; i++) {
+                int index = ring.ownerAt((point + i) % n);
+                for (int active; (active = actives.get(index)) < capacity;) {
+                    if (actives.compareAndSet(index, active, active + 1)) {
+                        totalActive.incrementAndGet();
+                        return lease(index);
+                    }
+                }
+            }
+        }
+
+        // 不限制负载，或并发下均已达上限
+        int index = ring.ownerAt(point);
+        actives.incrementAndGet(index);
+        totalActive.incrementAndGet();
+        return lease(index);
+    }
+
+    @Override
+    protected int selectIndex() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected void onRelease(int index, long elapsedNanos) {
+        totalActive.decrementAndGet();
+    }
+
+    public static void main(String[] args) {
+        Map<String, Integer> servers = new LinkedHashMap<>();
+        for (int i = 100; i < 110; i++) {
+            servers.put("192.168.1." + i, 1);
+        }
+        ConsistentHashLoadBalance lb = new ConsistentHashLoadBalance(servers);
+        System.out.println(lb.select("10.0.0.1"));
+    }
+}
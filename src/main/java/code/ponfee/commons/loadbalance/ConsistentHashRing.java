@@ -0,0 +1,191 @@
+package code.ponfee.commons.loadbalance;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * 一致性哈希环（不可变）
+ * <p>每个节点按权重生成virtualNodes * weight个虚拟节点，哈希算法为Murmur3（x64 128位取低64位），
+ * 虚拟节点哈希值保存在有序的long[]中，查找为二分查找
+ * <p>可用于服务选择，也可用于客户端key分片（节点为任意对象）
+ * @author fupf
+ * @param <T> the node type
+ */
+public final class ConsistentHashRing<T> {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final List<T> nodes;
+    private final long[] hashes; // 有序的虚拟节点哈希值
+    private final int[] owners;  // 虚拟节点对应nodes的下标
+
+    /**
+     * @param nodeWeights  节点及其权重（权重须大于0）
+     * @param virtualNodes 每单位权重的虚拟节点数
+     */
+    public ConsistentHashRing(Map<T, Integer> nodeWeights, int virtualNodes) {
+        Preconditions.checkArgument(virtualNodes > 0, "virtual nodes must be positive.");
+        List<T> list = new ArrayList<>(nodeWeights.size());
+        int total = 0;
+        for (Entry<T, Integer> entry : nodeWeights.entrySet()) {
+            Preconditions.checkArgument(entry.getValue() != null && entry.getValue() > 0,
+                                        "weight must be positive: %s", entry.getKey());
+            list.add(entry.getKey());
+            total += entry.getValue() * virtualNodes;
+        }
+
+        long[] points = new long[total];
+        int k = 0;
+        for (int i = 0; i < list.size(); i++) {
+            String name = String.valueOf(list.get(i));
+            for (int n = nodeWeights.get(list.get(i)) * virtualNodes, j = 0; j < n; j++) {
+                points[k++] = hash(name + "#" + j);
+            }
+        }
+
+        // 按哈希值排序，owners随之调整
+        Integer[] order = new Integer[total];
+        for (int i = 0; i < total; i++) {
+            order[i] = i;
+        }
+        int[] ownerOf = new int[total];
+        for (int i = 0, p = 0; i < list.size(); i++) {
+            for (int n = nodeWeights.get(list.get(i)) * virtualNodes, j = 0; j < n; j++) {
+                ownerOf[p++] = i;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(points[a], points[b]));
+
+        this.nodes = Collections.unmodifiableList(list);
+        this.hashes = new long[total];
+        this.owners = new int[total];
+        for (int i = 0; i < total; i++) {
+            this.hashes[i] = points[order[i]];
+            this.owners[i] = ownerOf[order[i]];
+        }
+    }
+
+    public List<T> nodes() {
+        return nodes;
+    }
+
+    /**
+     * 获取key所在的节点
+     * @param key
+     * @return the node, or null if empty
+     */
+    public T get(String key) {
+        return hashes.length == 0 ? null : nodes.get(owners[pointOf(hash(key))]);
+    }
+
+    public T get(byte[] key) {
+        return hashes.length == 0 ? null : nodes.get(owners[pointOf(hash(key))]);
+    }
+
+    /**
+     * 哈希值在环上顺时针方向第一个虚拟节点的位置
+     * @param hash
+     * @return the position of hashes
+     */
+    int pointOf(long hash) {
+        int pos = Arrays.binarySearch(hashes, hash);
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+        return pos == hashes.length ? 0 : pos;
+    }
+
+    int size() {
+        return hashes.length;
+    }
+
+    int ownerAt(int point) {
+        return owners[point];
+    }
+
+    // ---------------------------------------------------------------------murmur3
+    public static long hash(String key) {
+        return hash(key.getBytes(UTF_8));
+    }
+
+    /**
+     * Murmur3 x64 128位哈希的低64位（与guava Hashing.murmur3_128().hashBytes(data).asLong()一致）
+     * @param data
+     * @return the 64 bit hash
+     */
+    @SuppressWarnings("fallthrough") // 尾部字节处理有意逐级贯穿case
+    public static long hash(byte[] data) {
+        final long c1 = 0x87c37b91114253d5L, c2 = 0x4cf5ad432745937fL;
+        int length = data.length, blocks = length >> 4;
+        long h1 = 0, h2 = 0, k1, k2;
+
+        for (int i = 0; i < blocks; i++) {
+            k1 = getLong(data, i << 4);
+            k2 = getLong(data, (i << 4) + 8);
+
+            k1 *= c1; k1 = Long.rotateLeft(k1, 31); k1 *= c2; h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27); h1 += h2; h1 = h1 * 5 + 0x52dce729;
+
+            k2 *= c2; k2 = Long.rotateLeft(k2, 33); k2 *= c1; h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31); h2 += h1; h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        k1 = 0;
+        k2 = 0;
+        int tail = blocks << 4;
+        switch (length & 15) {
+            case 15: k2 ^= (long) (data[tail + 14] & 0xff) << 48;
+            case 14: k2 ^= (long) (data[tail + 13] & 0xff) << 40;
+            case 13: k2 ^= (long) (data[tail + 12] & 0xff) << 32;
+            case 12: k2 ^= (long) (data[tail + 11] & 0xff) << 24;
+            case 11: k2 ^= (long) (data[tail + 10] & 0xff) << 16;
+            case 10: k2 ^= (long) (data[tail +  9] & 0xff) << 8;
+            case  9: k2 ^= (long) (data[tail +  8] & 0xff);
+                     k2 *= c2; k2 = Long.rotateLeft(k2, 33); k2 *= c1; h2 ^= k2;
+            case  8: k1 ^= (long) (data[tail +  7] & 0xff) << 56;
+            case  7: k1 ^= (long) (data[tail +  6] & 0xff) << 48;
+            case  6: k1 ^= (long) (data[tail +  5] & 0xff) << 40;
+            case  5: k1 ^= (long) (data[tail +  4] & 0xff) << 32;
+            case  4: k1 ^= (long) (data[tail +  3] & 0xff) << 24;
+            case  3: k1 ^= (long) (data[tail +  2] & 0xff) << 16;
+            case  2: k1 ^= (long) (data[tail +  1] & 0xff) << 8;
+            case  1: k1 ^= (long) (data[tail] & 0xff);
+                     k1 *= c1; k1 = Long.rotateLeft(k1, 31); k1 *= c2; h1 ^= k1;
+            default:
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        return h1 + h2;
+    }
+
+    private static long getLong(byte[] b, int i) {
+        return (b[i] & 0xffL)
+            | (b[i + 1] & 0xffL) << 8  | (b[i + 2] & 0xffL) << 16
+            | (b[i + 3] & 0xffL) << 24 | (b[i + 4] & 0xffL) << 32
+            | (b[i + 5] & 0xffL) << 40 | (b[i + 6] & 0xffL) << 48
+            | (b[i + 7] & 0xffL) << 56;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+}
@@ -1,39 +1,40 @@
 package code.ponfee.commons.loadbalance;
 
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * 最少已使用法
- * 需要考虑如何恢复权重
+ * 最少活跃法：选择进行中请求数相对权重最少的服务（active / weight最小），
+ * 活跃数相同时从随机位置开始选取以分散请求
+ * <p>通过{@link #acquire()}获取服务，调用结束后释放
  * @author fupf
  */
-public class LeastActiveLoadBalance extends AbstractLoadBalance {
-    private final List<Map.Entry<String, Integer>> servers;
+public class LeastActiveLoadBalance extends AbstractActiveLoadBalance {
 
     public LeastActiveLoadBalance(Map<String, Integer> serverMap) {
-        this.servers = new ArrayList<>(serverMap.entrySet());
-        this.servers.sort(Comparator.comparing(Entry::getValue));
-
-        //this.servers.sort(Comparator.comparing(e -> e.getValue()));
-        //this.servers.sort((o1, o2) -> o1.getValue().compareTo(o2.getValue()));
-        //Collections.sort(servers, Comparator.comparing(Entry<String, Integer>::getValue));
+        super(serverMap);
     }
 
     @Override
-    public String select() {
-        return servers.get(0).getKey();
+    protected int selectIndex() {
+        int n = servers.length;
+        if (n == 0) {
+            return -1;
+        }
+
+        int start = ThreadLocalRandom.current().nextInt(n), best = start;
+        for (int i = 1; i < n; i++) {
+            int index = (start + i) % n;
+            // actives[index] / weights[index] < actives[best] / weights[best]
+            if ((long) actives.get(index) * weights[best] < (long) actives.get(best) * weights[index]) {
+                best = index;
+            }
+        }
+        return best;
     }
 
     public static void main(String[] args) {
-        //List<String> list = Lists.newArrayList();
-        //Collections.sort(list); == list.sort(null);
-        //Collections.sort(list, comparator); == list.sort(comparator);
-
         HashMap<String, Integer> serverWeightMap = new HashMap<>();
         serverWeightMap.put("192.168.1.100", 1);
         serverWeightMap.put("192.168.1.101", 1);
@@ -51,7 +52,9 @@ public class LeastActiveLoadBalance extends AbstractLoadBalance {
         serverWeightMap.put("192.168.1.110", 0);
         serverWeightMap.put("192.168.1.111", 5);
 
-        AbstractLoadBalance slb = new LeastActiveLoadBalance(serverWeightMap);
-        System.out.println(slb.select());
+        LeastActiveLoadBalance slb = new LeastActiveLoadBalance(serverWeightMap);
+        try (Lease lease = slb.acquire()) {
+            System.out.println(lease.server());
+        }
     }
 }
@@ -0,0 +1,91 @@
+package code.ponfee.commons.loadbalance;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 两次随机选择法（Power of Two Choices）+ 延迟EWMA
+ * <p>随机选取两个服务，取代价（延迟EWMA * (活跃数 + 1) / 权重）较小者；
+ * 延迟EWMA按时间衰减：距上次更新越久，旧值权重越小
+ * <p>通过{@link #acquire()}获取服务，调用结束后释放时记录延迟
+ * @author fupf
+ */
+public class P2cEwmaLoadBalance extends AbstractActiveLoadBalance {
+
+    private static final long DEFAULT_DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final double decayNanos;
+    private final AtomicLongArray ewmas; // Double.doubleToRawLongBits(纳秒)
+    private final AtomicLongArray stamps; // 上次更新时间
+
+    public P2cEwmaLoadBalance(Map<String, Integer> serverMap) {
+        this(serverMap, DEFAULT_DECAY_NANOS);
+    }
+
+    /**
+     * @param serverMap   服务及权重
+     * @param decayNanos  EWMA衰减时间常数（纳秒）
+     */
+    public P2cEwmaLoadBalance(Map<String, Integer> serverMap, long decayNanos) {
+        super(serverMap);
+        this.decayNanos = decayNanos;
+        this.ewmas = new AtomicLongArray(servers.length); // 0L == 0.0D
+        this.stamps = new AtomicLongArray(servers.length);
+        long now = System.nanoTime();
+        for (int i = 0; i < servers.length; i++) {
+            stamps.set(i, now);
+        }
+    }
+
+    @Override
+    protected int selectIndex() {
+        int n = servers.length;
+        if (n <= 1) {
+            return n - 1;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(n), b = random.nextInt(n - 1);
+        if (b >= a) {
+            b++; // 保证两次选择不同
+        }
+        return cost(a) <= cost(b) ? a : b;
+    }
+
+    @Override
+    protected void onRelease(int index, long elapsedNanos) {
+        long now = System.nanoTime();
+        double w = Math.exp(-Math.max(now - stamps.get(index), 0) / decayNanos);
+        stamps.set(index, now);
+        for (long prev, next; ;) {
+            prev = ewmas.get(index);
+            next = Double.doubleToRawLongBits(Double.longBitsToDouble(prev) * w + elapsedNanos * (1 - w));
+            if (ewmas.compareAndSet(index, prev, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 获取服务的延迟EWMA
+     * @param server
+     * @return the ewma nanos, -1 if not exists
+     */
+    public double latency(String server) {
+        for (int i = 0; i < servers.length; i++) {
+            if (servers[i].equals(server)) {
+                return Double.longBitsToDouble(ewmas.get(i));
+            }
+        }
+        return -1;
+    }
+
+    private double cost(int index) {
+        // 未有延迟数据的服务视为1纳秒，由活跃数区分
+        double latency = Math.max(Double.longBitsToDouble(ewmas.get(index)), 1.0D);
+        return latency * (actives.get(index) + 1) / weights[index];
+    }
+
+}
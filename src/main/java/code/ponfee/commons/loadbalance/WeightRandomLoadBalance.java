@@ -1,32 +1,89 @@
 package code.ponfee.commons.loadbalance;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * 加权随机法
+ * 加权随机法（Vose别名法）
+ * <p>权重变更时构建概率表与别名表，每次选择O(1)且不分配对象，权重可动态调整
  * @author fupf
  */
-public class WeightRandomLoadBalance extends AbstractLoadBalance {
-    private final List<String> servers;
+public class WeightRandomLoadBalance extends AbstractWeightLoadBalance {
+
+    private volatile Table table;
 
     public WeightRandomLoadBalance(Map<String, Integer> serverMap) {
-        this.servers = new ArrayList<String>();
-        for (Entry<String, Integer> entry : serverMap.entrySet()) {
-            for (int n = entry.getValue(), i = 0; i < n; i++) {
-                this.servers.add(entry.getKey());
-            }
-        }
-        Collections.shuffle(this.servers);
+        super(serverMap);
+        super.refresh();
     }
 
     @Override
     public String select() {
-        return servers.get(ThreadLocalRandom.current().nextInt(servers.size()));
+        Table table = this.table;
+        int n = table.servers.length;
+        if (n == 0) {
+            return null;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(n);
+        return table.servers[random.nextDouble() < table.prob[i] ? i : table.alias[i]];
+    }
+
+    @Override
+    protected void rebuild(String[] servers, int[] weights) {
+        this.table = new Table(servers, weights);
+    }
+
+    private static final class Table {
+        final String[] servers;
+        final double[] prob;
+        final int[] alias;
+
+        Table(String[] servers, int[] weights) {
+            int n = servers.length;
+            this.servers = servers;
+            this.prob = new double[n];
+            this.alias = new int[n];
+            if (n == 0) {
+                return;
+            }
+
+            long total = 0;
+            for (int weight : weights) {
+                total += weight;
+            }
+
+            // 按均值缩放后，小于1的放入small，否则放入large
+            double[] scaled = new double[n];
+            int[] small = new int[n], large = new int[n];
+            int smallSize = 0, largeSize = 0;
+            for (int i = 0; i < n; i++) {
+                scaled[i] = (double) weights[i] * n / total;
+                if (scaled[i] < 1.0D) {
+                    small[smallSize++] = i;
+                } else {
+                    large[largeSize++] = i;
+                }
+            }
+            while (smallSize > 0 && largeSize > 0) {
+                int less = small[--smallSize], more = large[--largeSize];
+                prob[less] = scaled[less];
+                alias[less] = more;
+                scaled[more] = (scaled[more] + scaled[less]) - 1.0D;
+                if (scaled[more] < 1.0D) {
+                    small[smallSize++] = more;
+                } else {
+                    large[largeSize++] = more;
+                }
+            }
+            while (largeSize > 0) {
+                prob[large[--largeSize]] = 1.0D;
+            }
+            while (smallSize > 0) {
+                prob[small[--smallSize]] = 1.0D; // 浮点误差
+            }
+        }
     }
 
 }
@@ -1,34 +1,124 @@
 package code.ponfee.commons.loadbalance;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * 加权轮询法
+ * 加权轮询法（平滑加权轮询，同nginx）
+ * <p>每次选择：各服务当前权重加上其权重，选出当前权重最大者，再减去总权重；
+ * 选择结果在一个周期内平滑分散，不按权重展开服务列表，权重可动态调整
+ * <p>重建选择表时预先计算一个周期（权重约去最大公约数后的总权重）的平滑序列，
+ * select以原子游标遍历序列，不加锁且为O(1)；周期超过{@link #MAX_SEQUENCE_LENGTH}时
+ * 每个线程各自维护当前权重（O(n)，不加锁，多线程合并后的分布仍按权重）
  * @author fupf
  */
-public class WeightRoundRobinLoadBalance extends AbstractLoadBalance {
+public class WeightRoundRobinLoadBalance extends AbstractWeightLoadBalance {
 
-    private final AtomicLong pos = new AtomicLong(0);
-    private final List<String> servers;
+    private static final int MAX_SEQUENCE_LENGTH = 1 << 16;
+
+    private final ThreadLocal<State> states = new ThreadLocal<>();
+    private volatile Table table;
 
     public WeightRoundRobinLoadBalance(Map<String, Integer> serverMap) {
-        this.servers = new ArrayList<String>();
-        for (Entry<String, Integer> entry : serverMap.entrySet()) {
-            for (int n = entry.getValue(), i = 0; i < n; i++) {
-                this.servers.add(entry.getKey());
-            }
-        }
-        Collections.shuffle(this.servers);
+        super(serverMap);
+        super.refresh();
     }
 
     @Override
     public String select() {
-        return servers.get((int) (pos.getAndIncrement() % servers.size()));
+        Table table = this.table;
+        if (table.servers.length == 0) {
+            return null;
+        }
+
+        if (table.sequence != null) {
+            long index = table.cursor.getAndIncrement() & Long.MAX_VALUE;
+            return table.servers[table.sequence[(int) (index % table.sequence.length)]];
+        }
+
+        State state = states.get();
+        if (state == null || state.table != table) {
+            states.set(state = new State(table));
+        }
+        return table.servers[next(table.weights, state.current, table.totalWeight)];
+    }
+
+    @Override
+    protected void rebuild(String[] servers, int[] weights) {
+        this.table = new Table(servers, weights);
+    }
+
+    /**
+     * 平滑加权轮询选择一次
+     * @param weights     权重
+     * @param current     当前权重
+     * @param totalWeight 总权重
+     * @return the selected index
+     */
+    private static int next(int[] weights, long[] current, long totalWeight) {
+        int best = 0;
+        for (int i = 0; i < weights.length; i++) {
+            current[i] += weights[i];
+            if (current[i] > current[best]) {
+                best = i;
+            }
+        }
+        current[best] -= totalWeight;
+        return best;
+    }
+
+    private static final class Table {
+        final String[] servers;
+        final int[] weights;
+        final long totalWeight;
+        final int[] sequence; // 一个周期的选择序列，周期过长时为null
+        final AtomicLong cursor = new AtomicLong();
+
+        Table(String[] servers, int[] weights) {
+            this.servers = servers;
+            this.weights = weights;
+            long total = 0;
+            int gcd = 0;
+            for (int weight : weights) {
+                total += weight;
+                gcd = gcd(gcd, weight);
+            }
+            this.totalWeight = total;
+
+            long period = gcd == 0 ? 0 : total / gcd;
+            if (period == 0 || period > MAX_SEQUENCE_LENGTH) {
+                this.sequence = null;
+                return;
+            }
+            int[] reduced = new int[weights.length];
+            for (int i = 0; i < weights.length; i++) {
+                reduced[i] = weights[i] / gcd;
+            }
+            long[] current = new long[weights.length];
+            this.sequence = new int[(int) period];
+            for (int i = 0; i < sequence.length; i++) {
+                sequence[i] = next(reduced, current, period);
+            }
+        }
+
+        static int gcd(int a, int b) {
+            while (b != 0) {
+                int t = a % b;
+                a = b;
+                b = t;
+            }
+            return a;
+        }
+    }
+
+    private static final class State {
+        final Table table;
+        final long[] current;
+
+        State(Table table) {
+            this.table = table;
+            this.current = new long[table.servers.length];
+        }
     }
 
 }
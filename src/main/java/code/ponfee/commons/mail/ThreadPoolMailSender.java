@@ -1,12 +1,16 @@
 package code.ponfee.commons.mail;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,7 +24,35 @@ import code.ponfee.commons.concurrent.ThreadPoolExecutors;
 public class ThreadPoolMailSender {
 
     private static Logger logger = LoggerFactory.getLogger(ThreadPoolMailSender.class);
-    private static final ExecutorService EXECUTOR = ThreadPoolExecutors.create(0, 20, 120, 40, "mail-sender");
+    private static volatile ExecutorService executor = ThreadPoolExecutors.create(0, 20, 120, 40, "mail-sender");
+    private static final ReadWriteLock LOCK = new ReentrantReadWriteLock(); // 提交时读锁，替换执行器时写锁
+
+    /**
+     * 使用虚拟线程发送（运行时不支持时使用平台线程池），原执行器会被关闭
+     */
+    public static void useVirtualThreads() {
+        setExecutor(ThreadPoolExecutors.createVirtual("mail-sender", 20, 120, 40));
+    }
+
+    /**
+     * 设置发送邮件的执行器，原执行器会被关闭（已提交的邮件仍会发送完成）
+     * <p>先发布新执行器，待正在提交的线程完成后再关闭原执行器，
+     * 避免邮件提交到已关闭的线程池而被丢弃
+     * @param executor
+     */
+    public static void setExecutor(ExecutorService executor) {
+        ExecutorService old;
+        LOCK.writeLock().lock();
+        try {
+            old = ThreadPoolMailSender.executor;
+            ThreadPoolMailSender.executor = executor;
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+        if (old != executor) {
+            old.shutdown();
+        }
+    }
 
     public static boolean send(MailSender mailSender, MailEnvelope envlop) {
         return send(mailSender, envlop, true);
@@ -42,31 +74,53 @@ public class ThreadPoolMailSender {
      * @return
      */
     public static boolean send(MailSender mailSender, List<MailEnvelope> envlops, boolean async) {
-        boolean flag = true;
-        if (async) { // 异步发送
-            for (MailEnvelope envlop : envlops) {
-                EXECUTOR.submit(new Sender(mailSender, envlop));
-            }
-        } else { // 同步发送
-            CompletionService<Boolean> service = new ExecutorCompletionService<>(EXECUTOR);
+        List<Future<Boolean>> futures = new ArrayList<>(envlops.size());
+        LOCK.readLock().lock();
+        try {
             for (MailEnvelope envlop : envlops) {
-                service.submit(new Sender(mailSender, envlop));
+                futures.add(submit(new Sender(mailSender, envlop)));
             }
-            for (int number = envlops.size(); number > 0; number--) {
-                try {
-                    if (!service.take().get()) {
-                        flag = false;
-                    }
-                } catch (InterruptedException | ExecutionException e) {
-                    logger.error("thread pool send mail occur error", e);
+        } finally {
+            LOCK.readLock().unlock();
+        }
+        if (async) { // 异步发送
+            return true;
+        }
+
+        // 同步发送
+        boolean flag = true;
+        for (Future<Boolean> future : futures) {
+            try {
+                if (!future.get()) {
                     flag = false;
                 }
+            } catch (InterruptedException | ExecutionException e) {
+                logger.error("thread pool send mail occur error", e);
+                flag = false;
             }
         }
-
         return flag;
     }
 
+    /**
+     * 提交到当前执行器，执行器已关闭或拒绝时在当前线程发送
+     * @param sender
+     * @return
+     */
+    private static Future<Boolean> submit(Sender sender) {
+        ExecutorService exec = executor;
+        if (!exec.isShutdown()) {
+            try {
+                return exec.submit(sender);
+            } catch (RejectedExecutionException e) {
+                logger.warn("mail sender executor rejected, send in caller thread: {}", e.getMessage());
+            }
+        }
+        FutureTask<Boolean> task = new FutureTask<>(sender);
+        task.run();
+        return task;
+    }
+
     /**
      * 异步发送
      */
@@ -7,7 +7,6 @@ import org.nustaq.serialization.FSTConfiguration;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 
-import code.ponfee.commons.io.GzipProcessor;
 import code.ponfee.commons.reflect.ClassUtils;
 
 /**
@@ -28,7 +27,7 @@ public class FstSerializer extends Serializer {
 
         byte[] data = FST_CFG.get().asByteArray(t);
         if (isCompress) {
-            data = GzipProcessor.compress(data);
+            data = compress(data);
         }
         return data;
     }
@@ -41,7 +40,7 @@ public class FstSerializer extends Serializer {
         }
 
         if (isCompress) {
-            data = GzipProcessor.decompress(data);
+            data = decompress(data);
         }
         T t = (T) FST_CFG.get().asObject(data);
         if (!clazz.isInstance(t)) {
@@ -1,18 +1,18 @@
 package code.ponfee.commons.serial;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.caucho.hessian.io.HessianSerializerInput;
 import com.caucho.hessian.io.HessianSerializerOutput;
 
-import code.ponfee.commons.io.ExtendedGZIPOutputStream;
 import code.ponfee.commons.reflect.ClassUtils;
 
 /**
@@ -25,28 +25,25 @@ public class HessianSerializer extends Serializer {
 
     @Override
     public <T extends Object> byte[] serialize(T t, boolean isCompress) {
+        return serializeWithBuffer(t, isCompress);
+    }
+
+    @Override
+    public <T extends Object> void serialize(T t, boolean isCompress, OutputStream output) {
         if (t == null) {
-            return null;
+            return;
+        }
+        if (isCompress) {
+            serializeCompressed(t, output);
+            return;
         }
 
-        GZIPOutputStream gzout = null;
         HessianSerializerOutput hessian = null;
         try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream(BYTE_SIZE);
-            if (isCompress) {
-                gzout = new ExtendedGZIPOutputStream(baos);
-                hessian = new HessianSerializerOutput(gzout);
-            } else {
-                hessian = new HessianSerializerOutput(baos);
-            }
+            hessian = new HessianSerializerOutput(new CloseShieldOutputStream(output));
             hessian.writeObject(t);
             hessian.close();
             hessian = null;
-            if (gzout != null) {
-                gzout.close();
-                gzout = null;
-            }
-            return baos.toByteArray();
         } catch (IOException e) {
             throw new SerializationException(e);
         } finally {
@@ -55,27 +52,31 @@ public class HessianSerializer extends Serializer {
             } catch (IOException e) {
                 logger.error("close hessian exception", e);
             }
-            close(gzout, "close GZIPOutputStream exception");
         }
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public <T extends Object> T deserialize(byte[] data, Class<T> clazz, boolean isCompress) {
         if (data == null) {
             return null;
         }
 
-        GZIPInputStream gzin = null;
+        if (isCompress) {
+            data = decompress(data);
+        }
+        return deserialize(new ByteArrayInputStream(data), clazz, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends Object> T deserialize(InputStream input, Class<T> clazz, boolean isCompress) {
+        if (isCompress) {
+            return super.deserialize(input, clazz, true);
+        }
+
         HessianSerializerInput hessian = null;
         try {
-            ByteArrayInputStream bais = new ByteArrayInputStream(data);
-            if (isCompress) {
-                gzin = new GZIPInputStream(bais);
-                hessian = new HessianSerializerInput(gzin);
-            } else {
-                hessian = new HessianSerializerInput(bais);
-            }
+            hessian = new HessianSerializerInput(new CloseShieldInputStream(input));
             T t = (T) hessian.readObject();
             if (!clazz.isInstance(t)) {
                 throw new ClassCastException(ClassUtils.getClassName(t.getClass())
@@ -90,7 +91,6 @@ public class HessianSerializer extends Serializer {
             } catch (Exception e) {
                 logger.error("close hessian exception", e);
             }
-            close(gzin, "close GZIPInputStream exception");
         }
     }
 
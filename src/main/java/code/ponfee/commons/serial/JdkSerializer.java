@@ -1,15 +1,16 @@
 package code.ponfee.commons.serial;
 
-import code.ponfee.commons.io.ExtendedGZIPOutputStream;
 import code.ponfee.commons.reflect.ClassUtils;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 
 /**
  * java序例化
@@ -19,57 +20,54 @@ public class JdkSerializer extends Serializer {
 
     @Override
     public <T extends Object> byte[] serialize(T t, boolean isCompress) {
+        return serializeWithBuffer(t, isCompress);
+    }
+
+    @Override
+    public <T extends Object> void serialize(T t, boolean isCompress, OutputStream output) {
         if (t == null) {
-            return null;
+            return;
+        }
+        if (isCompress) {
+            serializeCompressed(t, output);
+            return;
         }
 
-        GZIPOutputStream gzout = null;
         ObjectOutputStream oos = null;
         try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream(BYTE_SIZE);
-            if (isCompress) {
-                gzout = new ExtendedGZIPOutputStream(baos);
-                oos = new ObjectOutputStream(gzout);
-            } else {
-                oos = new ObjectOutputStream(baos);
-            }
+            oos = new ObjectOutputStream(new CloseShieldOutputStream(output));
             oos.writeObject(t);
             oos.close();
             oos = null;
-            if (gzout != null) {
-                gzout.close();
-                gzout = null;
-            }
-            return baos.toByteArray();
         } catch (IOException e) {
             throw new SerializationException(e);
         } finally {
-            // 先打开的后关闭，后打开的先关闭
-            // 看依赖关系，如果流a依赖流b，应该先关闭流a，再关闭流b
-            // 处理流a依赖节点流b，应该先关闭处理流a，再关闭节点流b
             close(oos, "close ObjectOutputStream exception");
-            close(gzout, "close GZIPOutputStream exception");
         }
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public <T extends Object> T deserialize(byte[] data, Class<T> clazz, boolean isCompress) {
         if (data == null || data.length == 0) {
             return null;
         }
 
-        GZIPInputStream gzin = null;
+        if (isCompress) {
+            data = decompress(data);
+        }
+        return deserialize(new ByteArrayInputStream(data), clazz, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends Object> T deserialize(InputStream input, Class<T> clazz, boolean isCompress) {
+        if (isCompress) {
+            return super.deserialize(input, clazz, true);
+        }
+
         ObjectInputStream ois = null;
         try {
-            ByteArrayInputStream bais = new ByteArrayInputStream(data);
-            if (isCompress) {
-                gzin = new GZIPInputStream(bais);
-                ois = new ObjectInputStream(gzin);
-            } else {
-                ois = new ObjectInputStream(bais);
-            }
-
+            ois = new ObjectInputStream(new CloseShieldInputStream(input));
             T t = (T) ois.readObject();
             if (!clazz.isInstance(t)) {
                 throw new ClassCastException(ClassUtils.getClassName(t.getClass())
@@ -80,7 +78,6 @@ public class JdkSerializer extends Serializer {
             throw new SerializationException(e);
         } finally {
             close(ois, "close ObjectInputStream exception");
-            close(gzin, "close GZIPInputStream exception");
         }
     }
 
@@ -1,20 +1,12 @@
 package code.ponfee.commons.serial;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
-
-import org.apache.commons.io.IOUtils;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import code.ponfee.commons.io.ExtendedGZIPOutputStream;
-
 /**
  * json序例化
  * @author fupf
@@ -34,24 +26,11 @@ public class JsonSerializer extends Serializer {
             return null;
         }
 
-        GZIPOutputStream gzout = null;
         try {
             byte[] data = MAPPER.writeValueAsBytes(t);
-            if (isCompress) {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream(BYTE_SIZE);
-                gzout = new ExtendedGZIPOutputStream(baos);
-                gzout.write(data, 0, data.length);
-                gzout.close();
-                gzout = null;
-                data = baos.toByteArray();
-            }
-            return data;
+            return isCompress ? compress(data) : data;
         } catch (JsonProcessingException e) {
             throw new SerializationException(e);
-        } catch (IOException e) {
-            throw new SerializationException(e);
-        } finally {
-            close(gzout, "close GZIPOutputStream exception");
         }
     }
 
@@ -61,17 +40,13 @@ public class JsonSerializer extends Serializer {
             return null;
         }
 
-        GZIPInputStream gzin = null;
         try {
             if (isCompress) {
-                gzin = new GZIPInputStream(new ByteArrayInputStream(data));
-                data =  IOUtils.toByteArray(gzin);
+                data = decompress(data);
             }
             return MAPPER.readValue(data, clazz);
         } catch (IOException e) {
             throw new SerializationException(e);
-        } finally {
-            close(gzin, "close GZIPInputStream exception");
         }
     }
 
@@ -0,0 +1,24 @@
+package code.ponfee.commons.serial;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * kryo类注册，通过{@link KryoSerializer#scanRegistrations(String...)}扫描
+ * <p>注册后序例化数据中以id代替类名，id一经使用不可变更
+ * @author fupf
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface KryoRegistration {
+
+    /**
+     * 注册id，须不小于{@link KryoSerializer#MIN_REGISTRATION_ID}且全局唯一
+     */
+    int value();
+
+}
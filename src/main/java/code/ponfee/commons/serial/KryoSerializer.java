@@ -1,69 +1,128 @@
 package code.ponfee.commons.serial;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
 
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.ByteBufferInput;
-import com.esotericsoftware.kryo.io.ByteBufferOutput;
+import com.esotericsoftware.kryo.KryoException;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.io.UnsafeInput;
+import com.esotericsoftware.kryo.io.UnsafeOutput;
 import com.esotericsoftware.kryo.pool.KryoPool;
+import com.google.common.base.Preconditions;
 
-import code.ponfee.commons.io.ExtendedGZIPOutputStream;
 import code.ponfee.commons.io.Files;
+import code.ponfee.commons.resource.Resource;
+import code.ponfee.commons.resource.ResourceLoaderFacade;
+import code.ponfee.commons.resource.ResourceScanner;
 
 /**
  * kryo序例化
+ * <p>Output/Input缓冲按线程复用，byte[]方式只产生最终结果数组
+ * <p>默认构造器与旧版本格式一致；指定类注册、关闭引用跟踪或使用unsafe I/O时，
+ * 数据以3字节头部标识格式选项，读取无此头部的数据时按旧版本格式解析
  * @author fupf
  */
 public class KryoSerializer extends Serializer {
 
+    /** 注册id的最小值，小于此值的id为kryo内置类型保留 */
+    public static final int MIN_REGISTRATION_ID = 100;
+
+    private static final byte MAGIC0 = (byte) 0xC8, MAGIC1 = (byte) 0x5F;
+    private static final int HEADER_SIZE = 3;
+    private static final int FLAG_PREFIX = 0xA0, FLAG_MASK = 0xF0;
+    private static final int FLAG_UNSAFE = 0x01, FLAG_REFERENCES = 0x02;
+
     private static Logger logger = LoggerFactory.getLogger(KryoSerializer.class);
 
+    private static final ThreadLocal<Output> OUTPUTS = ThreadLocal.withInitial(() -> new Output(Files.BUFF_SIZE));
+    private static final ThreadLocal<Input> INPUTS = ThreadLocal.withInitial(() -> new Input(Files.BUFF_SIZE));
+    private static final ThreadLocal<Output> UNSAFE_OUTPUTS = ThreadLocal.withInitial(() -> new UnsafeOutput(Files.BUFF_SIZE));
+    private static final ThreadLocal<Input> UNSAFE_INPUTS = ThreadLocal.withInitial(() -> new UnsafeInput(Files.BUFF_SIZE));
+
     private final KryoPool kryoPool;
+    private final KryoPool legacyPool; // 旧版本格式，默认模式时与kryoPool相同
+    private final byte[] header; // 默认模式时为null
+    private final boolean unsafe;
 
     public KryoSerializer() {
         this.kryoPool = new KryoPool.Builder(Kryo::new).softReferences().build();
+        this.legacyPool = this.kryoPool;
+        this.header = null;
+        this.unsafe = false;
+    }
+
+    /**
+     * @param registrations 注册的类及id，如{@link #loadRegistrations(String)}、{@link #scanRegistrations(String...)}
+     * @param references    是否开启引用跟踪，对象图中无循环引用与共享引用时可关闭
+     * @param unsafe        是否使用UnsafeOutput/UnsafeInput（本机字节序、定长整数）
+     */
+    public KryoSerializer(Map<Class<?>, Integer> registrations, boolean references, boolean unsafe) {
+        Map<Class<?>, Integer> regs = new LinkedHashMap<>(registrations);
+        Map<Integer, Class<?>> ids = new HashMap<>(regs.size() << 1);
+        for (Entry<Class<?>, Integer> entry : regs.entrySet()) {
+            Integer id = entry.getValue();
+            Preconditions.checkArgument(id != null && id >= MIN_REGISTRATION_ID,
+                                        "kryo registration id must be >= %s: %s", MIN_REGISTRATION_ID, entry);
+            Class<?> exists = ids.put(id, entry.getKey());
+            Preconditions.checkArgument(exists == null, "duplicate kryo registration id %s: %s, %s",
+                                        id, exists, entry.getKey());
+        }
+
+        this.kryoPool = new KryoPool.Builder(() -> {
+            Kryo kryo = new Kryo();
+            kryo.setReferences(references);
+            regs.forEach(kryo::register);
+            return kryo;
+        }).softReferences().build();
+        this.legacyPool = new KryoPool.Builder(Kryo::new).softReferences().build();
+        this.header = new byte[] {
+            MAGIC0, MAGIC1, (byte) (FLAG_PREFIX | (unsafe ? FLAG_UNSAFE : 0) | (references ? FLAG_REFERENCES : 0))
+        };
+        this.unsafe = unsafe;
     }
 
     @Override
     public <T extends Object> byte[] serialize(T t, boolean isCompress) {
+        return serializeWithBuffer(t, isCompress);
+    }
+
+    @Override
+    public <T extends Object> void serialize(T t, boolean isCompress, OutputStream output) {
         if (t == null) {
-            return null;
+            return;
+        }
+        if (isCompress) {
+            serializeCompressed(t, output);
+            return;
         }
 
-        GZIPOutputStream gzout = null;
-        Output output = null;
+        Output out = (unsafe ? UNSAFE_OUTPUTS : OUTPUTS).get();
         Kryo kryo = null;
         try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream(BYTE_SIZE);
-            if (isCompress) {
-                gzout = new ExtendedGZIPOutputStream(baos);
-                output = new ByteBufferOutput(gzout, Files.BUFF_SIZE);
-            } else {
-                output = new ByteBufferOutput(baos, Files.BUFF_SIZE);
-            }
-            (kryo = getKryo()).writeObject(output, t);
-            output.close();
-            output = null;
-            if (gzout != null) {
-                gzout.close();
-                gzout = null;
+            out.setOutputStream(output);
+            if (header != null) {
+                out.writeBytes(header);
             }
-            return baos.toByteArray();
-        } catch (IOException e) {
-            throw new SerializationException(e);
+            (kryo = this.kryoPool.borrow()).writeObject(out, t);
+            out.flush();
         } finally {
-            this.releaseKryo(kryo);
-            close(output, "close Output exception");
-            close(gzout, "close GZIPOutputStream exception");
+            releaseKryo(this.kryoPool, kryo);
+            out.setOutputStream(null);
         }
     }
 
@@ -73,33 +132,123 @@ public class KryoSerializer extends Serializer {
             return null;
         }
 
-        GZIPInputStream gzin = null;
-        Input input = null;
-        Kryo kryo = null;
+        if (isCompress) {
+            data = decompress(data);
+        }
+        if (header == null || !isHeader(data)) {
+            return read(legacyPool, new Input(data), clazz, -1);
+        }
+
+        int flags = data[2];
+        Input input = (flags & FLAG_UNSAFE) != 0
+                      ? new UnsafeInput(data, HEADER_SIZE, data.length - HEADER_SIZE)
+                      : new Input(data, HEADER_SIZE, data.length - HEADER_SIZE);
         try {
-            if (isCompress) {
-                gzin = new GZIPInputStream(new ByteArrayInputStream(data));
-                input = new ByteBufferInput(gzin);
+            return read(kryoPool, input, clazz, flags);
+        } catch (KryoException e) {
+            // 旧版本数据恰好以头部开头
+            try {
+                return read(legacyPool, new Input(data), clazz, -1);
+            } catch (Exception ignored) {
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public <T extends Object> T deserialize(InputStream input, Class<T> clazz, boolean isCompress) {
+        if (isCompress) {
+            return super.deserialize(input, clazz, true);
+        }
+
+        int flags = -1;
+        if (header != null) {
+            byte[] head = new byte[HEADER_SIZE];
+            int n;
+            try {
+                n = IOUtils.read(input, head);
+            } catch (IOException e) {
+                throw new SerializationException(e);
+            }
+            if (n == HEADER_SIZE && isHeader(head)) {
+                flags = head[2];
             } else {
-                input = new ByteBufferInput(data);
+                input = new SequenceInputStream(new ByteArrayInputStream(head, 0, n), input);
             }
-            return (kryo = getKryo()).readObject(input, clazz);
+        }
+
+        Input in = (flags != -1 && (flags & FLAG_UNSAFE) != 0 ? UNSAFE_INPUTS : INPUTS).get();
+        try {
+            in.setInputStream(input);
+            return read(flags == -1 ? legacyPool : kryoPool, in, clazz, flags);
+        } finally {
+            in.setInputStream(null);
+        }
+    }
+
+    // ---------------------------------------------------------------------registrations
+    /**
+     * 从资源文件加载类注册信息，文件为properties格式：类名=id
+     * @param filePath 资源路径，如classpath:kryo-registrations.properties
+     * @return the class and id map
+     */
+    public static Map<Class<?>, Integer> loadRegistrations(String filePath) {
+        Properties properties = new Properties();
+        try (Resource resource = ResourceLoaderFacade.getResource(filePath)) {
+            Preconditions.checkArgument(resource != null, "kryo registrations not found: %s", filePath);
+            properties.load(resource.getStream());
         } catch (IOException e) {
             throw new SerializationException(e);
+        }
+
+        Map<Class<?>, Integer> registrations = new LinkedHashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            try {
+                registrations.put(Class.forName(name.trim()), Integer.parseInt(properties.getProperty(name).trim()));
+            } catch (ClassNotFoundException e) {
+                throw new SerializationException("kryo registration class not found: " + name, e);
+            }
+        }
+        return Collections.unmodifiableMap(registrations);
+    }
+
+    /**
+     * 扫描包下标注了{@link KryoRegistration}的类
+     * @param packages 包名
+     * @return the class and id map
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<Class<?>, Integer> scanRegistrations(String... packages) {
+        Map<Class<?>, Integer> registrations = new LinkedHashMap<>();
+        for (Class<?> type : new ResourceScanner(packages).scan4class(KryoRegistration.class)) {
+            registrations.put(type, type.getAnnotation(KryoRegistration.class).value());
+        }
+        return Collections.unmodifiableMap(registrations);
+    }
+
+    // ---------------------------------------------------------------------private methods
+    private <T> T read(KryoPool pool, Input input, Class<T> clazz, int flags) {
+        Kryo kryo = pool.borrow();
+        boolean references = kryo.getReferences();
+        try {
+            if (flags != -1) {
+                kryo.setReferences((flags & FLAG_REFERENCES) != 0);
+            }
+            return kryo.readObject(input, clazz);
         } finally {
-            this.releaseKryo(kryo);
-            close(input, "close Input exception");
-            close(gzin, "close GZIPInputStream exception");
+            kryo.setReferences(references);
+            releaseKryo(pool, kryo);
         }
     }
 
-    private Kryo getKryo() {
-        return this.kryoPool.borrow();
+    private boolean isHeader(byte[] data) {
+        return data.length >= HEADER_SIZE && data[0] == MAGIC0 && data[1] == MAGIC1
+            && (data[2] & FLAG_MASK) == FLAG_PREFIX;
     }
 
-    private void releaseKryo(Kryo kryo) {
+    private static void releaseKryo(KryoPool pool, Kryo kryo) {
         if (kryo != null) try {
-            this.kryoPool.release(kryo);
+            pool.release(kryo);
         } catch (Throwable t) {
             logger.error("release kryo occur error", t);
         }
@@ -1,25 +1,45 @@
 package code.ponfee.commons.serial;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
 
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import code.ponfee.commons.io.ByteBufferInputStream;
+import code.ponfee.commons.io.ByteBufferOutputStream;
+import code.ponfee.commons.io.Codec;
+import code.ponfee.commons.io.Codecs;
 import code.ponfee.commons.io.GzipProcessor;
 
 /**
  * 序例化抽象类
+ * <p>压缩数据为{@link Codecs}的自描述格式，可读取旧版本的gzip压缩数据
  * @author fupf
  */
 public abstract class Serializer {
 
     static final int BYTE_SIZE = 512;
 
+    /** 超过此大小的线程缓冲使用后不再复用，避免长期占用内存 */
+    static final int MAX_POOLED_SIZE = 1 << 20;
+
+    private static final ThreadLocal<Buffer> BUFFERS = new ThreadLocal<>();
+
     private static Logger logger = LoggerFactory.getLogger(Serializer.class);
 
+    private volatile Codec codec = Codecs.DEFAULT;
+    private volatile int compressThreshold = Codecs.DEFAULT_THRESHOLD;
+
     /**
      * 对象序例化为流数据
      * @param t 对象
@@ -63,6 +83,197 @@ public abstract class Serializer {
         return this.deserialize(data, clazz, true);
     }
 
+    /**
+     * 对象序例化到输出流（不关闭输出流）
+     * <p>默认实现先序例化为byte[]再写入，子类可覆盖为直接写入输出流
+     * @param t 对象
+     * @param isCompress 是否要压缩：true是；false否；
+     * @param output 输出流
+     */
+    public <T extends Object> void serialize(T t, boolean isCompress, OutputStream output) {
+        byte[] data = serialize(t, isCompress);
+        if (data != null) try {
+            output.write(data);
+        } catch (IOException e) {
+            throw new SerializationException(e);
+        }
+    }
+
+    public final <T extends Object> void serialize(T t, OutputStream output) {
+        serialize(t, true, output);
+    }
+
+    /**
+     * 对象序例化到ByteBuffer（从position处写入，容量不足时抛出BufferOverflowException）
+     * @param t 对象
+     * @param isCompress 是否要压缩：true是；false否；
+     * @param buffer 缓冲区
+     * @return 写入的字节数
+     */
+    public final <T extends Object> int serialize(T t, boolean isCompress, ByteBuffer buffer) {
+        int position = buffer.position();
+        serialize(t, isCompress, new ByteBufferOutputStream(buffer));
+        return buffer.position() - position;
+    }
+
+    public final <T extends Object> int serialize(T t, ByteBuffer buffer) {
+        return serialize(t, true, buffer);
+    }
+
+    /**
+     * 输入流反序例化为对象（不关闭输入流）
+     * <p>默认实现先读取为byte[]再反序例化，子类可覆盖为直接读取输入流
+     * @param input 输入流
+     * @param clazz 对象类型
+     * @param isCompress 是否被压缩：true是；false否；
+     * @return 反序例化后的对象
+     */
+    public <T extends Object> T deserialize(InputStream input, Class<T> clazz, boolean isCompress) {
+        try {
+            return deserialize(IOUtils.toByteArray(input), clazz, isCompress);
+        } catch (IOException e) {
+            throw new SerializationException(e);
+        }
+    }
+
+    public final <T extends Object> T deserialize(InputStream input, Class<T> clazz) {
+        return deserialize(input, clazz, true);
+    }
+
+    /**
+     * ByteBuffer剩余数据反序例化为对象，完成后position置为limit
+     * @param buffer 缓冲区
+     * @param clazz 对象类型
+     * @param isCompress 是否被压缩：true是；false否；
+     * @return 反序例化后的对象
+     */
+    public final <T extends Object> T deserialize(ByteBuffer buffer, Class<T> clazz, boolean isCompress) {
+        if (!buffer.hasRemaining()) {
+            return null;
+        }
+
+        T t;
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+            && buffer.limit() == buffer.array().length) {
+            t = deserialize(buffer.array(), clazz, isCompress); // 直接使用底层数组
+        } else {
+            t = deserialize(new ByteBufferInputStream(buffer), clazz, isCompress);
+        }
+        buffer.position(buffer.limit());
+        return t;
+    }
+
+    public final <T extends Object> T deserialize(ByteBuffer buffer, Class<T> clazz) {
+        return deserialize(buffer, clazz, true);
+    }
+
+    /**
+     * 设置压缩编解码器，默认为{@link Codecs#DEFAULT}，
+     * 解压时根据数据头部识别，与此设置无关
+     * @param codec the codec
+     */
+    public void setCodec(Codec codec) {
+        this.codec = Objects.requireNonNull(codec);
+    }
+
+    /**
+     * 设置压缩阈值，序例化后的数据小于此值时不压缩
+     * @param compressThreshold the threshold bytes
+     */
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * 压缩
+     * @param data 原数据
+     * @return 压缩后的数据（自描述格式）
+     */
+    protected final byte[] compress(byte[] data) {
+        return Codecs.compress(codec, compressThreshold, data);
+    }
+
+    /**
+     * 解压缩（兼容旧版本的gzip格式）
+     * @param data 压缩数据
+     * @return 原数据
+     */
+    protected final byte[] decompress(byte[] data) {
+        try {
+            return Codecs.decompress(data);
+        } catch (RuntimeException e) {
+            throw new SerializationException(e);
+        }
+    }
+
+    /**
+     * 通过当前线程复用的缓冲序例化为byte[]，不压缩时只产生最终结果数组一次复制，
+     * 供覆盖了{@link #serialize(Object, boolean, OutputStream)}的子类使用
+     * @param t 对象
+     * @param isCompress 是否要压缩：true是；false否；
+     * @return 序例化后的流数据
+     */
+    protected final <T extends Object> byte[] serializeWithBuffer(T t, boolean isCompress) {
+        if (t == null) {
+            return null;
+        }
+
+        Buffer buffer = borrowBuffer();
+        try {
+            serialize(t, false, buffer);
+            return isCompress 
+                   ? Codecs.compress(codec, compressThreshold, buffer.array(), 0, buffer.size()) 
+                   : buffer.toByteArray();
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * 序例化并压缩后写入输出流，供子类实现{@link #serialize(Object, boolean, OutputStream)}时使用
+     * @param t 对象
+     * @param output 输出流
+     */
+    protected final <T extends Object> void serializeCompressed(T t, OutputStream output) {
+        Buffer buffer = borrowBuffer();
+        try {
+            serialize(t, false, buffer);
+            Codecs.compress(codec, compressThreshold, buffer.array(), 0, buffer.size(), output);
+        } catch (IOException e) {
+            throw new SerializationException(e);
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    private static Buffer borrowBuffer() {
+        // 借出时置空，嵌套调用时新建缓冲
+        Buffer buffer = BUFFERS.get();
+        if (buffer == null) {
+            buffer = new Buffer();
+        } else {
+            BUFFERS.set(null);
+        }
+        return buffer;
+    }
+
+    private static void releaseBuffer(Buffer buffer) {
+        if (buffer.size() <= MAX_POOLED_SIZE) {
+            buffer.reset();
+            BUFFERS.set(buffer);
+        }
+    }
+
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(BYTE_SIZE);
+        }
+
+        byte[] array() {
+            return super.buf;
+        }
+    }
+
     /**
      * 关闭流
      * @param closeable
@@ -3,7 +3,6 @@ package code.ponfee.commons.serial;
 import java.nio.charset.Charset;
 import java.util.HashMap;
 
-import code.ponfee.commons.io.GzipProcessor;
 import code.ponfee.commons.reflect.ClassUtils;
 
 /**
@@ -36,7 +35,7 @@ public class StringSerializer extends Serializer {
         } else if (t instanceof String) {
             byte[] data = ((String) t).getBytes(charset);
             if (isCompress) {
-                data = GzipProcessor.compress(data);
+                data = compress(data);
             }
             return data;
         } else {
@@ -57,7 +56,7 @@ public class StringSerializer extends Serializer {
         }
         byte[] data = str.getBytes(charset);
         if (isCompress) {
-            data = GzipProcessor.compress(data);
+            data = compress(data);
         }
         return data;
     }
@@ -75,7 +74,7 @@ public class StringSerializer extends Serializer {
         }
 
         if (isCompress) {
-            data = GzipProcessor.decompress(data);
+            data = decompress(data);
         }
         return (T) new String(data, charset);
     }
@@ -91,7 +90,7 @@ public class StringSerializer extends Serializer {
             return null;
         }
         if (isCompress) {
-            data = GzipProcessor.decompress(data);
+            data = decompress(data);
         }
         return new String(data, charset);
     }
@@ -1,98 +1,143 @@
 package code.ponfee.commons.util;
 
-import code.ponfee.commons.reflect.Fields;
+import com.google.common.base.Preconditions;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <pre>
  * 0 | 0000000000 0000000000 0000000000 0000000000 0 | 00000 | 00000 | 0000000000 00
  * - | --------------------时间戳--------------------- | -did- | -wid- | -----seq-----
  *  0 ~  0：1位未使用（实际上也可作为long的符号位）
- *  1 ~ 41：41位为毫秒级时间（能到2039-09-07 23:47:35，超过会溢出）
+ *  1 ~ 41：41位为毫秒级时间（能到2085年，超过会溢出）
  * 42 ~ 46：5位datacenterId
  * 47 ~ 51：5位workerId（并不算标识符，实际是为线程标识），
  * 52 ~ 63：12位该毫秒内的当前毫秒内的计数
- * 毫秒内序列 （由datacenter和机器ID作区分），并且效率较高，经测试，snowflake每秒能够产生26万ID左右，完全满足需要。
+ * 毫秒内序列 （由datacenter和机器ID作区分），并且效率较高。
  * </pre>
  *
  * 计算掩码方式：(1<<bits)-1 或 -1L^(-1L<<bits)
  * 基于snowflake算法的ID生成器
  *
+ * <p>时间戳与序列号打包在一个AtomicLong中（时间戳 << sequenceBits | 序列号），
+ * 通过CAS无锁生成；序列号用尽时顺延借用下一毫秒，时钟回拨在容忍毫秒数内时
+ * 继续借用已生成的时间，超过容忍度才抛出异常
+ *
  * @author fupf
  */
 public final class IdWorker {
 
     private static final int MAX_SIZE = Long.toBinaryString(Long.MAX_VALUE).length();
-    private final long twepoch = 1451577600000L; // 起始标记时间点，作为基准
-
-    private final long sequenceBits = (null != null ? 12L : 12L); // sequence值控制在0-4095
-    private final long sequenceMask = (null != null ? -1L ^ (-1L << sequenceBits) : -1L ^ (-1L << sequenceBits)); // 111111111111(4095)
+    private static final long TWEPOCH = 1451577600000L; // 起始标记时间点，作为基准
 
-    private final long workerIdBits = (null != null ? 5L : 5L); // 5位
-    private final long maxWorkerId = (null != null ? -1L ^ (-1L << workerIdBits) : -1L ^ (-1L << workerIdBits)); // 0-31
+    private final int sequenceBits;
+    private final long sequenceMask;
+    private final int timestampShift;
+    private final long timestampMask;
+    private final long maxBackwardMillis; // 可借用未来毫秒数（时钟回拨容忍度）
 
-    private final long datacenterIdBits = (null != null ? 5L : 5L); // 5位
-    private final long maxDatacenterId = (null != null ? -1L ^ (-1L << datacenterIdBits) : -1L ^ (-1L << datacenterIdBits)); // 0-31
+    private final long workerBits; // datacenterId与workerId移位后的值
 
-    private final long timestampShift = (null != null ? sequenceBits + workerIdBits + datacenterIdBits : sequenceBits + workerIdBits + datacenterIdBits); // 左移22位（did5位+wid5位+seq12位）
-    private final long datacenterIdShift = (null != null ? sequenceBits + workerIdBits : sequenceBits + workerIdBits); // 左移17位（wid5位+seq12位）
-    private final long workerIdShift = (null != null ? sequenceBits : sequenceBits); // 左移12位（seq12位）
+    private final AtomicLong state = new AtomicLong(0L); // 时间戳 << sequenceBits | 序列号
 
-    private final long timestampMask = (long) (null != null ? -1L ^ (-1L << (MAX_SIZE - timestampShift)) : -1L ^ (-1L << (MAX_SIZE - timestampShift)));
+    public IdWorker(long workerId, long datacenterId) {
+        this(12, 5, 5, workerId, datacenterId, 0);
+    }
 
-    private long lastTimestamp = -1L; // 时间戳
-    private long datacenterId; // 数据中心id
-    private long workerId; // 工作机器id
-    private long sequence = 0L; // 0，并发控制
+    public IdWorker(long workerId) {
+        this(workerId, 0);
+    }
 
-    public IdWorker(long workerId, long datacenterId) {
+    /**
+     * 自定义位数
+     * @param sequenceBits      序列号位数
+     * @param workerIdBits      workerId位数
+     * @param datacenterIdBits  datacenterId位数
+     * @param workerId          工作机器id
+     * @param datacenterId      数据中心id
+     * @param maxBackwardMillis 可借用的未来毫秒数：序列号用尽或时钟回拨时，
+     *                          在此范围内顺延时间戳而不等待或抛出异常
+     */
+    public IdWorker(int sequenceBits, int workerIdBits, int datacenterIdBits,
+                    long workerId, long datacenterId, long maxBackwardMillis) {
+        Preconditions.checkArgument(sequenceBits > 0 && workerIdBits >= 0 && datacenterIdBits >= 0,
+                                    "bits cannot be negative.");
+        int timestampShift = sequenceBits + workerIdBits + datacenterIdBits;
+        Preconditions.checkArgument(timestampShift < MAX_SIZE - 31, "bits too long, timestamp bits must greater than 31.");
+        Preconditions.checkArgument(maxBackwardMillis >= 0, "max backward millis cannot be negative.");
+
+        long maxWorkerId = -1L ^ (-1L << workerIdBits), maxDatacenterId = -1L ^ (-1L << datacenterIdBits);
         if (workerId > maxWorkerId || workerId < 0) {
             throw new IllegalArgumentException(String.format("worker Id can't be greater than %d or less than 0", maxWorkerId));
         }
         if (datacenterId > maxDatacenterId || datacenterId < 0) {
             throw new IllegalArgumentException(String.format("datacenter Id can't be greater than %d or less than 0", maxDatacenterId));
         }
-        this.workerId = workerId;
-        this.datacenterId = datacenterId;
+
+        this.sequenceBits = sequenceBits;
+        this.sequenceMask = -1L ^ (-1L << sequenceBits);
+        this.timestampShift = timestampShift;
+        this.timestampMask = -1L ^ (-1L << (MAX_SIZE - timestampShift));
+        this.maxBackwardMillis = maxBackwardMillis;
+        this.workerBits = (datacenterId << (sequenceBits + workerIdBits)) | (workerId << sequenceBits);
     }
 
-    public IdWorker(long workerId) {
-        this(workerId, 0);
+    public long nextId() {
+        return toId(reserve(1));
     }
 
-    public synchronized long nextId() {
-        long timestamp = timeGen();
-        if (timestamp < lastTimestamp) {
-            throw new RuntimeException(String.format("Clock moved backwards. Refusing to generate id for %d milliseconds", lastTimestamp - timestamp));
-        }
-        if (lastTimestamp == timestamp) {
-            sequence = (sequence + 1) & sequenceMask;
-            if (sequence == 0) {
-                timestamp = tilNextMillis(lastTimestamp);
-            }
-        } else {
-            sequence = 0L;
+    /**
+     * 一次CAS预留连续的n个序列号
+     * @param n 数量，不能超过(maxBackwardMillis + 1) * 2^sequenceBits
+     * @return n个id，递增
+     */
+    public long[] nextIds(int n) {
+        Preconditions.checkArgument(n > 0 && n <= (maxBackwardMillis + 1) << sequenceBits,
+                                    "n must between 1 and %s.", (maxBackwardMillis + 1) << sequenceBits);
+        long first = reserve(n);
+        long[] ids = new long[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = toId(first + i);
         }
-        lastTimestamp = timestamp;
+        return ids;
+    }
 
-        return (((timestamp - twepoch) << timestampShift) & timestampMask)
-             | (datacenterId << datacenterIdShift)
-             | (workerId << workerIdShift)
-             | sequence;
+    protected long timeGen() {
+        return System.currentTimeMillis();
     }
 
-    protected long tilNextMillis(long lastTimestamp) {
-        long timestamp;
-        do {
-            timestamp = timeGen();
-        } while (timestamp <= lastTimestamp);
-        return timestamp;
+    /**
+     * 预留n个序列号
+     * @param n
+     * @return 预留的第一个状态值
+     */
+    private long reserve(int n) {
+        for (long current, first, last, now; ;) {
+            current = state.get();
+            now = timeGen() - TWEPOCH;
+            if ((current >>> sequenceBits) - now > maxBackwardMillis) {
+                throw new RuntimeException(String.format(
+                    "Clock moved backwards. Refusing to generate id for %d milliseconds",
+                    (current >>> sequenceBits) - now
+                ));
+            }
+
+            first = Math.max(current + 1, now << sequenceBits);
+            last = first + n - 1;
+            if ((last >>> sequenceBits) - now > maxBackwardMillis) {
+                Thread.yield(); // 超出可借用范围，等待下一毫秒
+            } else if (state.compareAndSet(current, last)) {
+                return first;
+            }
+        }
     }
 
-    protected long timeGen() {
-        return System.currentTimeMillis();
+    private long toId(long state) {
+        return (((state >>> sequenceBits) & timestampMask) << timestampShift)
+             | workerBits
+             | (state & sequenceMask);
     }
 
     /**
@@ -100,43 +145,16 @@ public final class IdWorker {
      * 0 | 0000000000 0000000000 0000000000 0000000000 00 | 0000000000 0 | 0000000000
      * - | --------------------－时间戳--------------------－ | -----wid---- | ----seq---
      *   0 ~ 0：1位未使用（实际上也可作为long的符号位）
-     *  1 ~ 42：42位为毫秒级时间（能到2109-05-15 15:35:11，超过会溢出）
+     *  1 ~ 42：42位为毫秒级时间（能到2155年，超过会溢出）
      *    ~   ：0位datacenterId
      * 43 ~ 53：11位workerId（机器ip），
      * 54 ~ 63：10位该毫秒内的当前毫秒内的计数
      * </pre>
-     * 根据IP地址作为workerId
-     * @return
+     * 根据IP地址作为workerId，可借用5毫秒
      */
-    private static @FunctionalInterface interface LocalIPWorker { IdWorker get(); }
-    public static final IdWorker LOCAL_WORKER = ((LocalIPWorker) () -> {
-        long sequenceBits = 10L; // specified 10 bit length
-        long workerIdBits = 11L; // specified 11 bit length
-        long datacenterIdBits = 0L; // specified 0 bit length
-        long timestampShift = sequenceBits + workerIdBits + datacenterIdBits;
-
-        long maxWorkerId = (1L << workerIdBits) - 1; // 2047(max and mask)
-        long workerId = Networks.toLong(Networks.LOCAL_IP) & maxWorkerId;
-
-        IdWorker worker = new IdWorker(0);
-        Fields.put(worker, "sequenceBits", sequenceBits); // 10位
-        Fields.put(worker, "sequenceMask", (1L << sequenceBits) - 1);
-
-        Fields.put(worker, "workerIdBits", workerIdBits); // 11位
-        Fields.put(worker, "maxWorkerId", maxWorkerId);
-
-        Fields.put(worker, "datacenterIdBits", datacenterIdBits); // 0位
-        Fields.put(worker, "maxDatacenterId", (1L << datacenterIdBits) - 1); // 0
-
-        Fields.put(worker, "timestampShift", timestampShift); // 左移21位（did0位+wid11位+seq10位）
-        Fields.put(worker, "datacenterIdShift", sequenceBits + workerIdBits); // 左移21位（wid11位+seq10位）
-        Fields.put(worker, "workerIdShift", sequenceBits); // 左移10位（seq10位）
-
-        Fields.put(worker, "timestampMask", (1L << (MAX_SIZE - timestampShift)) - 1); // 余下的位数为：63-21=42
-
-        Fields.put(worker, "workerId", workerId);
-        return worker;
-    }).get();
+    public static final IdWorker LOCAL_WORKER = new IdWorker(
+        10, 11, 0, Networks.toLong(Networks.LOCAL_IP) & ((1L << 11) - 1), 0, 5
+    );
 
     public static void main(String[] args) {
         final IdWorker idWorker = LOCAL_WORKER;
@@ -0,0 +1,57 @@
+package test.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import code.ponfee.commons.concurrent.AdaptivePoolSizer;
+import code.ponfee.commons.concurrent.MonitoredThreadPoolExecutor;
+import code.ponfee.commons.concurrent.ThreadPoolExecutors;
+
+public class MonitoredThreadPoolExecutorTest {
+
+    @Test
+    public void testSnapshot() throws InterruptedException {
+        MonitoredThreadPoolExecutor executor = ThreadPoolExecutors.createMonitored(0, 2, 60, 0, "monitored-test");
+        for (int i = 0; i < 10; i++) {
+            executor.submit(() -> sleep(20));
+        }
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        MonitoredThreadPoolExecutor.Metrics metrics = executor.snapshot();
+        Assert.assertEquals("monitored-test", metrics.name());
+        Assert.assertEquals(0, metrics.corePoolSize());
+        Assert.assertEquals(2, metrics.maximumPoolSize());
+        Assert.assertEquals(0, metrics.activeCount());
+        Assert.assertEquals(0, metrics.queueSize());
+        Assert.assertEquals(10, metrics.completedTaskCount() + metrics.callerRunCount());
+        Assert.assertEquals(10, metrics.executeLatency().count());
+        Assert.assertTrue(metrics.callerRunCount() > 0); // SynchronousQueue，超过2个线程时调用方执行
+        Assert.assertEquals(metrics.rejectedCount(), metrics.callerRunCount());
+        Assert.assertTrue(metrics.peakActiveCount() >= 2);
+        Assert.assertTrue(metrics.executeLatency().percentileMicros(50) >= 10000);
+    }
+
+    @Test
+    public void testAdaptive() throws InterruptedException {
+        MonitoredThreadPoolExecutor executor = ThreadPoolExecutors.createMonitored(1, 1, 60, 1000, "adaptive-test");
+        AdaptivePoolSizer sizer = new AdaptivePoolSizer(executor, 1, 8, 5, 50);
+        for (int i = 0; i < 200; i++) {
+            executor.execute(() -> sleep(10));
+        }
+        Thread.sleep(500);
+        Assert.assertTrue(executor.getCorePoolSize() > 1);
+        sizer.stop();
+        executor.shutdownNow();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
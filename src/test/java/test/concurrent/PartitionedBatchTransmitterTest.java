@@ -0,0 +1,39 @@
+package test.concurrent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import code.ponfee.commons.concurrent.AsyncBatchTransmitter.OverflowPolicy;
+import code.ponfee.commons.concurrent.PartitionedBatchTransmitter;
+
+public class PartitionedBatchTransmitterTest {
+
+    @Test
+    public void testOrderByKey() throws InterruptedException {
+        Map<Integer, Integer> last = new ConcurrentHashMap<>();
+        AtomicBoolean disorder = new AtomicBoolean();
+        AtomicInteger count = new AtomicInteger();
+        PartitionedBatchTransmitter<int[]> transmitter = new PartitionedBatchTransmitter<>((list, isEnd) -> () -> {
+            for (int[] item : list) {
+                Integer prev = last.put(item[0], item[1]);
+                if (prev != null && prev >= item[1]) {
+                    disorder.set(true);
+                }
+                count.incrementAndGet();
+            }
+        }, item -> item[0], 4, 50, 100, 1024, OverflowPolicy.BLOCK);
+
+        for (int i = 0; i < 100000; i++) {
+            transmitter.put(new int[] { i % 64, i });
+        }
+        transmitter.end();
+        Thread.sleep(500);
+        Assert.assertEquals(100000, count.get());
+        Assert.assertFalse(disorder.get());
+    }
+}
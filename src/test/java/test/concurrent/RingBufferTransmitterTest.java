@@ -0,0 +1,128 @@
+package test.concurrent;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import code.ponfee.commons.concurrent.AsyncBatchTransmitter;
+import code.ponfee.commons.concurrent.AsyncBatchTransmitter.OverflowPolicy;
+
+public class RingBufferTransmitterTest {
+
+    @Test
+    public void testBlock() throws InterruptedException {
+        AtomicLong sum = new AtomicLong();
+        Semaphore processed = new Semaphore(0);
+        CountDownLatch ended = new CountDownLatch(1);
+        AsyncBatchTransmitter<Integer> transmitter = new AsyncBatchTransmitter<>((list, isEnd) -> () -> {
+            for (int i : list) {
+                sum.addAndGet(i);
+            }
+            processed.release(list.size());
+            if (isEnd) {
+                ended.countDown();
+            }
+        }, 100, 500, 1024, OverflowPolicy.BLOCK);
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 100000; j++) {
+                    transmitter.put(1);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        transmitter.put(5); // flush by deadline
+        Assert.assertTrue(processed.tryAcquire(400001, 5, TimeUnit.SECONDS));
+        Assert.assertEquals(400005, sum.get());
+
+        transmitter.put(7);
+        transmitter.end();
+        Assert.assertTrue(ended.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(processed.tryAcquire(1, 5, TimeUnit.SECONDS));
+        Assert.assertEquals(400012, sum.get());
+        Assert.assertFalse(transmitter.put(1));
+    }
+
+    @Test
+    public void testConcurrentPutAndEnd() throws InterruptedException {
+        for (int round = 0; round < 20; round++) {
+            AtomicLong accepted = new AtomicLong();
+            Semaphore processed = new Semaphore(0);
+            CountDownLatch started = new CountDownLatch(4);
+            AsyncBatchTransmitter<Integer> transmitter = new AsyncBatchTransmitter<>(
+                (list, isEnd) -> () -> processed.release(list.size()), 10, 64, 64, OverflowPolicy.BLOCK
+            );
+
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(() -> {
+                    started.countDown();
+                    while (transmitter.put(1)) {
+                        accepted.incrementAndGet();
+                    }
+                });
+                threads[i].start();
+            }
+            started.await();
+            transmitter.end();
+
+            for (Thread thread : threads) {
+                thread.join(5000);
+                Assert.assertFalse("producer blocked after end", thread.isAlive());
+            }
+            // put返回true的数据都须被消费
+            Assert.assertTrue(processed.tryAcquire((int) accepted.get(), 5, TimeUnit.SECONDS));
+            Assert.assertEquals(0, processed.availablePermits());
+        }
+    }
+
+    @Test
+    public void testRejectedAndTaskError() throws InterruptedException {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<>(), new ThreadPoolExecutor.AbortPolicy()
+        );
+        executor.shutdown(); // 拒绝所有任务
+        Semaphore processed = new Semaphore(0);
+        AsyncBatchTransmitter<Integer> transmitter = new AsyncBatchTransmitter<>((list, isEnd) -> () -> {
+            processed.release(list.size());
+            throw new IllegalStateException("task failed");
+        }, 10, 1, 2, OverflowPolicy.BLOCK, executor);
+
+        // 拒绝时在消费线程中执行，任务异常不会使消费线程退出
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(transmitter.put(i));
+        }
+        Assert.assertTrue(processed.tryAcquire(100, 5, TimeUnit.SECONDS));
+        transmitter.end();
+    }
+
+    @Test
+    public void testDrop() {
+        AsyncBatchTransmitter<Integer> transmitter = new AsyncBatchTransmitter<>((list, isEnd) -> () -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+        }, 1000, 1, 1, OverflowPolicy.DROP, null);
+        int dropped = 0;
+        for (int i = 0; i < 100; i++) {
+            if (!transmitter.put(i)) {
+                dropped++;
+            }
+        }
+        Assert.assertTrue(dropped > 0);
+        transmitter.end();
+    }
+}
@@ -0,0 +1,86 @@
+package test.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import code.ponfee.commons.export.CsvExporter;
+import code.ponfee.commons.export.Table;
+import code.ponfee.commons.export.Thead;
+import code.ponfee.commons.export.Tmeta;
+import code.ponfee.commons.export.Tmeta.Align;
+import code.ponfee.commons.export.Tmeta.Type;
+
+public class CsvExporterTest {
+
+    @Test
+    public void testEscapeAndFormat() {
+        List<Thead> thead = new ArrayList<>();
+        thead.add(new Thead("name", 1, 0));
+        thead.add(new Thead("amount", 2, 0, new Tmeta(Type.NUMERIC, "#,##0.00", Align.RIGHT, false, null)));
+        thead.add(new Thead("date", 3, 0, new Tmeta(Type.DATETIME, "yyyy-MM-dd", Align.LEFT, false, null)));
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2018, Calendar.MARCH, 5);
+
+        Table table = new Table(thead);
+        List<Object[]> tbody = new ArrayList<>();
+        tbody.add(new Object[] { "a,b", new BigDecimal("1234.5"), calendar.getTime() });
+        tbody.add(new Object[] { "say \"hi\"\r\nbye", null, "2018-01-01" });
+        table.setTobdy(tbody);
+
+        CsvExporter csv = new CsvExporter();
+        csv.build(table);
+        assertEquals("name,amount,date\r\n"
+                   + "\"a,b\",\"1,234.50\",2018-03-05\r\n"
+                   + "\"say \"\"hi\"\"\r\nbye\",,2018-01-01\r\n", csv.export());
+        csv.close();
+    }
+
+    @Test
+    public void testStreamWriter() {
+        StringWriter out = new StringWriter();
+        CsvExporter csv = new CsvExporter(out, ';');
+        Table table = new Table("a,b".split(","));
+        // 超出字符缓冲区大小
+        csv.build(table, IntStream.range(0, 5000).mapToObj(i -> new Object[] { i, "x;" + i }).iterator());
+        csv.build(new Table("c".split(",")), (Iterator<Object[]>) null);
+        assertNull(csv.export());
+        csv.close();
+
+        String[] lines = out.toString().split("\r\n", -1);
+        assertEquals("a;b", lines[0]);
+        assertEquals("4999;\"x;4999\"", lines[5000]);
+        assertEquals("", lines[5001]);
+        assertEquals("c", lines[5002]);
+        assertEquals(CsvExporter.NO_RESULT_TIP, lines[5003]);
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CsvExporter csv = new CsvExporter(out, StandardCharsets.UTF_8, ',', true);
+        csv.build(new Table("中文".split(",")), IntStream.range(0, 3).mapToObj(i -> new Object[] { i }));
+        csv.close();
+
+        String text = IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())), StandardCharsets.UTF_8);
+        assertEquals("中文\r\n0\r\n1\r\n2\r\n", text);
+    }
+
+}
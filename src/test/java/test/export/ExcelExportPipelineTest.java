@@ -0,0 +1,165 @@
+package test.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import code.ponfee.commons.export.ExcelExportPipeline;
+import code.ponfee.commons.export.ExcelExporter;
+import code.ponfee.commons.export.Table;
+
+public class ExcelExportPipelineTest {
+
+    private static Supplier<Iterator<Object[]>> slowQuery(String prefix, int rows, long sleepMillis) {
+        return () -> {
+            try {
+                Thread.sleep(sleepMillis); // 模拟慢查询
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return IntStream.range(0, rows).mapToObj(i -> new Object[] { prefix + i, i }).iterator();
+        };
+    }
+
+    @Test
+    public void testParallel() throws IOException {
+        ExcelExporter excel = new ExcelExporter();
+        AtomicLong written = new AtomicLong();
+        AtomicInteger finished = new AtomicInteger();
+
+        long start = System.currentTimeMillis();
+        new ExcelExportPipeline(excel, 100, 4)
+            .add("s1", new Table("a,b".split(",")), slowQuery("x", 1000, 500))
+            .add("s2", new Table("a,b".split(",")), slowQuery("y", 2000, 500))
+            .add("s3", new Table("a,b".split(",")), slowQuery("z", 0, 500))
+            .add("s4", new Table("a,b".split(",")), slowQuery("w", 500, 500))
+            .setListener(new ExcelExportPipeline.Listener() {
+                @Override
+                public void onRowsWritten(String name, int sheetRows, long totalRows) {
+                    written.set(totalRows);
+                }
+
+                @Override
+                public void onSheetFinished(String name, int sheetRows, int finishedSheets, int totalSheets) {
+                    assertEquals(4, totalSheets);
+                    finished.set(finishedSheets);
+                }
+            })
+            .execute();
+        long cost = System.currentTimeMillis() - start;
+        assertTrue("cost: " + cost, cost < 1500); // 串行需2000ms以上
+        assertEquals(3500, written.get());
+        assertEquals(4, finished.get());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        excel.write(out);
+        excel.close();
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals("s1", workbook.getSheetName(0));
+            assertEquals("s4", workbook.getSheetName(3));
+            XSSFSheet sheet = workbook.getSheet("s2");
+            assertEquals("y0", sheet.getRow(2).getCell(0).getStringCellValue());
+            assertEquals("y1999", sheet.getRow(2001).getCell(0).getStringCellValue());
+            assertEquals(ExcelExporter.NO_RESULT_TIP, workbook.getSheet("s3").getRow(2).getCell(0).getStringCellValue());
+        }
+    }
+
+    @Test
+    public void testProducerError() {
+        ExcelExporter excel = new ExcelExporter();
+        try {
+            new ExcelExportPipeline(excel, 10, 1)
+                .add("ok", new Table("a,b".split(",")), slowQuery("x", 100000, 0))
+                .add("bad", new Table("a,b".split(",")), () -> {
+                    throw new IllegalStateException("query failed");
+                })
+                .execute();
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals("export sheet failed: bad", e.getMessage());
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        } finally {
+            excel.close();
+        }
+    }
+
+    @Test
+    public void testSameThreadExecutor() {
+        ExcelExporter excel = new ExcelExporter();
+        try {
+            new ExcelExportPipeline(excel, 10, 1)
+                .add("s1", new Table("a,b".split(",")), slowQuery("x", 1000, 0))
+                .execute(Runnable::run); // 在写线程中执行生产者会死锁
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("producer cannot run in the writer thread.", e.getMessage());
+        } finally {
+            excel.close();
+        }
+    }
+
+    @Test
+    public void testCloseIteratorOnAbort() throws InterruptedException {
+        CountDownLatch closed = new CountDownLatch(1);
+        ExcelExporter excel = new ExcelExporter();
+        try {
+            new ExcelExportPipeline(excel, 10, 1)
+                .add("s1", new Table("a,b".split(",")), () -> new CloseableIterator(100000, closed))
+                .setListener(new ExcelExportPipeline.Listener() {
+                    @Override
+                    public void onRowsWritten(String name, int sheetRows, long totalRows) {
+                        throw new IllegalStateException("write failed");
+                    }
+                })
+                .execute();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("write failed", e.getMessage());
+        } finally {
+            excel.close();
+        }
+        assertTrue(closed.await(5, TimeUnit.SECONDS)); // 写线程失败后生产者退出并关闭数据源
+    }
+
+    private static final class CloseableIterator implements Iterator<Object[]>, AutoCloseable {
+        final int rows;
+        final CountDownLatch closed;
+        int i = 0;
+
+        CloseableIterator(int rows, CountDownLatch closed) {
+            this.rows = rows;
+            this.closed = closed;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return i < rows;
+        }
+
+        @Override
+        public Object[] next() {
+            return new Object[] { "x" + i, i++ };
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package test.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.stream.IntStream;
+
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import code.ponfee.commons.export.ExcelExporter;
+import code.ponfee.commons.export.Table;
+
+public class ExcelStreamExportTest {
+
+    @Test
+    public void testRollover() throws IOException {
+        ExcelExporter excel = new ExcelExporter(10, true).setMaxRowsPerSheet(10);
+        Table table = new Table("a,b,c".split(","));
+        table.setCaption("title");
+        table.setTfoot(new Object[] { "x", "y" });
+
+        // 标题1行 + 表头1行，每个工作簿8行数据
+        excel.setName("report");
+        excel.build(table, IntStream.range(0, 25).mapToObj(i -> new Object[] { "r" + i, i, i * 2 }));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        excel.write(out);
+        excel.close();
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(4, workbook.getNumberOfSheets());
+            String[] names = { "report", "report(2)", "report(3)", "report(4)" };
+            for (int i = 0; i < names.length; i++) {
+                XSSFSheet sheet = workbook.getSheet(names[i]);
+                assertEquals("title", sheet.getRow(0).getCell(0).getStringCellValue());
+                assertEquals("a", sheet.getRow(1).getCell(0).getStringCellValue());
+                assertEquals("r" + (i * 8), sheet.getRow(2).getCell(0).getStringCellValue());
+            }
+            XSSFSheet last = workbook.getSheet("report(4)");
+            assertEquals("r24", last.getRow(2).getCell(0).getStringCellValue());
+            assertEquals("合计", last.getRow(3).getCell(0).getStringCellValue());
+            assertEquals(3, last.getLastRowNum());
+            assertNull(workbook.getSheet("report").getRow(10));
+        }
+    }
+
+    @Test
+    public void testAppendAfterRollover() throws IOException {
+        ExcelExporter excel = new ExcelExporter().setMaxRowsPerSheet(12);
+        Table table = new Table("a,b".split(","));
+        table.setCaption("title");
+
+        excel.setName("s");
+        excel.build(table, IntStream.range(0, 20).mapToObj(i -> new Object[] { i, i }).iterator());
+        // 续写到最后一个工作簿：s(2)已满，剩余行数不足以构建表头，续写到s(3)
+        excel.build(table, IntStream.range(0, 1).mapToObj(i -> new Object[] { "z", "z" }));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        excel.write(out);
+        excel.close();
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(3, workbook.getNumberOfSheets());
+            assertEquals(11, workbook.getSheet("s(2)").getLastRowNum());
+            XSSFSheet sheet = workbook.getSheet("s(3)");
+            assertEquals("title", sheet.getRow(0).getCell(0).getStringCellValue());
+            assertEquals("z", sheet.getRow(2).getCell(0).getStringCellValue());
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package test.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import code.ponfee.commons.export.CellStyleOptions;
+import code.ponfee.commons.export.ExcelExporter;
+import code.ponfee.commons.export.Table;
+import code.ponfee.commons.export.Thead;
+import code.ponfee.commons.export.Tmeta;
+import code.ponfee.commons.export.Tmeta.Align;
+import code.ponfee.commons.export.Tmeta.Type;
+
+public class ExcelStyleTest {
+
+    @Test
+    public void testHighlightStyleReuse() throws IOException {
+        List<Thead> thead = new ArrayList<>();
+        thead.add(new Thead("a", 1, 0, new Tmeta(Type.NUMERIC, "#,##0.00", Align.RIGHT, false, "#0000ff")));
+        thead.add(new Thead("b", 2, 0));
+        thead.add(new Thead("c", 3, 0));
+
+        // 高亮全部单元格
+        List<List<Integer>> cells = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            for (int j = 0; j < 3; j++) {
+                cells.add(Lists.newArrayList(i, j));
+            }
+        }
+        Map<CellStyleOptions, Object> options = ImmutableMap.of(
+            CellStyleOptions.HIGHLIGHT, ImmutableMap.of("cells", cells, "color", "#ff0000")
+        );
+
+        ExcelExporter excel = new ExcelExporter();
+        for (int n = 0; n < 3; n++) {
+            Table table = new Table(thead);
+            table.setOptions(options);
+            excel.setName("s" + n);
+            excel.build(table, IntStream.range(0, 20000).mapToObj(i -> new Object[] { i, "b", "c" }));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        excel.write(out);
+        excel.close();
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            assertTrue(workbook.getNumCellStyles() < 20);
+            XSSFSheet sheet = workbook.getSheet("s2");
+            XSSFCell numeric = sheet.getRow(2).getCell(0), text = sheet.getRow(2).getCell(1);
+            assertEquals("FFFF0000", numeric.getCellStyle().getFont().getXSSFColor().getARGBHex());
+            assertEquals("#,##0.00", numeric.getCellStyle().getDataFormatString());
+            assertNotEquals(numeric.getCellStyle().getIndex(), text.getCellStyle().getIndex());
+            assertEquals(text.getCellStyle().getIndex(), sheet.getRow(20001).getCell(2).getCellStyle().getIndex());
+        }
+    }
+
+}
@@ -3,12 +3,17 @@ package test.jedis;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 
 import javax.annotation.Resource;
 
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -120,6 +125,78 @@ public class JedisLockTester {
         System.out.println("=========================END========================\n");
     }
 
+    @Test
+    public void testReentrantAndWatchdog() throws InterruptedException, ExecutionException {
+        JedisLock lock = new JedisLock(jedisClient, "testLock4", 1, 9, true);
+        lock.lock();
+        try {
+            Assert.assertTrue(lock.tryLock());
+            Assert.assertEquals(2, lock.getHoldCount());
+            lock.unlock();
+            Thread.sleep(2500); // 超过锁超时时间，watchdog续期
+            Assert.assertTrue(lock.isHeldByCurrentThread());
+
+            Assert.assertFalse(runInOtherThread(lock::tryLock));
+        } finally {
+            lock.unlock();
+        }
+        Assert.assertFalse(lock.isLocked());
+
+        // 释放通知唤醒等待线程
+        lock.lock();
+        long[] waited = new long[1];
+        FutureTask<Boolean> waiter = new FutureTask<>(() -> {
+            long start = System.currentTimeMillis();
+            boolean acquired = lock.tryLock(10, TimeUnit.SECONDS);
+            if (acquired) {
+                lock.unlock();
+            }
+            waited[0] = System.currentTimeMillis() - start;
+            return acquired;
+        });
+        new Thread(waiter).start();
+        Thread.sleep(200);
+        lock.unlock();
+        Assert.assertTrue(waiter.get());
+        Assert.assertTrue(waited[0] < 1000);
+    }
+
+    @Test
+    public void testReentrantAfterExpired() throws InterruptedException, ExecutionException {
+        JedisLock lock = new JedisLock(jedisClient, "testLock5", 1);
+
+        // 锁过期且未被他人获取：重入时重新获取，保留外层的重入次数
+        lock.lock();
+        Thread.sleep(1500);
+        Assert.assertFalse(lock.isLocked());
+        Assert.assertTrue(lock.tryLock());
+        Assert.assertEquals(2, lock.getHoldCount());
+        Assert.assertTrue(lock.isHeldByCurrentThread());
+        Assert.assertFalse(runInOtherThread(lock::tryLock));
+        lock.unlock();
+        lock.unlock();
+        Assert.assertFalse(lock.isLocked());
+
+        // 锁过期后被他人获取：重入失败
+        lock.lock();
+        Thread.sleep(1500);
+        Assert.assertTrue(runInOtherThread(lock::tryLock)); // 不释放，等待过期
+        Assert.assertFalse(lock.tryLock());
+        Assert.assertEquals(0, lock.getHoldCount());
+        Assert.assertFalse(lock.isHeldByCurrentThread());
+        lock.unlock(); // 未持有，不影响他人的锁
+        Assert.assertTrue(lock.isLocked());
+    }
+
+    private static <T> T runInOtherThread(Callable<T> callable) 
+        throws InterruptedException, ExecutionException {
+        FutureTask<T> task = new FutureTask<>(callable);
+        Thread thread = new Thread(task);
+        thread.start();
+        thread.join();
+        return task.get();
+    }
+
     private static class Printer {
         private final Lock lock;
 
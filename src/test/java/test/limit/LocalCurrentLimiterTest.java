@@ -0,0 +1,35 @@
+package test.limit;
+
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import code.ponfee.commons.limit.LocalCurrentLimiter;
+
+public class LocalCurrentLimiterTest {
+
+    @Test
+    public void testCheckpoint() {
+        LocalCurrentLimiter limiter = new LocalCurrentLimiter();
+        limiter.setRequestThreshold("abc", 10);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(limiter.checkpoint("abc"));
+        }
+        Assert.assertFalse(limiter.checkpoint("abc"));
+
+        long now = System.currentTimeMillis();
+        Assert.assertEquals(10, limiter.countByRange("abc", new Date(now - 60000), new Date(now + 1000)));
+        Assert.assertEquals(0, limiter.countByRange("xyz", new Date(now - 60000), new Date(now)));
+        limiter.destory();
+    }
+
+    @Test
+    public void testThreshold() {
+        LocalCurrentLimiter limiter = new LocalCurrentLimiter();
+        Assert.assertEquals(-1, limiter.getRequestThreshold("abc"));
+        Assert.assertTrue(limiter.checkpoint("abc")); // 无限制
+        Assert.assertFalse(limiter.checkpoint("abc", 0)); // 禁止访问
+        limiter.destory();
+    }
+}
@@ -0,0 +1,72 @@
+package test.loadbalance;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import code.ponfee.commons.loadbalance.AbstractActiveLoadBalance.Lease;
+import code.ponfee.commons.loadbalance.LeastActiveLoadBalance;
+import code.ponfee.commons.loadbalance.P2cEwmaLoadBalance;
+
+public class ActiveLoadBalanceTest {
+
+    @Test
+    public void testLeastActive() {
+        Map<String, Integer> servers = new LinkedHashMap<>();
+        servers.put("a", 1);
+        servers.put("b", 2);
+        servers.put("c", 0);
+        LeastActiveLoadBalance lb = new LeastActiveLoadBalance(servers);
+
+        Lease[] leases = new Lease[6];
+        for (int i = 0; i < leases.length; i++) {
+            leases[i] = lb.acquire();
+        }
+        Assert.assertEquals(2, lb.active("a"));
+        Assert.assertEquals(4, lb.active("b"));
+        Assert.assertEquals(-1, lb.active("c"));
+
+        for (Lease lease : leases) {
+            if ("b".equals(lease.server())) {
+                lease.release();
+                lease.release(); // 重复释放无效
+            }
+        }
+        Assert.assertEquals(0, lb.active("b"));
+        Assert.assertEquals("b", lb.select());
+    }
+
+    @Test
+    public void testP2cEwma() {
+        Map<String, Integer> servers = new LinkedHashMap<>();
+        servers.put("fast", 1);
+        servers.put("slow", 1);
+        P2cEwmaLoadBalance lb = new P2cEwmaLoadBalance(servers, TimeUnit.MILLISECONDS.toNanos(1));
+
+        for (int i = 0; i < 10; i++) {
+            try (Lease lease = lb.acquire()) {
+                sleep("slow".equals(lease.server()) ? 5 : 1);
+            }
+        }
+        Assert.assertTrue(lb.latency("slow") == 0 || lb.latency("slow") > lb.latency("fast"));
+
+        int slow = 0;
+        for (int i = 0; i < 1000; i++) {
+            if ("slow".equals(lb.select())) {
+                slow++;
+            }
+        }
+        Assert.assertTrue(slow < 100);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
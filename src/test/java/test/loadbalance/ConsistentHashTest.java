@@ -0,0 +1,68 @@
+package test.loadbalance;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.hash.Hashing;
+
+import code.ponfee.commons.loadbalance.AbstractActiveLoadBalance.Lease;
+import code.ponfee.commons.loadbalance.ConsistentHashLoadBalance;
+import code.ponfee.commons.loadbalance.ConsistentHashRing;
+
+public class ConsistentHashTest {
+
+    @Test
+    public void testMurmur3() {
+        for (int i = 0; i < 100; i++) {
+            String str = "key-" + i + "-abcdefghijklmnopq".substring(i % 17);
+            Assert.assertEquals(Hashing.murmur3_128().hashString(str, UTF_8).asLong(),
+                                ConsistentHashRing.hash(str));
+        }
+    }
+
+    @Test
+    public void testRemap() {
+        Map<String, Integer> servers = new LinkedHashMap<>();
+        for (int i = 0; i < 10; i++) {
+            servers.put("10.0.0." + i, 1);
+        }
+        ConsistentHashRing<String> before = new ConsistentHashRing<>(servers, 160);
+        servers.put("10.0.0.10", 1);
+        ConsistentHashRing<String> after = new ConsistentHashRing<>(servers, 160);
+
+        int moved = 0, n = 100000;
+        for (int i = 0; i < n; i++) {
+            String from = before.get("client-" + i), to = after.get("client-" + i);
+            if (!from.equals(to)) {
+                moved++;
+                Assert.assertEquals("10.0.0.10", to); // 只迁移到新节点
+            }
+        }
+        Assert.assertEquals(1.0 / 11, (double) moved / n, 0.03);
+    }
+
+    @Test
+    public void testBoundedLoads() {
+        Map<String, Integer> servers = new LinkedHashMap<>();
+        for (int i = 0; i < 4; i++) {
+            servers.put("10.0.0." + i, 1);
+        }
+        ConsistentHashLoadBalance lb = new ConsistentHashLoadBalance(servers, 160, 0.25);
+        Lease[] leases = new Lease[100];
+        for (int i = 0; i < leases.length; i++) {
+            leases[i] = lb.acquire("hot-key"); // 同一个key
+        }
+        for (String server : servers.keySet()) {
+            Assert.assertTrue(lb.active(server) <= Math.ceil(1.25 * 100 / 4));
+        }
+        for (Lease lease : leases) {
+            lease.release();
+        }
+        Assert.assertEquals(lb.select("hot-key"), lb.acquire("hot-key").server());
+    }
+}
@@ -0,0 +1,102 @@
+package test.loadbalance;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import code.ponfee.commons.loadbalance.AbstractWeightLoadBalance;
+import code.ponfee.commons.loadbalance.WeightRandomLoadBalance;
+import code.ponfee.commons.loadbalance.WeightRoundRobinLoadBalance;
+
+public class WeightLoadBalanceTest {
+
+    @Test
+    public void testSmoothRoundRobin() {
+        Map<String, Integer> servers = new LinkedHashMap<>();
+        servers.put("a", 5);
+        servers.put("b", 1);
+        servers.put("c", 1);
+        WeightRoundRobinLoadBalance lb = new WeightRoundRobinLoadBalance(servers);
+        StringBuilder seq = new StringBuilder();
+        for (int i = 0; i < 7; i++) {
+            seq.append(lb.select());
+        }
+        Assert.assertEquals("aabacaa", seq.toString()); // nginx smooth sequence
+
+        lb.markDown("a");
+        Map<String, Integer> counts = count(lb, 100);
+        Assert.assertNull(counts.get("a"));
+        Assert.assertEquals(50, counts.get("b").intValue());
+
+        lb.markUp("a");
+        lb.updateWeight("c", 3);
+        counts = count(lb, 900);
+        Assert.assertEquals(500, counts.get("a").intValue());
+        Assert.assertEquals(300, counts.get("c").intValue());
+    }
+
+    @Test
+    public void testRoundRobinConcurrent() throws InterruptedException {
+        Map<String, Integer> servers = new LinkedHashMap<>();
+        servers.put("a", 50);
+        servers.put("b", 10);
+        servers.put("c", 30);
+        WeightRoundRobinLoadBalance lb = new WeightRoundRobinLoadBalance(servers);
+        Map<String, Integer> counts = new ConcurrentHashMap<>();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 9000; j++) {
+                    counts.merge(lb.select(), 1, Integer::sum);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(20000, counts.get("a").intValue());
+        Assert.assertEquals(4000, counts.get("b").intValue());
+        Assert.assertEquals(12000, counts.get("c").intValue());
+    }
+
+    @Test
+    public void testRoundRobinLongPeriod() {
+        Map<String, Integer> servers = new LinkedHashMap<>();
+        servers.put("a", 100003); // 周期超过预计算序列的长度
+        servers.put("b", 1);
+        WeightRoundRobinLoadBalance lb = new WeightRoundRobinLoadBalance(servers);
+        Map<String, Integer> counts = count(lb, 100004);
+        Assert.assertEquals(100003, counts.get("a").intValue());
+        Assert.assertEquals(1, counts.get("b").intValue());
+    }
+
+    @Test
+    public void testAliasRandom() {
+        Map<String, Integer> servers = new LinkedHashMap<>();
+        servers.put("a", 1);
+        servers.put("b", 3);
+        servers.put("c", 0);
+        WeightRandomLoadBalance lb = new WeightRandomLoadBalance(servers);
+        Map<String, Integer> counts = count(lb, 100000);
+        Assert.assertNull(counts.get("c"));
+        Assert.assertEquals(0.75, counts.get("b") / 100000D, 0.02);
+
+        lb.markDown("b");
+        Assert.assertEquals(1000, count(lb, 1000).get("a").intValue());
+        lb.markDown("a");
+        Assert.assertNull(lb.select());
+    }
+
+    private static Map<String, Integer> count(AbstractWeightLoadBalance lb, int times) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < times; i++) {
+            counts.merge(lb.select(), 1, Integer::sum);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,141 @@
+package test.serial;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+
+import code.ponfee.commons.io.Codec;
+import code.ponfee.commons.io.Codecs;
+import code.ponfee.commons.io.GzipProcessor;
+import code.ponfee.commons.io.Lz4Codec;
+import code.ponfee.commons.serial.KryoSerializer;
+import code.ponfee.commons.serial.Serializer;
+
+/**
+ * @author Ponfee
+ */
+public class CodecsTest {
+
+    private final Random random = new Random(17);
+
+    @Test
+    public void testRoundTrip() {
+        for (Codec codec : new Codec[] { Codecs.LZ4, Codecs.DEFLATE, Codecs.GZIP, Codecs.SNAPPY, Codecs.ZSTD }) {
+            for (int len : new int[] { 0, 1, 12, 13, 64, 1000, 65536, 70000, 300000 }) {
+                for (byte[] data : new byte[][] { text(len), random(len), repeat(len) }) {
+                    byte[] compressed = Codecs.compress(codec, 0, data);
+                    assertArrayEquals(codec.name() + ":" + len, data, Codecs.decompress(compressed));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLz4Offset() {
+        byte[] data = text(5000);
+        byte[] compressed = Lz4Codec.INSTANCE.compress(data, 100, 4000);
+        assertTrue(compressed.length < 4000);
+        assertArrayEquals(Arrays.copyOfRange(data, 100, 4100),
+                          Lz4Codec.INSTANCE.decompress(compressed, 0, compressed.length, 4000));
+    }
+
+    @Test
+    public void testThreshold() {
+        byte[] data = text(100);
+        byte[] compressed = Codecs.compress(Codecs.LZ4, 512, data);
+        assertEquals(data.length + Codecs.HEADER_SIZE, compressed.length);
+        assertArrayEquals(data, Codecs.decompress(compressed));
+
+        // 不可压缩的数据原样存储
+        data = random(4096);
+        assertEquals(data.length + Codecs.HEADER_SIZE, Codecs.compress(Codecs.LZ4, 0, data).length);
+    }
+
+    @Test
+    public void testLegacyGzip() {
+        byte[] data = text(2000);
+        assertArrayEquals(data, Codecs.decompress(GzipProcessor.compress(data)));
+        // GZIP输出旧版本格式
+        assertArrayEquals(data, GzipProcessor.decompress(Codecs.compress(Codecs.GZIP, 512, data)));
+    }
+
+    @Test
+    public void testMalformed() {
+        byte[] compressed = Codecs.compress(Codecs.LZ4, 0, text(3000));
+        for (int i = Codecs.HEADER_SIZE; i < compressed.length; i += 7) {
+            byte[] bad = compressed.clone();
+            bad[i] ^= 0x5A;
+            try {
+                Codecs.decompress(bad);
+            } catch (IllegalArgumentException ignored) {
+                // expected, or decoded to different bytes
+            }
+        }
+        try {
+            Codecs.decompress(new byte[] { 1, 2, 3, 4, 5, 6, 7 });
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void testSerializerCompatible() {
+        // 旧版本kryo + gzip的数据
+        String value = new String(text(3000), StandardCharsets.UTF_8);
+        Output output = new Output(4096, -1);
+        new Kryo().writeObject(output, value);
+        byte[] legacy = GzipProcessor.compress(output.toBytes());
+
+        Serializer serializer = new KryoSerializer();
+        assertEquals(value, serializer.deserialize(legacy, String.class));
+
+        byte[] data = serializer.serialize(value);
+        assertTrue(data.length < output.toBytes().length);
+        assertEquals(value, serializer.deserialize(data, String.class));
+
+        serializer.setCodec(Codecs.DEFLATE);
+        assertEquals(value, serializer.deserialize(serializer.serialize(value), String.class));
+        serializer.setCodec(Codecs.GZIP);
+        assertArrayEquals(output.toBytes(), GzipProcessor.decompress(serializer.serialize(value)));
+    }
+
+    @Test
+    public void testFallback() {
+        assertSame(Codecs.LZ4, Codecs.get(Codecs.LZ4.id()));
+        assertSame(Codecs.SNAPPY, Codecs.get(Codecs.SNAPPY.id()));
+        assertSame(Codecs.ZSTD, Codecs.get(Codecs.ZSTD.id()));
+    }
+
+    private byte[] text(int len) {
+        String[] words = { "redis", "cache", "value", "serializer", "kryo", "hessian", "json", " ", ",", "\n" };
+        StringBuilder builder = new StringBuilder(len + 16);
+        while (builder.length() < len) {
+            builder.append(words[random.nextInt(words.length)]);
+        }
+        return Arrays.copyOf(builder.toString().getBytes(StandardCharsets.UTF_8), len);
+    }
+
+    private byte[] random(int len) {
+        byte[] data = new byte[len];
+        random.nextBytes(data);
+        return data;
+    }
+
+    private byte[] repeat(int len) {
+        byte[] data = new byte[len];
+        Arrays.fill(data, (byte) 'a');
+        return data;
+    }
+
+}
@@ -0,0 +1,121 @@
+package test.serial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.junit.Test;
+
+import code.ponfee.commons.serial.KryoRegistration;
+import code.ponfee.commons.serial.KryoSerializer;
+
+/**
+ * @author Ponfee
+ */
+public class KryoRegistrationTest {
+
+    @Test
+    public void testScan() {
+        Map<Class<?>, Integer> registrations = KryoSerializer.scanRegistrations("test.serial");
+        assertEquals(Integer.valueOf(101), registrations.get(Order.class));
+        assertEquals(Integer.valueOf(102), registrations.get(Item.class));
+    }
+
+    @Test
+    public void testRegistered() {
+        Map<Class<?>, Integer> registrations = KryoSerializer.scanRegistrations("test.serial");
+        Order order = order();
+        int legacyLength = new KryoSerializer().serialize(order, false).length;
+        for (boolean references : new boolean[] { true, false }) {
+            for (boolean unsafe : new boolean[] { true, false }) {
+                KryoSerializer serializer = new KryoSerializer(registrations, references, unsafe);
+                for (boolean isCompress : new boolean[] { true, false }) {
+                    byte[] data = serializer.serialize(order, isCompress);
+                    assertEquals(order, serializer.deserialize(data, Order.class, isCompress));
+                    assertEquals(order, serializer.deserialize(new ByteArrayInputStream(data), Order.class, isCompress));
+
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    serializer.serialize(order, isCompress, out);
+                    assertEquals(order, serializer.deserialize(out.toByteArray(), Order.class, isCompress));
+                }
+                if (!unsafe) {
+                    // 无类名
+                    assertTrue(serializer.serialize(order, false).length < legacyLength);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCompatible() {
+        Order order = order();
+        KryoSerializer legacy = new KryoSerializer();
+        KryoSerializer serializer = new KryoSerializer(KryoSerializer.scanRegistrations("test.serial"), false, false);
+        for (boolean isCompress : new boolean[] { true, false }) {
+            byte[] data = legacy.serialize(order, isCompress);
+            assertEquals(order, serializer.deserialize(data, Order.class, isCompress));
+            assertEquals(order, serializer.deserialize(new ByteArrayInputStream(data), Order.class, isCompress));
+        }
+        assertEquals("abc", serializer.deserialize(legacy.serialize("abc", false), String.class, false));
+        assertEquals("", serializer.deserialize(legacy.serialize("", false), String.class, false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReservedId() {
+        Map<Class<?>, Integer> registrations = new java.util.HashMap<>();
+        registrations.put(Order.class, 9);
+        new KryoSerializer(registrations, false, false);
+    }
+
+    private static Order order() {
+        Order order = new Order();
+        order.id = 123456789L;
+        order.items = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Item item = new Item();
+            item.sku = "sku-" + i;
+            item.quantity = i;
+            order.items.add(item);
+        }
+        return order;
+    }
+
+    @KryoRegistration(101)
+    public static class Order {
+        private long id;
+        private List<Object> items;
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Order && id == ((Order) obj).id && Objects.equals(items, ((Order) obj).items);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(id);
+        }
+    }
+
+    @KryoRegistration(102)
+    public static class Item {
+        private String sku;
+        private int quantity;
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Item && quantity == ((Item) obj).quantity && Objects.equals(sku, ((Item) obj).sku);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sku, quantity);
+        }
+    }
+
+}
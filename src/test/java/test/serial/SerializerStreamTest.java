@@ -0,0 +1,136 @@
+package test.serial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import org.junit.Test;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
+
+import code.ponfee.commons.serial.HessianSerializer;
+import code.ponfee.commons.serial.JdkSerializer;
+import code.ponfee.commons.serial.JsonSerializer;
+import code.ponfee.commons.serial.KryoSerializer;
+import code.ponfee.commons.serial.Serializer;
+
+/**
+ * @author Ponfee
+ */
+public class SerializerStreamTest {
+
+    private static final List<Serializer> SERIALIZERS = Arrays.asList(
+        new KryoSerializer(), new JdkSerializer(), new HessianSerializer(), new JsonSerializer()
+    );
+
+    @Test
+    public void testOutputStream() {
+        Bean bean = new Bean(7, "stream");
+        for (Serializer serializer : SERIALIZERS) {
+            for (boolean isCompress : new boolean[] { true, false }) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                serializer.serialize(bean, isCompress, out);
+                byte[] data = out.toByteArray();
+                assertEquals(bean, serializer.deserialize(data, Bean.class, isCompress));
+                assertEquals(bean, serializer.deserialize(new ByteArrayInputStream(data), Bean.class, isCompress));
+                assertEquals(data.length, serializer.serialize(bean, isCompress).length);
+            }
+        }
+    }
+
+    @Test
+    public void testByteBuffer() {
+        Bean bean = new Bean(9, "buffer");
+        for (Serializer serializer : SERIALIZERS) {
+            for (ByteBuffer buffer : new ByteBuffer[] { ByteBuffer.allocate(4096), ByteBuffer.allocateDirect(4096) }) {
+                buffer.put((byte) 1); // 非0起始位置
+                int length = serializer.serialize(bean, buffer);
+                assertEquals(length + 1, buffer.position());
+                buffer.flip();
+                buffer.get();
+                assertEquals(bean, serializer.deserialize(buffer, Bean.class));
+                assertFalse(buffer.hasRemaining());
+            }
+            assertEquals(bean, serializer.deserialize(ByteBuffer.wrap(serializer.serialize(bean)), Bean.class));
+            assertNull(serializer.deserialize(ByteBuffer.allocate(0), Bean.class));
+        }
+    }
+
+    @Test
+    public void testKryoCompatible() {
+        // 旧版本使用ByteBufferOutput序例化的数据
+        Bean bean = new Bean(Integer.MAX_VALUE, "compatible");
+        ByteBufferOutput output = new ByteBufferOutput(4096);
+        new Kryo().writeObject(output, bean);
+        byte[] data = output.toBytes();
+        output.close();
+
+        Serializer serializer = new KryoSerializer();
+        assertEquals(bean, serializer.deserialize(data, Bean.class, false));
+        assertEquals(data.length, serializer.serialize(bean, false).length);
+    }
+
+    @Test
+    public void testLargeObject() {
+        char[] chars = new char[3 << 20];
+        Arrays.fill(chars, 'x');
+        Bean bean = new Bean(1, new String(chars));
+        for (Serializer serializer : SERIALIZERS) {
+            assertEquals(bean, serializer.deserialize(serializer.serialize(bean, false), Bean.class, false));
+            assertEquals(bean, serializer.deserialize(serializer.serialize(bean), Bean.class));
+        }
+    }
+
+    public static class Bean implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private int id;
+        private String name;
+
+        public Bean() {}
+
+        public Bean(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public void setId(int id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Bean)) {
+                return false;
+            }
+            Bean other = (Bean) obj;
+            return id == other.id && Objects.equals(name, other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, name);
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package test.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import code.ponfee.commons.cache.Cache;
+import code.ponfee.commons.cache.CacheBuilder;
+import code.ponfee.commons.cache.CacheStats;
+
+public class BoundedCacheTest {
+
+    @Test
+    public void testMaximumSize() {
+        Cache<Integer> cache = CacheBuilder.newBuilder().maximumSize(100).build();
+        for (int i = 0; i < 1000; i++) {
+            cache.set(i, i);
+            cache.get(0); // keep hot
+        }
+        Assert.assertEquals(100, cache.size());
+        Assert.assertEquals(Integer.valueOf(0), cache.get(0));
+        Assert.assertNull(cache.get(1));
+
+        CacheStats stats = cache.stats();
+        Assert.assertEquals(900, stats.evictionCount());
+        System.out.println(stats);
+        cache.destroy();
+    }
+
+    @Test
+    public void testMaximumWeight() {
+        Cache<String> cache = CacheBuilder.newBuilder().maximumWeight(1024)
+            .weigher((key, value) -> ((String) value).length()).build();
+        for (int i = 0; i < 100; i++) {
+            cache.set(i, String.format("%0100d", i));
+        }
+        Assert.assertTrue(cache.weightedSize() <= 1024);
+        Assert.assertEquals(10, cache.size());
+        Assert.assertEquals(90 * 100, cache.stats().evictionWeight());
+
+        cache.getAndRemove(99);
+        Assert.assertEquals(900, cache.weightedSize());
+        cache.destroy();
+    }
+}
@@ -0,0 +1,76 @@
+package test.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import code.ponfee.commons.cache.Cache;
+import code.ponfee.commons.cache.CacheBuilder;
+
+public class CacheExpireTest {
+
+    @Test
+    public void testTimingWheel() {
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        Cache<Integer> cache = CacheBuilder.newBuilder().autoReleaseInSeconds(3600)
+                                           .dateProvider(clock::get).build();
+        long start = clock.get();
+        for (int i = 0; i < 10000; i++) {
+            cache.set(i, i, start + (i + 1) * 1000L); // 1 second to about 3 hours
+        }
+        cache.set("forever", -1);
+        Assert.assertEquals(10001, cache.size());
+
+        clock.addAndGet(60 * 1000L + 1);
+        cache.cleanUp();
+        Assert.assertTrue(cache.size() <= 10001 - 60 && cache.size() >= 10001 - 62);
+        Assert.assertNull(cache.get(59));
+        Assert.assertEquals(Integer.valueOf(100), cache.get(100));
+
+        clock.addAndGet(2 * 3600 * 1000L);
+        cache.cleanUp();
+        Assert.assertTrue(cache.size() <= 10001 - 7260);
+        Assert.assertNull(cache.get(7259));
+
+        clock.addAndGet(30 * 24 * 3600 * 1000L);
+        cache.cleanUp();
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(Integer.valueOf(-1), cache.get("forever"));
+        cache.destroy();
+    }
+
+    @Test
+    public void testResetExpire() {
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        Cache<String> cache = CacheBuilder.newBuilder().autoReleaseInSeconds(3600)
+                                          .dateProvider(clock::get).build();
+        cache.set("a", "1", clock.get() + 1000);
+        cache.set("a", "2", clock.get() + 5 * 60 * 1000);
+        clock.addAndGet(2 * 60 * 1000);
+        cache.cleanUp();
+        Assert.assertEquals("2", cache.get("a"));
+        clock.addAndGet(4 * 60 * 1000);
+        cache.cleanUp();
+        Assert.assertEquals(0, cache.size());
+        cache.destroy();
+    }
+
+    @Test
+    public void testRemoveAndReset() {
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        Cache<String> cache = CacheBuilder.newBuilder().autoReleaseInSeconds(3600)
+                                          .dateProvider(clock::get).build();
+        for (int i = 0; i < 3000; i++) { // 超过写缓冲阀值
+            cache.set("k" + i, "v", clock.get() + 1000);
+            cache.getAndRemove("k" + i);
+            cache.set("k" + i, "forever");
+        }
+        cache.set("b", "1", clock.get() + 1000);
+        clock.addAndGet(2 * 60 * 1000);
+        cache.cleanUp();
+        Assert.assertEquals(3000, cache.size());
+        Assert.assertEquals("forever", cache.get("k2999"));
+        cache.destroy();
+    }
+}
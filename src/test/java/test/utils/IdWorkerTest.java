@@ -0,0 +1,28 @@
+package test.utils;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import code.ponfee.commons.util.IdWorker;
+
+public class IdWorkerTest {
+
+    @Test
+    public void testNextIds() {
+        IdWorker worker = new IdWorker(10, 11, 0, 7, 0, 5);
+        Set<Long> set = new HashSet<>();
+        long last = 0;
+        for (int i = 0; i < 100; i++) {
+            for (long id : worker.nextIds(1000)) {
+                Assert.assertTrue(id > last);
+                Assert.assertTrue(set.add(id));
+                last = id;
+            }
+            Assert.assertTrue(set.add(worker.nextId()));
+        }
+    }
+
+}
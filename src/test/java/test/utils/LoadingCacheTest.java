@@ -0,0 +1,95 @@
+package test.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import code.ponfee.commons.cache.CacheBuilder;
+import code.ponfee.commons.cache.LoadingCache;
+
+public class LoadingCacheTest {
+
+    @Test
+    public void testSingleFlight() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        LoadingCache<String> cache = CacheBuilder.newBuilder().keepaliveInMillis(60000).build(key -> {
+            loads.incrementAndGet();
+            Thread.sleep(200);
+            return "v" + key;
+        });
+
+        int n = 20;
+        CountDownLatch latch = new CountDownLatch(n);
+        for (int i = 0; i < n; i++) {
+            new Thread(() -> {
+                Assert.assertEquals("vk", cache.get("k"));
+                latch.countDown();
+            }).start();
+        }
+        latch.await();
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(1, cache.stats().loadSuccessCount());
+        cache.destroy();
+    }
+
+    @Test
+    public void testGetAll() {
+        LoadingCache<Integer> cache = CacheBuilder.newBuilder().build(key -> (Integer) key * 10);
+        cache.set(1, 100);
+        Map<Comparable<?>, Integer> result = cache.getAll(Arrays.asList(1, 2, 3));
+        Assert.assertEquals(Integer.valueOf(100), result.get(1));
+        Assert.assertEquals(Integer.valueOf(20), result.get(2));
+        Assert.assertEquals(Integer.valueOf(30), result.get(3));
+        cache.destroy();
+    }
+
+    @Test
+    public void testStaleOnFailure() throws InterruptedException {
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        AtomicInteger loads = new AtomicInteger();
+        LoadingCache<Integer> cache = CacheBuilder.newBuilder().keepaliveInMillis(1000)
+            .staleInMillis(5000).dateProvider(clock::get).refreshExecutor(Runnable::run)
+            .build(key -> {
+                if (loads.incrementAndGet() > 1) {
+                    throw new IllegalStateException("redis down");
+                }
+                return 1;
+            });
+        Assert.assertEquals(Integer.valueOf(1), cache.get("k"));
+
+        clock.addAndGet(2000); // logical expired, in stale window
+        Assert.assertEquals(Integer.valueOf(1), cache.get("k"));
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals(1, cache.stats().loadFailureCount());
+
+        clock.addAndGet(5000); // physical expired
+        try {
+            cache.get("k");
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        cache.destroy();
+    }
+
+    @Test
+    public void testRefreshAhead() {
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        AtomicInteger loads = new AtomicInteger();
+        LoadingCache<Integer> cache = CacheBuilder.newBuilder().keepaliveInMillis(1000)
+            .refreshAheadInMillis(200).dateProvider(clock::get).refreshExecutor(Runnable::run)
+            .build(key -> loads.incrementAndGet());
+        Assert.assertEquals(Integer.valueOf(1), cache.get("k"));
+        clock.addAndGet(500);
+        Assert.assertEquals(Integer.valueOf(1), cache.get("k"));
+        clock.addAndGet(400);
+        Assert.assertEquals(Integer.valueOf(1), cache.get("k")); // return old and refresh
+        Assert.assertEquals(Integer.valueOf(2), cache.get("k"));
+        cache.destroy();
+    }
+}